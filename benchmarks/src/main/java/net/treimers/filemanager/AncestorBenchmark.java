@@ -0,0 +1,86 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link FileTreeItem#isAncestor(FileTreeItem)} on deep trees, as checked for every drag
+ * over a tree cell.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AncestorBenchmark {
+	/** The depth of the tree. */
+	@Param({ "16", "256", "4096" })
+	private int depth;
+	/** The root item. */
+	private FileTreeItem root;
+	/** The deepest item. */
+	private FileTreeItem leaf;
+	/** An item outside the path from the root to the deepest item. */
+	private FileTreeItem other;
+
+	/**
+	 * Generates a path of directories from the root to the deepest item.
+	 */
+	@Setup
+	public void setup() {
+		File file = new File("synthetic");
+		root = directory(file);
+		FileTreeItem item = root;
+		for (int level = 1; level < depth; level++) {
+			file = new File(file, "d" + level);
+			FileTreeItem child = directory(file);
+			item.getChildren().add(child);
+			item = child;
+		}
+		leaf = item;
+		other = directory(new File(file, "other"));
+		root.getChildren().add(other);
+	}
+
+	/**
+	 * Checks the root against the deepest item, walking the whole path.
+	 * @return true.
+	 */
+	@Benchmark
+	public boolean ancestor() {
+		return root.isAncestor(leaf);
+	}
+
+	/**
+	 * Checks an item outside the path against the deepest item, walking the whole path.
+	 * @return false.
+	 */
+	@Benchmark
+	public boolean notAncestor() {
+		return other.isAncestor(leaf);
+	}
+
+	// private methods
+
+	/**
+	 * Creates the tree item of a directory without accessing the disk.
+	 * @param file the directory.
+	 * @return the tree item.
+	 */
+	private static FileTreeItem directory(File file) {
+		return new FileTreeItem(Listing.of(new DirectoryEntry(file, true, false, 0, 0)), 0);
+	}
+}
@@ -0,0 +1,43 @@
+package net.treimers.filemanager;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of the benchmarks.
+ *
+ * Accepts the usual JMH command line options. Unless a result format is given, the results are
+ * written as JSON to the file given by the system property {@code filemanager.benchmark.result}
+ * (default {@code jmh-result.json}), so they can be kept and compared across releases.
+ */
+public class Benchmarks {
+	/** The file receiving the results if no result format is given. */
+	private static final String RESULT_FILE = System.getProperty("filemanager.benchmark.result", "jmh-result.json");
+
+	/**
+	 * Private constructor, not used.
+	 */
+	private Benchmarks() {
+	}
+
+	/**
+	 * Runs the benchmarks.
+	 * @param args the JMH command line options.
+	 * @throws Exception if the options are invalid or the benchmarks fail.
+	 */
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions options = new CommandLineOptions(args);
+		if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+				|| options.shouldListProfilers() || options.shouldListResultFormats()) {
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+		if (!options.getResultFormat().hasValue())
+			builder.resultFormat(ResultFormatType.JSON).result(RESULT_FILE);
+		new Runner(builder.build()).run();
+	}
+}
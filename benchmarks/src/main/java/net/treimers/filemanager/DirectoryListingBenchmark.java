@@ -0,0 +1,80 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures listing a single directory on disk with names and attributes.
+ *
+ * The directory is written once per trial to the temporary directory, so results depend on the
+ * file system and its caches; listing large directories is dominated by reading the attributes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DirectoryListingBenchmark {
+	/** The number of entries of the directory. */
+	@Param({ "1000", "10000", "100000", "1000000" })
+	private int entries;
+	/** The distribution of name lengths. */
+	@Param({ "SHORT", "MIXED", "LONG" })
+	private SyntheticTree.NameLengths nameLengths;
+	/** The generated directory. */
+	private Path dir;
+
+	/**
+	 * Writes the directory.
+	 * @throws IOException if the directory cannot be written.
+	 */
+	@Setup
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("filemanager-benchmark");
+		SyntheticTree.flat(entries, nameLengths).create(dir);
+	}
+
+	/**
+	 * Deletes the directory.
+	 * @throws IOException if the directory cannot be deleted.
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		SyntheticTree.delete(dir);
+	}
+
+	/**
+	 * Lists the directory sorted by name.
+	 * @return the listing.
+	 * @throws IOException if the directory cannot be read.
+	 */
+	@Benchmark
+	public Listing list() throws IOException {
+		return DirectoryLister.list(dir.toFile());
+	}
+
+	/**
+	 * Lists the names of the directory only, the lower bound of any listing.
+	 * @return the names.
+	 */
+	@Benchmark
+	public String[] names() {
+		return dir.toFile().list();
+	}
+}
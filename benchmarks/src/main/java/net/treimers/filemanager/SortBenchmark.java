@@ -0,0 +1,86 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.control.TreeItem;
+
+/**
+ * Measures sorting the entries of a directory generated in memory.
+ *
+ * Listings memoize their sorted variants, so the index sort behind {@link Listing#sortedBy(Sorting)}
+ * is measured directly. Sorting tree items with the item comparator of a sorting is measured as
+ * well, it is used to insert single items into sorted children.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SortBenchmark {
+	/** The number of entries of the directory. */
+	@Param({ "1000", "10000", "100000", "1000000" })
+	private int entries;
+	/** The distribution of name lengths. */
+	@Param({ "SHORT", "MIXED" })
+	private SyntheticTree.NameLengths nameLengths;
+	/** The sort order. */
+	@Param({ "NAME", "NATURAL", "SIZE", "MODIFIED" })
+	private SortOrder order;
+	/** Flag indicating that directories are sorted first. */
+	@Param({ "false", "true" })
+	private boolean directoriesFirst;
+	/** The listing sorted by name. */
+	private Listing listing;
+	/** The sorting. */
+	private Sorting sorting;
+	/** The tree items of the entries in name order. */
+	private TreeItem<File>[] items;
+
+	/**
+	 * Generates the listing and its tree items.
+	 */
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		listing = SyntheticTree.flat(entries, nameLengths).listing(new File("synthetic"));
+		sorting = new Sorting(order, directoriesFirst);
+		items = new TreeItem[listing.size()];
+		for (int i = 0; i < items.length; i++)
+			items[i] = new FileTreeItem(listing, i);
+	}
+
+	/**
+	 * Sorts the entries of the listing.
+	 * @return the sorted order of the entries.
+	 */
+	@Benchmark
+	public int[] sortListing() {
+		return IndexSorter.sort(listing.size(), sorting.comparator(listing));
+	}
+
+	/**
+	 * Sorts the tree items of the entries with the item comparator.
+	 * @return the sorted tree items.
+	 */
+	@Benchmark
+	public TreeItem<File>[] sortItems() {
+		TreeItem<File>[] sorted = items.clone();
+		Arrays.sort(sorted, sorting.getItemComparator());
+		return sorted;
+	}
+}
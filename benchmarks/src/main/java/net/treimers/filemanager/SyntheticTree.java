@@ -0,0 +1,278 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Generates reproducible synthetic directory trees for the benchmarks.
+ *
+ * A tree has a number of subdirectories per directory (fan-out), a depth and a number of files per
+ * directory. Names are random lower case letters and digits with lengths drawn from a {@link NameLengths}
+ * distribution. The same parameters and seed always generate the same names, sizes and dates, so
+ * results of different releases can be compared. Trees are either written to disk to measure
+ * listing, or generated as in memory {@link Listing}s to measure sorting and tree model
+ * construction without I/O.
+ */
+public class SyntheticTree {
+	/** The characters of generated names, lower case only to be distinct on any file system. */
+	private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyz0123456789";
+	/** The share of directories among the entries of an in memory listing. */
+	private static final double DIRECTORY_SHARE = 0.1;
+	/** The maximum size of a generated file entry. */
+	private static final long MAX_SIZE = 1L << 30;
+	/** The time span of generated modification times in milliseconds. */
+	private static final long TIME_SPAN = 365L * 24 * 60 * 60 * 1000;
+	/** The newest generated modification time, fixed to keep listings reproducible. */
+	private static final long NEWEST = 1_700_000_000_000L;
+	/** The seed used if none is given. */
+	private static final long DEFAULT_SEED = 42;
+
+	/**
+	 * The distributions of name lengths.
+	 */
+	public enum NameLengths {
+		/** Short names of 4 to 12 characters, evenly distributed. */
+		SHORT(4, 12, 1),
+		/** Names of 4 to 128 characters, mostly short with a long tail. */
+		MIXED(4, 128, 3),
+		/** Long names of 100 to 250 characters, evenly distributed. */
+		LONG(100, 250, 1);
+
+		/** The minimum length. */
+		private final int min;
+		/** The maximum length. */
+		private final int max;
+		/** The exponent skewing the lengths towards the minimum, 1 for an even distribution. */
+		private final double skew;
+
+		/**
+		 * Creates a new instance.
+		 * @param min the minimum length.
+		 * @param max the maximum length.
+		 * @param skew the exponent skewing the lengths towards the minimum.
+		 */
+		NameLengths(int min, int max, double skew) {
+			this.min = min;
+			this.max = max;
+			this.skew = skew;
+		}
+
+		/**
+		 * Draws a name length.
+		 * @param random the random generator.
+		 * @return the name length.
+		 */
+		int next(SplittableRandom random) {
+			return min + (int) ((max - min + 1) * Math.pow(random.nextDouble(), skew));
+		}
+	}
+
+	/** The number of subdirectories per directory. */
+	private final int fanOut;
+	/** The number of directory levels below the root. */
+	private final int depth;
+	/** The number of files per directory. */
+	private final int files;
+	/** The distribution of name lengths. */
+	private final NameLengths nameLengths;
+	/** The seed of the random generator. */
+	private final long seed;
+
+	/**
+	 * Creates a new instance.
+	 * @param fanOut the number of subdirectories per directory.
+	 * @param depth the number of directory levels below the root.
+	 * @param files the number of files per directory.
+	 * @param nameLengths the distribution of name lengths.
+	 * @param seed the seed of the random generator.
+	 */
+	public SyntheticTree(int fanOut, int depth, int files, NameLengths nameLengths, long seed) {
+		this.fanOut = fanOut;
+		this.depth = depth;
+		this.files = files;
+		this.nameLengths = nameLengths;
+		this.seed = seed;
+	}
+
+	/**
+	 * Creates a generator of a single directory.
+	 * @param entries the number of entries of the directory.
+	 * @param nameLengths the distribution of name lengths.
+	 * @return the generator.
+	 */
+	public static SyntheticTree flat(int entries, NameLengths nameLengths) {
+		return new SyntheticTree(0, 0, entries, nameLengths, DEFAULT_SEED);
+	}
+
+	/**
+	 * Generates distinct names.
+	 * @param count the number of names.
+	 * @param random the random generator.
+	 * @return the names in the order generated.
+	 */
+	public String[] names(int count, SplittableRandom random) {
+		String[] names = new String[count];
+		Set<String> used = new HashSet<>(count * 2);
+		char[] chars = new char[nameLengths.max];
+		for (int i = 0; i < count; i++) {
+			String name;
+			do {
+				int length = nameLengths.next(random);
+				for (int j = 0; j < length; j++)
+					chars[j] = CHARACTERS.charAt(random.nextInt(CHARACTERS.length()));
+				name = new String(chars, 0, length);
+			} while (!used.add(name));
+			names[i] = name;
+		}
+		return names;
+	}
+
+	/**
+	 * Generates the listing of the root directory in memory, without any I/O.
+	 *
+	 * The listing has the files of a directory, a tenth of them being directories, with random
+	 * sizes and modification times.
+	 * @param dir the directory the listing claims to list.
+	 * @return the listing sorted by name.
+	 */
+	public Listing listing(File dir) {
+		SplittableRandom random = new SplittableRandom(seed);
+		Listing.Builder builder = new Listing.Builder(dir);
+		for (String name : names(files, random)) {
+			boolean directory = random.nextDouble() < DIRECTORY_SHARE;
+			long size = directory ? 4096 : (long) (MAX_SIZE * Math.pow(random.nextDouble(), 8));
+			builder.add(name, new Attributes(directory, size, NEWEST - random.nextLong(TIME_SPAN)));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Writes the tree to disk, files are created empty.
+	 * @param root the existing root directory of the tree.
+	 * @throws IOException if the tree cannot be written.
+	 */
+	public void create(Path root) throws IOException {
+		create(root, 0, new SplittableRandom(seed));
+	}
+
+	/**
+	 * Deletes a tree written by {@link #create(Path)} including its root.
+	 * @param root the root directory of the tree.
+	 * @throws IOException if the tree cannot be deleted.
+	 */
+	public static void delete(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exception) throws IOException {
+				if (exception != null)
+					throw exception;
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	// private methods
+
+	/**
+	 * Writes a directory of the tree and its subdirectories.
+	 * @param dir the existing directory.
+	 * @param level the level of the directory, 0 for the root.
+	 * @param random the random generator.
+	 * @throws IOException if the directory cannot be written.
+	 */
+	private void create(Path dir, int level, SplittableRandom random) throws IOException {
+		int directories = level < depth ? fanOut : 0;
+		String[] names = names(directories + files, random);
+		for (int i = directories; i < names.length; i++)
+			Files.createFile(dir.resolve(names[i]));
+		for (int i = 0; i < directories; i++) {
+			Path child = Files.createDirectory(dir.resolve(names[i]));
+			create(child, level + 1, random.split());
+		}
+	}
+
+	/**
+	 * The attributes of a generated entry.
+	 */
+	private static class Attributes implements BasicFileAttributes {
+		/** Flag indicating a directory. */
+		private final boolean directory;
+		/** The size in bytes. */
+		private final long size;
+		/** The modification time. */
+		private final FileTime lastModified;
+
+		/**
+		 * Creates a new instance.
+		 * @param directory true for a directory, false for a regular file.
+		 * @param size the size in bytes.
+		 * @param lastModified the modification time in milliseconds since the epoch.
+		 */
+		Attributes(boolean directory, long size, long lastModified) {
+			this.directory = directory;
+			this.size = size;
+			this.lastModified = FileTime.fromMillis(lastModified);
+		}
+
+		@Override
+		public FileTime lastModifiedTime() {
+			return lastModified;
+		}
+
+		@Override
+		public FileTime lastAccessTime() {
+			return lastModified;
+		}
+
+		@Override
+		public FileTime creationTime() {
+			return lastModified;
+		}
+
+		@Override
+		public boolean isRegularFile() {
+			return !directory;
+		}
+
+		@Override
+		public boolean isDirectory() {
+			return directory;
+		}
+
+		@Override
+		public boolean isSymbolicLink() {
+			return false;
+		}
+
+		@Override
+		public boolean isOther() {
+			return false;
+		}
+
+		@Override
+		public long size() {
+			return size;
+		}
+
+		@Override
+		public Object fileKey() {
+			return null;
+		}
+	}
+}
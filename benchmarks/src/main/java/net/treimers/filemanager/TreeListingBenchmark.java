@@ -0,0 +1,93 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures listing every directory of a tree on disk, like expanding all of its directories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TreeListingBenchmark {
+	/** The number of subdirectories per directory. */
+	@Param({ "4", "8" })
+	private int fanOut;
+	/** The number of directory levels below the root. */
+	@Param({ "3", "5" })
+	private int depth;
+	/** The number of files per directory. */
+	@Param({ "16" })
+	private int files;
+	/** The distribution of name lengths. */
+	@Param({ "MIXED" })
+	private SyntheticTree.NameLengths nameLengths;
+	/** The generated tree. */
+	private Path root;
+
+	/**
+	 * Writes the tree.
+	 * @throws IOException if the tree cannot be written.
+	 */
+	@Setup
+	public void setup() throws IOException {
+		root = Files.createTempDirectory("filemanager-benchmark");
+		new SyntheticTree(fanOut, depth, files, nameLengths, 42).create(root);
+	}
+
+	/**
+	 * Deletes the tree.
+	 * @throws IOException if the tree cannot be deleted.
+	 */
+	@TearDown
+	public void tearDown() throws IOException {
+		SyntheticTree.delete(root);
+	}
+
+	/**
+	 * Lists all directories of the tree.
+	 * @return the number of listed entries.
+	 * @throws IOException if a directory cannot be read.
+	 */
+	@Benchmark
+	public long listTree() throws IOException {
+		return listAll(root.toFile());
+	}
+
+	// private methods
+
+	/**
+	 * Lists a directory and its subdirectories.
+	 * @param dir the directory.
+	 * @return the number of listed entries.
+	 * @throws IOException if a directory cannot be read.
+	 */
+	private static long listAll(File dir) throws IOException {
+		Listing listing = DirectoryLister.list(dir);
+		long count = listing.size();
+		for (int i = 0; i < listing.size(); i++) {
+			if (listing.isDirectory(i))
+				count += listAll(listing.getFile(i));
+		}
+		return count;
+	}
+}
@@ -0,0 +1,109 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.scene.control.TreeItem;
+
+/**
+ * Measures building the tree and table model of a directory generated in memory.
+ *
+ * Covers creating the child tree items of an expanded directory, attaching them to their parent and
+ * creating the file infos of the details table with and without formatting their cells. No JavaFX
+ * toolkit is started, so only the model is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class TreeModelBenchmark {
+	/** The number of entries of the directory. */
+	@Param({ "1000", "10000", "100000", "1000000" })
+	private int entries;
+	/** The distribution of name lengths. */
+	@Param({ "MIXED" })
+	private SyntheticTree.NameLengths nameLengths;
+	/** The listing sorted by name. */
+	private Listing listing;
+	/** The tree items of the entries. */
+	private List<TreeItem<File>> items;
+	/** The parent the tree items are attached to. */
+	private TreeItem<File> parent;
+
+	/**
+	 * Generates the listing and its tree items.
+	 */
+	@Setup
+	public void setup() {
+		listing = SyntheticTree.flat(entries, nameLengths).listing(new File("synthetic"));
+		items = createItems();
+		parent = new TreeItem<>(listing.getDirectory());
+	}
+
+	/**
+	 * Creates the tree items of all entries.
+	 * @return the tree items.
+	 */
+	@Benchmark
+	public List<TreeItem<File>> createItems() {
+		List<TreeItem<File>> children = new ArrayList<>(listing.size());
+		for (int i = 0; i < listing.size(); i++)
+			children.add(new FileTreeItem(listing, i));
+		return children;
+	}
+
+	/**
+	 * Replaces the children of a tree item with the tree items of all entries.
+	 * @return the parent.
+	 */
+	@Benchmark
+	public TreeItem<File> attachItems() {
+		parent.getChildren().setAll(items);
+		return parent;
+	}
+
+	/**
+	 * Creates the file infos of all entries.
+	 * @return the file infos.
+	 */
+	@Benchmark
+	public List<FileInfo> createFileInfos() {
+		List<FileInfo> infos = new ArrayList<>(listing.size());
+		for (int i = 0; i < listing.size(); i++)
+			infos.add(new FileInfo(listing.getEntry(i)));
+		return infos;
+	}
+
+	/**
+	 * Creates the file infos of all entries and formats their name, date and size cells.
+	 * @return the file infos.
+	 */
+	@Benchmark
+	public List<FileInfo> formatFileInfos() {
+		List<FileInfo> infos = new ArrayList<>(listing.size());
+		for (int i = 0; i < listing.size(); i++) {
+			FileInfo info = new FileInfo(listing.getEntry(i));
+			info.nameProperty();
+			info.dateProperty();
+			info.sizeProperty();
+			infos.add(info);
+		}
+		return infos;
+	}
+}
@@ -0,0 +1,104 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.application.Platform;
+
+/**
+ * Loads owner and permissions of file infos asynchronously in batches.
+ *
+ * Requests made while rendering are collected until the JavaFX thread is idle again and then read
+ * by background loads of up to {@link #BATCH_SIZE} files each, so scrolling never waits for the
+ * file system. Permissions are only available on POSIX file systems, elsewhere only the owner is
+ * shown.
+ */
+public class AttributeLoader {
+	/** The maximum number of files read by one load. */
+	public static final int BATCH_SIZE = 256;
+	/** The shared loader instance. */
+	private static final AttributeLoader INSTANCE = new AttributeLoader();
+	/** The requested file infos not submitted yet (JavaFX thread only). */
+	private List<FileInfo> pending = new ArrayList<>();
+
+	/**
+	 * Gets the shared loader instance.
+	 * @return the shared loader instance.
+	 */
+	public static AttributeLoader getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Requests owner and permissions of a file info.
+	 * 
+	 * Must be invoked in the JavaFX thread, the attributes are set in the JavaFX thread as well.
+	 * @param fileInfo the file info.
+	 */
+	public void request(FileInfo fileInfo) {
+		if (pending.isEmpty())
+			Platform.runLater(this::submit);
+		pending.add(fileInfo);
+	}
+
+	// private methods
+
+	/**
+	 * Submits the pending requests in batches.
+	 */
+	private void submit() {
+		List<FileInfo> requests = pending;
+		pending = new ArrayList<>();
+		for (int from = 0; from < requests.size(); from += BATCH_SIZE) {
+			List<FileInfo> batch = requests.subList(from, Math.min(requests.size(), from + BATCH_SIZE));
+			Path path = batch.get(0).getEntry().getFile().toPath().toAbsolutePath();
+			Path dir = path.getParent() != null ? path.getParent() : path;
+			LoadScheduler.getInstance().submit(dir, LoadScheduler.Priority.BACKGROUND, () -> read(batch),
+					(String[][] attributes, Throwable throwable) -> Platform.runLater(() -> {
+						if (attributes == null)
+							return;
+						for (int i = 0; i < batch.size(); i++)
+							batch.get(i).setAttributes(attributes[i][0], attributes[i][1]);
+					}));
+		}
+	}
+
+	/**
+	 * Reads owner and permissions of a batch of files.
+	 * 
+	 * The method is invoked asynchronously by the load scheduler.
+	 * @param batch the file infos.
+	 * @return owner and permissions by file info, empty strings if not available.
+	 */
+	private static String[][] read(List<FileInfo> batch) {
+		String[][] attributes = new String[batch.size()][];
+		for (int i = 0; i < attributes.length; i++) {
+			Path path = batch.get(i).getEntry().getFile().toPath();
+			String owner = "";
+			String permissions = "";
+			try {
+				PosixFileAttributes posix = Files.readAttributes(path, PosixFileAttributes.class,
+						LinkOption.NOFOLLOW_LINKS);
+				owner = posix.owner().getName();
+				char type = posix.isSymbolicLink() ? 'l' : posix.isDirectory() ? 'd' : '-';
+				permissions = type + PosixFilePermissions.toString(posix.permissions());
+			} catch (UnsupportedOperationException e) {
+				try {
+					owner = Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).getName();
+				} catch (IOException | UnsupportedOperationException e1) {
+					// owner not available
+				}
+			} catch (IOException e) {
+				// attributes not available
+			}
+			attributes[i] = new String[] { owner, permissions };
+		}
+		return attributes;
+	}
+}
@@ -0,0 +1,130 @@
+package net.treimers.filemanager;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * The checksum algorithms offered for files.
+ */
+public enum ChecksumAlgorithm {
+	/** SHA-256, a cryptographic hash. */
+	SHA_256("SHA-256", "sha256"),
+	/** CRC-32C, hardware accelerated on most processors. */
+	CRC32C("CRC32C", "crc32c"),
+	/** 64 bit xxHash, a fast non-cryptographic hash. */
+	XXHASH64("xxHash64", "xxh64");
+
+	/** The name shown to the user. */
+	private final String displayName;
+	/** The short name used to label checksum values. */
+	private final String label;
+
+	/**
+	 * Creates a new instance.
+	 * @param displayName the name shown to the user.
+	 * @param label the short name used to label checksum values.
+	 */
+	ChecksumAlgorithm(String displayName, String label) {
+		this.displayName = displayName;
+		this.label = label;
+	}
+
+	/**
+	 * Gets the short name used to label checksum values.
+	 * @return the short name.
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+	@Override
+	public String toString() {
+		return displayName;
+	}
+
+	/**
+	 * Creates a hasher computing a checksum with this algorithm.
+	 * @return the hasher.
+	 */
+	public Hasher newHasher() {
+		switch (this) {
+		case SHA_256:
+			try {
+				MessageDigest digest = MessageDigest.getInstance("SHA-256");
+				return new Hasher() {
+					@Override
+					public void update(ByteBuffer buffer) {
+						digest.update(buffer);
+					}
+
+					@Override
+					public String getValue() {
+						return toHex(digest.digest());
+					}
+				};
+			} catch (NoSuchAlgorithmException e) {
+				// every Java platform supports SHA-256
+				throw new IllegalStateException(e);
+			}
+		case CRC32C:
+			return checksumHasher(new CRC32C(), 8);
+		default:
+			return checksumHasher(new XxHash64(), 16);
+		}
+	}
+
+	// private methods
+
+	/**
+	 * Creates a hasher for a checksum.
+	 * @param checksum the checksum.
+	 * @param digits the number of hexadecimal digits of the value.
+	 * @return the hasher.
+	 */
+	private static Hasher checksumHasher(Checksum checksum, int digits) {
+		return new Hasher() {
+			@Override
+			public void update(ByteBuffer buffer) {
+				checksum.update(buffer);
+			}
+
+			@Override
+			public String getValue() {
+				String hex = Long.toHexString(checksum.getValue());
+				return "0".repeat(digits - hex.length()) + hex;
+			}
+		};
+	}
+
+	/**
+	 * Formats bytes as hexadecimal digits.
+	 * @param bytes the bytes.
+	 * @return the hexadecimal digits.
+	 */
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes)
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return hex.toString();
+	}
+
+	/**
+	 * Computes a checksum incrementally.
+	 */
+	public interface Hasher {
+		/**
+		 * Adds the remaining bytes of a buffer.
+		 * @param buffer the buffer, consumed completely.
+		 */
+		void update(ByteBuffer buffer);
+
+		/**
+		 * Gets the checksum of all added bytes.
+		 * @return the checksum as hexadecimal digits.
+		 */
+		String getValue();
+	}
+}
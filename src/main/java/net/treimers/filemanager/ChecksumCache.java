@@ -0,0 +1,387 @@
+package net.treimers.filemanager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import javafx.application.Platform;
+
+/**
+ * Caches computed checksums keyed by path, size and modification time.
+ *
+ * A cached checksum is only used while the file has the size and modification time it had when
+ * the checksum was computed, so unchanged files are never read again. The cache is persisted in
+ * the file given by the system property {@code filemanager.checksums.file} (default
+ * {@code ~/.filemanager/checksums}).
+ *
+ * The file is loaded by a background thread started with the application, the listeners passed
+ * when starting are informed in the JavaFX thread once it has been loaded. Afterwards entries of files which have been deleted or changed since
+ * are pruned. The file is a log: each checksum job appends the checksums it computed, later
+ * records replace earlier ones of the same file. The file is only rewritten once it holds twice
+ * as many records as there are entries, or after entries have been pruned.
+ */
+public class ChecksumCache {
+	/** The file holding the persisted checksums. */
+	private static final Path CACHE_FILE = Paths.get(System.getProperty("filemanager.checksums.file",
+			Paths.get(System.getProperty("user.home"), ".filemanager", "checksums").toString()));
+	/** The magic number of a checksum file. */
+	private static final int MAGIC = 0x46434B53;
+	/** The version of the checksum file format. */
+	private static final int VERSION = 2;
+	/** The shared cache instance. */
+	private static final ChecksumCache INSTANCE = new ChecksumCache();
+	/** The cached checksums by algorithm and path. */
+	private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+	/** The keys of the entries not saved yet. */
+	private final Set<Key> unsaved = ConcurrentHashMap.newKeySet();
+	/** Counts down once the persisted checksums have been loaded. */
+	private final CountDownLatch loaded = new CountDownLatch(1);
+	/** The listeners informed once the persisted checksums have been loaded. */
+	private final List<Runnable> loadedListeners = new ArrayList<>();
+	/** Flag indicating a started load. */
+	private boolean loading;
+	/** The number of records in the file, 0 if the file must be rewritten. */
+	private int records;
+
+	/**
+	 * Creates a new, empty instance.
+	 */
+	private ChecksumCache() {
+	}
+
+	/**
+	 * Gets the shared cache instance.
+	 * @return the shared cache instance.
+	 */
+	public static ChecksumCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Starts loading the persisted checksums in a background thread unless started before.
+	 * @param onLoaded invoked in the JavaFX thread once the checksums have been loaded, e.g. to
+	 *        show them, null if none.
+	 */
+	public synchronized void startLoading(Runnable onLoaded) {
+		if (onLoaded != null) {
+			if (loaded.getCount() == 0)
+				Platform.runLater(onLoaded);
+			else
+				loadedListeners.add(onLoaded);
+		}
+		if (loading)
+			return;
+		loading = true;
+		Thread thread = new Thread(() -> {
+			load();
+			List<Runnable> listeners;
+			synchronized (this) {
+				loaded.countDown();
+				listeners = new ArrayList<>(loadedListeners);
+				loadedListeners.clear();
+			}
+			for (Runnable listener : listeners)
+				Platform.runLater(listener);
+			prune();
+		}, "ChecksumCache");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Waits until the persisted checksums have been loaded, starts loading them if necessary.
+	 *
+	 * Must not be invoked in the JavaFX thread.
+	 */
+	public void awaitLoaded() {
+		startLoading(null);
+		boolean interrupted = false;
+		while (true) {
+			try {
+				loaded.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Gets a cached checksum if the file is unchanged.
+	 *
+	 * Returns null for all files while the persisted checksums are being loaded.
+	 * @param algorithm the algorithm.
+	 * @param path the file.
+	 * @param size the current size of the file.
+	 * @param lastModified the current modification time of the file in milliseconds.
+	 * @return the checksum, null if not cached or the file changed.
+	 */
+	public String get(ChecksumAlgorithm algorithm, Path path, long size, long lastModified) {
+		Entry entry = entries.get(new Key(algorithm, path.toAbsolutePath().toString()));
+		return entry != null && entry.size == size && entry.lastModified == lastModified ? entry.value : null;
+	}
+
+	/**
+	 * Formats all cached checksums of a file.
+	 * @param path the file.
+	 * @param size the current size of the file.
+	 * @param lastModified the current modification time of the file in milliseconds.
+	 * @return the labelled checksums separated by blanks, empty if none is cached.
+	 */
+	public String format(Path path, long size, long lastModified) {
+		StringBuilder text = new StringBuilder();
+		for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+			String value = get(algorithm, path, size, lastModified);
+			if (value != null) {
+				if (text.length() > 0)
+					text.append(' ');
+				text.append(algorithm.getLabel()).append(':').append(value);
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Caches a checksum.
+	 * @param algorithm the algorithm.
+	 * @param path the file.
+	 * @param size the size of the file when the checksum was computed.
+	 * @param lastModified the modification time of the file when the checksum was computed.
+	 * @param value the checksum.
+	 */
+	public void put(ChecksumAlgorithm algorithm, Path path, long size, long lastModified, String value) {
+		Key key = new Key(algorithm, path.toAbsolutePath().toString());
+		entries.put(key, new Entry(size, lastModified, value));
+		unsaved.add(key);
+	}
+
+	/**
+	 * Persists the checksums cached since the last save.
+	 *
+	 * Waits until the persisted checksums have been loaded, must not be invoked in the JavaFX
+	 * thread.
+	 * @throws IOException if the checksums cannot be written.
+	 */
+	public void save() throws IOException {
+		awaitLoaded();
+		synchronized (this) {
+			if (unsaved.isEmpty())
+				return;
+			if (records == 0 || records + unsaved.size() > 2 * entries.size()) {
+				rewrite();
+				return;
+			}
+			// removed before the entries are read, so entries put meanwhile are saved next time
+			List<Key> keys = new ArrayList<>(unsaved);
+			unsaved.removeAll(keys);
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					Files.newOutputStream(CACHE_FILE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)))) {
+				for (Key key : keys) {
+					Entry entry = entries.get(key);
+					if (entry != null) {
+						write(out, key, entry);
+						records++;
+					}
+				}
+			} catch (IOException e) {
+				// the file may end with a partial record, it is rewritten next time
+				unsaved.addAll(keys);
+				records = 0;
+				throw e;
+			}
+		}
+	}
+
+	// private methods
+
+	/**
+	 * Loads the persisted checksums, a missing or corrupt file leaves the cache empty.
+	 *
+	 * Entries put before are newer and kept.
+	 */
+	private void load() {
+		if (!Files.isRegularFile(CACHE_FILE))
+			return;
+		Map<Key, Entry> persisted = new ConcurrentHashMap<>();
+		int count = 0;
+		boolean complete = true;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(CACHE_FILE)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return;
+			ChecksumAlgorithm[] algorithms = ChecksumAlgorithm.values();
+			int ordinal;
+			while ((ordinal = in.read()) >= 0) {
+				try {
+					String path = in.readUTF();
+					long size = in.readLong();
+					long lastModified = in.readLong();
+					persisted.put(new Key(algorithms[ordinal], path), new Entry(size, lastModified, in.readUTF()));
+					count++;
+				} catch (EOFException e) {
+					// the last save has been interrupted
+					complete = false;
+					break;
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// checksums are computed again
+			return;
+		}
+		for (Map.Entry<Key, Entry> cached : persisted.entrySet())
+			entries.putIfAbsent(cached.getKey(), cached.getValue());
+		synchronized (this) {
+			records = complete ? count : 0;
+		}
+	}
+
+	/**
+	 * Removes the entries of files which have been deleted or changed and rewrites the file if
+	 * entries have been removed.
+	 *
+	 * Runs in the background thread after loading.
+	 */
+	private void prune() {
+		boolean pruned = false;
+		for (Map.Entry<Key, Entry> cached : entries.entrySet()) {
+			Entry entry = cached.getValue();
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(Paths.get(cached.getKey().path),
+						BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				if (attributes.size() == entry.size && attributes.lastModifiedTime().toMillis() == entry.lastModified)
+					continue;
+			} catch (NoSuchFileException e) {
+				// deleted
+			} catch (IOException | RuntimeException e) {
+				// not accessible right now, e.g. an unmounted medium
+				continue;
+			}
+			pruned |= entries.remove(cached.getKey(), entry);
+		}
+		if (pruned) {
+			try {
+				synchronized (this) {
+					rewrite();
+				}
+			} catch (IOException e) {
+				// the file is rewritten with the next save
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the file with all cached checksums.
+	 * @throws IOException if the checksums cannot be written.
+	 */
+	private void rewrite() throws IOException {
+		// cleared before the snapshot, so entries put meanwhile are saved next time
+		unsaved.clear();
+		Map<Key, Entry> snapshot = Map.copyOf(entries);
+		records = 0;
+		try {
+			Files.createDirectories(CACHE_FILE.getParent());
+			Path temp = CACHE_FILE.resolveSibling(CACHE_FILE.getFileName() + ".tmp");
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				for (Map.Entry<Key, Entry> cached : snapshot.entrySet())
+					write(out, cached.getKey(), cached.getValue());
+			}
+			Files.move(temp, CACHE_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			unsaved.addAll(snapshot.keySet());
+			throw e;
+		}
+		records = snapshot.size();
+	}
+
+	/**
+	 * Writes a single record.
+	 * @param out the stream to write to.
+	 * @param key the key of the cached checksum.
+	 * @param entry the cached checksum.
+	 * @throws IOException if the record cannot be written.
+	 */
+	private static void write(DataOutputStream out, Key key, Entry entry) throws IOException {
+		out.writeByte(key.algorithm.ordinal());
+		out.writeUTF(key.path);
+		out.writeLong(entry.size);
+		out.writeLong(entry.lastModified);
+		out.writeUTF(entry.value);
+	}
+
+	/**
+	 * The key of a cached checksum.
+	 */
+	private static class Key {
+		/** The algorithm. */
+		private final ChecksumAlgorithm algorithm;
+		/** The absolute path of the file. */
+		private final String path;
+
+		/**
+		 * Creates a new instance.
+		 * @param algorithm the algorithm.
+		 * @param path the absolute path of the file.
+		 */
+		Key(ChecksumAlgorithm algorithm, String path) {
+			this.algorithm = algorithm;
+			this.path = path;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key))
+				return false;
+			Key key = (Key) other;
+			return algorithm == key.algorithm && path.equals(key.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * algorithm.ordinal() + path.hashCode();
+		}
+	}
+
+	/**
+	 * A cached checksum.
+	 */
+	private static class Entry {
+		/** The size of the file when the checksum was computed. */
+		private final long size;
+		/** The modification time of the file when the checksum was computed. */
+		private final long lastModified;
+		/** The checksum. */
+		private final String value;
+
+		/**
+		 * Creates a new instance.
+		 * @param size the size of the file.
+		 * @param lastModified the modification time of the file.
+		 * @param value the checksum.
+		 */
+		Entry(long size, long lastModified, String value) {
+			this.size = size;
+			this.lastModified = lastModified;
+			this.value = value;
+		}
+	}
+}
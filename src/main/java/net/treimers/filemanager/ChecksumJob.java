@@ -0,0 +1,153 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes checksums of files and directory trees in the background.
+ *
+ * The sources are scanned first without following symbolic links, then the regular files are
+ * hashed by a bounded number of parallel workers configured with the system property
+ * {@code filemanager.checksum.threads}. Files found in the {@link ChecksumCache} with unchanged
+ * size and modification time are not read again. Small files are read into a direct buffer of
+ * each worker, larger files are memory mapped in windows of {@link #MAP_WINDOW} bytes. A checksum
+ * is only cached if the file did not change while it was read.
+ */
+public class ChecksumJob extends Job {
+	/** The number of files hashed in parallel by a single checksum job. */
+	private static final int THREADS = Integer.getInteger("filemanager.checksum.threads", 4);
+	/** The size of the windows large files are mapped in. */
+	private static final long MAP_WINDOW = 64L << 20;
+	/** The size up to which files are read instead of mapped. */
+	private static final int SMALL_FILE = 1 << 20;
+	/** The buffer of each worker used to read small files. */
+	private static final ThreadLocal<ByteBuffer> SMALL_BUFFER = ThreadLocal
+			.withInitial(() -> ByteBuffer.allocateDirect(SMALL_FILE));
+	/** The files and directory trees to hash. */
+	private final List<Path> sources;
+	/** The algorithm. */
+	private final ChecksumAlgorithm algorithm;
+	/** The files to hash. */
+	private final List<Path> files = new ArrayList<>();
+	/** The attributes of the files to hash. */
+	private final List<BasicFileAttributes> attributes = new ArrayList<>();
+
+	/**
+	 * Creates a new instance.
+	 * @param sources the files and directory trees to hash.
+	 * @param algorithm the algorithm.
+	 */
+	public ChecksumJob(List<Path> sources, ChecksumAlgorithm algorithm) {
+		super(sources.size() == 1 ? algorithm + " of " + sources.get(0)
+				: String.format("%s of %,d items", algorithm, sources.size()));
+		this.sources = sources;
+		this.algorithm = algorithm;
+	}
+
+	@Override
+	protected void execute() throws IOException {
+		for (Path source : sources) {
+			scan(source);
+			if (isCancelled())
+				return;
+		}
+		setScanned();
+		ChecksumCache cache = ChecksumCache.getInstance();
+		try {
+			runParallel(THREADS, files.size(), new Step() {
+				@Override
+				public void run(int item) throws IOException {
+					hash(cache, files.get(item), attributes.get(item));
+				}
+
+				@Override
+				public Path getPath(int item) {
+					return files.get(item);
+				}
+			});
+		} finally {
+			// keep the checksums computed before a cancellation
+			cache.save();
+		}
+	}
+
+	// private methods
+
+	/**
+	 * Collects the regular files of a source.
+	 * @param source the file or directory tree to hash.
+	 * @throws IOException if the source cannot be read.
+	 */
+	private void scan(Path source) throws IOException {
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes fileAttributes) {
+				if (fileAttributes.isRegularFile()) {
+					files.add(file);
+					attributes.add(fileAttributes);
+					addTotal(fileAttributes.size(), 1);
+				}
+				return isCancelled() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exception) {
+				addError(file, exception);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Computes and caches the checksum of a file unless it is cached already.
+	 * @param cache the checksum cache.
+	 * @param path the file.
+	 * @param before the attributes of the file when found.
+	 * @throws IOException if the file cannot be read or changed while read.
+	 */
+	private void hash(ChecksumCache cache, Path path, BasicFileAttributes before) throws IOException {
+		long size = before.size();
+		long lastModified = before.lastModifiedTime().toMillis();
+		if (cache.get(algorithm, path, size, lastModified) != null) {
+			addDone(size, 1);
+			return;
+		}
+		ChecksumAlgorithm.Hasher hasher = algorithm.newHasher();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (size <= SMALL_FILE) {
+				ByteBuffer buffer = SMALL_BUFFER.get();
+				buffer.clear().limit((int) size);
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+					;
+				buffer.flip();
+				hasher.update(buffer);
+				addDone(size, 0);
+			} else {
+				for (long position = 0; position < size; position += MAP_WINDOW) {
+					if (isCancelled())
+						return;
+					long length = Math.min(MAP_WINDOW, size - position);
+					MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+					hasher.update(window);
+					addDone(length, 0);
+				}
+			}
+		}
+		BasicFileAttributes after = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		if (after.size() != size || after.lastModifiedTime().toMillis() != lastModified)
+			throw new IOException("File has been modified while reading");
+		cache.put(algorithm, path, size, lastModified, hasher.getValue());
+		addDone(0, 1);
+	}
+}
@@ -0,0 +1,439 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javafx.application.Platform;
+
+/**
+ * A search for text in the contents of all files below a directory.
+ *
+ * One thread walks the directory tree and hands the regular files to a pool of search threads, so
+ * many files are read concurrently. The walk blocks while the pool is saturated. Small files are
+ * read into a reusable buffer per thread, larger files are memory mapped in windows of
+ * {@link #MAP_WINDOW} bytes and never copied to the heap. Files with a NUL byte in their first
+ * bytes are treated as binary and skipped.
+ *
+ * Files are searched line by line. A literal query is compared byte by byte with its UTF-8
+ * encoding. A regular expression is matched against each line decoded as UTF-8, lines of ASCII
+ * characters only are matched without decoding. Matches are reported in batches in the JavaFX thread while the search runs.
+ *
+ * The number of search threads and the maximum number of reported matches are configured with the
+ * system properties {@code filemanager.grep.threads} and {@code filemanager.grep.maxMatches}.
+ */
+public class ContentSearch {
+	/** The number of search threads. */
+	private static final int THREADS = Integer.getInteger("filemanager.grep.threads",
+			Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+	/** The maximum number of reported matches, the search stops when reached. */
+	private static final int MAX_MATCHES = Integer.getInteger("filemanager.grep.maxMatches", 100000);
+	/** The size of the windows large files are mapped in. */
+	private static final long MAP_WINDOW = 64L << 20;
+	/** The size up to which files are read instead of mapped. */
+	private static final int SMALL_FILE = 256 << 10;
+	/** The number of leading bytes checked for a NUL byte. */
+	private static final int BINARY_PROBE = 8192;
+	/** The maximum number of bytes of a matching line shown. */
+	private static final int MAX_LINE_BYTES = 512;
+	/** The buffer of each search thread used to read small files. */
+	private static final ThreadLocal<ByteBuffer> SMALL_BUFFER = ThreadLocal
+			.withInitial(() -> ByteBuffer.allocate(SMALL_FILE));
+	/** The directory searched. */
+	private final Path dir;
+	/** The UTF-8 encoded literal query, null for a regular expression. */
+	private final byte[] literal;
+	/** The regular expression, null for a literal query. */
+	private final Pattern pattern;
+	/** The listener informed about matches and progress. */
+	private final Listener listener;
+	/** The pool of search threads. */
+	private final ThreadPoolExecutor executor;
+	/** The matches not reported yet. */
+	private final ConcurrentLinkedQueue<Match> found = new ConcurrentLinkedQueue<>();
+	/** The number of matches found. */
+	private final AtomicInteger matchCount = new AtomicInteger();
+	/** The number of searched files. */
+	private final LongAdder files = new LongAdder();
+	/** The number of searched bytes. */
+	private final LongAdder bytes = new LongAdder();
+	/** Indicator for a pending update in the JavaFX thread. */
+	private final AtomicBoolean updatePending = new AtomicBoolean();
+	/** Flag indicating a cancelled search. */
+	private volatile boolean cancelled;
+
+	/**
+	 * A listener informed about matches and progress.
+	 */
+	public interface Listener {
+		/**
+		 * Called in the JavaFX thread with the matches found since the last call.
+		 * @param matches the new matches.
+		 * @param files the number of files searched so far.
+		 * @param bytes the number of bytes searched so far.
+		 * @param done true, if the search has finished or was cancelled.
+		 */
+		void update(List<Match> matches, long files, long bytes, boolean done);
+	}
+
+	/**
+	 * Creates a new instance.
+	 * @param dir the directory to search.
+	 * @param query the text or regular expression to find.
+	 * @param regex true, if the query is a regular expression.
+	 * @param listener the listener informed about matches and progress.
+	 * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid.
+	 */
+	public ContentSearch(Path dir, String query, boolean regex, Listener listener) {
+		this.dir = dir;
+		this.literal = regex ? null : query.getBytes(StandardCharsets.UTF_8);
+		this.pattern = regex ? Pattern.compile(query) : null;
+		this.listener = listener;
+		AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(THREADS * 4),
+				(Runnable runnable) -> {
+					Thread thread = new Thread(runnable, "Grep-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	/**
+	 * Starts the search in the background.
+	 */
+	public void start() {
+		Thread walker = new Thread(this::walk, "Grep-Walker");
+		walker.setDaemon(true);
+		walker.start();
+	}
+
+	/**
+	 * Cancels the search, files being searched are abandoned.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	// private methods
+
+	/**
+	 * Walks the directory tree, submits the files and reports the end of the search.
+	 */
+	private void walk() {
+		try {
+			Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE,
+					new SimpleFileVisitor<Path>() {
+						@Override
+						public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+							if (cancelled)
+								return FileVisitResult.TERMINATE;
+							if (attributes.isRegularFile() && attributes.size() > 0)
+								executor.execute(() -> searchFile(file));
+							return FileVisitResult.CONTINUE;
+						}
+
+						@Override
+						public FileVisitResult visitFileFailed(Path file, IOException exception) {
+							return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+						}
+					});
+		} catch (IOException e) {
+			// unreadable parts of the tree are skipped
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		Platform.runLater(() -> report(true));
+	}
+
+	/**
+	 * Searches a single file.
+	 * @param file the file.
+	 */
+	private void searchFile(Path file) {
+		if (cancelled)
+			return;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			Matcher matcher = pattern == null ? null : pattern.matcher("");
+			long[] line = { 1 };
+			if (size <= SMALL_FILE) {
+				ByteBuffer buffer = SMALL_BUFFER.get();
+				buffer.clear();
+				while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+					// read until the end of the file
+				}
+				buffer.flip();
+				if (!isBinary(buffer))
+					searchLines(file, buffer, line, matcher, true);
+			} else {
+				long position = 0;
+				while (position < size && !cancelled) {
+					long length = Math.min(MAP_WINDOW, size - position);
+					ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+					if (position == 0 && isBinary(buffer))
+						break;
+					position += searchLines(file, buffer, line, matcher, position + length == size);
+				}
+			}
+			files.increment();
+			bytes.add(size);
+		} catch (IOException e) {
+			// unreadable files are skipped
+		}
+		scheduleReport();
+	}
+
+	/**
+	 * Checks whether a buffer starts with binary content.
+	 * @param buffer the buffer.
+	 * @return true, if a NUL byte is found in the first bytes, false otherwise.
+	 */
+	private static boolean isBinary(ByteBuffer buffer) {
+		int end = Math.min(buffer.limit(), BINARY_PROBE);
+		for (int i = 0; i < end; i++) {
+			if (buffer.get(i) == 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Searches the complete lines of a buffer.
+	 * @param file the file.
+	 * @param buffer the buffer holding a part of the file.
+	 * @param line the number of the first line in the buffer, updated with the next line number.
+	 * @param matcher the matcher of the regular expression, null for a literal query.
+	 * @param last true, if the buffer holds the end of the file.
+	 * @return the number of bytes searched; an incomplete last line is searched with the next
+	 *         buffer.
+	 */
+	private int searchLines(Path file, ByteBuffer buffer, long[] line, Matcher matcher, boolean last) {
+		int limit = buffer.limit();
+		int start = 0;
+		while (start < limit && !cancelled) {
+			int end = start;
+			while (end < limit && buffer.get(end) != '\n')
+				end++;
+			// an incomplete line continues in the next window unless it fills the whole window
+			if (end == limit && !last && start > 0)
+				break;
+			if (matcher != null ? matcher.reset(lineText(buffer, start, end)).find()
+					: containsLiteral(buffer, start, end))
+				addMatch(new Match(file, line[0], decode(buffer, start, end)));
+			line[0]++;
+			start = end + 1;
+		}
+		return Math.min(start, limit);
+	}
+
+	/**
+	 * Gets the text of a line the regular expression is matched against.
+	 * @param buffer the buffer.
+	 * @param start the start of the line.
+	 * @param end the end of the line (exclusive).
+	 * @return the line decoded as UTF-8, a view of the line if it is ASCII only.
+	 */
+	private static CharSequence lineText(ByteBuffer buffer, int start, int end) {
+		int i = start;
+		while (i < end && buffer.get(i) >= 0)
+			i++;
+		if (i == end)
+			return new LineSequence(buffer, start, end);
+		ByteBuffer line = buffer.duplicate();
+		line.limit(end).position(start);
+		return StandardCharsets.UTF_8.decode(line);
+	}
+
+	/**
+	 * Checks whether a line contains the literal query.
+	 * @param buffer the buffer.
+	 * @param start the start of the line.
+	 * @param end the end of the line (exclusive).
+	 * @return true, if the line contains the literal query, false otherwise.
+	 */
+	private boolean containsLiteral(ByteBuffer buffer, int start, int end) {
+		int last = end - literal.length;
+		byte first = literal[0];
+		outer: for (int i = start; i <= last; i++) {
+			if (buffer.get(i) != first)
+				continue;
+			for (int j = 1; j < literal.length; j++) {
+				if (buffer.get(i + j) != literal[j])
+					continue outer;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Decodes the beginning of a line for display.
+	 * @param buffer the buffer.
+	 * @param start the start of the line.
+	 * @param end the end of the line (exclusive).
+	 * @return the decoded line.
+	 */
+	private static String decode(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[Math.min(end - start, MAX_LINE_BYTES)];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(start + i);
+		return new String(bytes, StandardCharsets.UTF_8).trim();
+	}
+
+	/**
+	 * Adds a match, the search is stopped once the maximum number of matches is reached.
+	 * @param match the match.
+	 */
+	private void addMatch(Match match) {
+		if (matchCount.incrementAndGet() > MAX_MATCHES) {
+			cancelled = true;
+			return;
+		}
+		found.add(match);
+		scheduleReport();
+	}
+
+	/**
+	 * Schedules reporting the new matches and the progress in the JavaFX thread.
+	 */
+	private void scheduleReport() {
+		if (updatePending.compareAndSet(false, true))
+			Platform.runLater(() -> report(false));
+	}
+
+	/**
+	 * Reports the new matches and the progress.
+	 * @param done true, if the search has finished.
+	 */
+	private void report(boolean done) {
+		updatePending.set(false);
+		List<Match> matches = new ArrayList<>();
+		for (Match match = found.poll(); match != null; match = found.poll())
+			matches.add(match);
+		listener.update(matches, files.sum(), bytes.sum(), done);
+	}
+
+	/**
+	 * A single matching line.
+	 */
+	public static class Match {
+		/** The file. */
+		private final Path file;
+		/** The line number. */
+		private final long line;
+		/** The text of the line. */
+		private final String text;
+
+		/**
+		 * Creates a new instance.
+		 * @param file the file.
+		 * @param line the line number.
+		 * @param text the text of the line.
+		 */
+		Match(Path file, long line, String text) {
+			this.file = file;
+			this.line = line;
+			this.text = text;
+		}
+
+		/**
+		 * Gets the file.
+		 * @return the file.
+		 */
+		public Path getFile() {
+			return file;
+		}
+
+		/**
+		 * Gets the line number.
+		 * @return the line number starting with 1.
+		 */
+		public long getLine() {
+			return line;
+		}
+
+		/**
+		 * Gets the text of the line.
+		 * @return the text of the line.
+		 */
+		public String getText() {
+			return text;
+		}
+
+		@Override
+		public String toString() {
+			return file + ":" + line + ": " + text;
+		}
+	}
+
+	/**
+	 * A line of ASCII characters of a buffer viewed as characters without copying.
+	 */
+	private static class LineSequence implements CharSequence {
+		/** The buffer. */
+		private final ByteBuffer buffer;
+		/** The start of the line. */
+		private final int start;
+		/** The end of the line (exclusive). */
+		private final int end;
+
+		/**
+		 * Creates a new instance.
+		 * @param buffer the buffer.
+		 * @param start the start of the line.
+		 * @param end the end of the line (exclusive).
+		 */
+		LineSequence(ByteBuffer buffer, int start, int end) {
+			this.buffer = buffer;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end - start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buffer.get(start + index) & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return new LineSequence(buffer, start + from, start + to);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder(length());
+			for (int i = start; i < end; i++)
+				builder.append((char) (buffer.get(i) & 0xFF));
+			return builder.toString();
+		}
+	}
+}
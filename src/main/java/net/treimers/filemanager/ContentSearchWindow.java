@@ -0,0 +1,91 @@
+package net.treimers.filemanager;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+/**
+ * A window showing the matches of a content search while it runs.
+ *
+ * Closing the window or pressing Cancel stops the search.
+ */
+public class ContentSearchWindow {
+	/** The window. */
+	private final Stage stage = new Stage();
+	/** The list showing the matches. */
+	private final ListView<ContentSearch.Match> matchList = new ListView<>();
+	/** The label showing the progress. */
+	private final Label statusLabel = new Label();
+	/** The button used to cancel the search or close the window. */
+	private final Button cancelButton = new Button("Cancel");
+	/** The search. */
+	private final ContentSearch search;
+	/** Flag indicating a finished search. */
+	private boolean done;
+
+	/**
+	 * Creates a new instance.
+	 * @param owner the owner window.
+	 * @param dir the directory to search.
+	 * @param query the text or regular expression to find.
+	 * @param regex true, if the query is a regular expression.
+	 * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid.
+	 */
+	public ContentSearchWindow(Window owner, Path dir, String query, boolean regex) {
+		search = new ContentSearch(dir, query, regex, this::update);
+		stage.initOwner(owner);
+		stage.setTitle("Search in Files: " + query);
+		HBox bottom = new HBox(8, statusLabel, cancelButton);
+		bottom.setPadding(new Insets(4));
+		HBox.setHgrow(statusLabel, Priority.ALWAYS);
+		statusLabel.setMaxWidth(Double.MAX_VALUE);
+		BorderPane pane = new BorderPane(matchList);
+		pane.setBottom(bottom);
+		stage.setScene(new Scene(pane, 700, 400));
+		cancelButton.setOnAction(event -> {
+			if (done)
+				stage.close();
+			else
+				search.cancel();
+		});
+		stage.setOnHidden(event -> search.cancel());
+	}
+
+	/**
+	 * Shows the window and starts the search.
+	 */
+	public void show() {
+		statusLabel.setText("Searching...");
+		stage.show();
+		search.start();
+	}
+
+	// private methods
+
+	/**
+	 * Shows new matches and the progress.
+	 * @param matches the new matches.
+	 * @param files the number of files searched so far.
+	 * @param bytes the number of bytes searched so far.
+	 * @param finished true, if the search has finished.
+	 */
+	private void update(List<ContentSearch.Match> matches, long files, long bytes, boolean finished) {
+		matchList.getItems().addAll(matches);
+		statusLabel.setText(String.format("%,d matches in %,d files (%,d bytes)%s", matchList.getItems().size(),
+				files, bytes, finished ? "" : " ..."));
+		if (finished) {
+			done = true;
+			cancelButton.setText("Close");
+		}
+	}
+}
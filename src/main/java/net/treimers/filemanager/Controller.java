@@ -1,33 +1,38 @@
 package net.treimers.filemanager;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.regex.PatternSyntaxException;
 
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckMenuItem;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuBar;
-import javafx.scene.control.TableColumn;
+import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
+import javafx.scene.control.ToggleGroup;
 import javafx.scene.control.TreeCell;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Priority;
 import javafx.stage.DirectoryChooser;
@@ -40,44 +45,60 @@ public class Controller implements Initializable, DialogHandler {
 	/** The table view on the right side. */
 	@FXML
 	private TableView<FileInfo> tableView;
+	/** The text field holding the filter of the table view. */
+	@FXML
+	private TextField filterField;
+	/** The label below the table view. */
+	@FXML
+	private Label statusLabel;
+	/** The text field used to search files by name. */
+	@FXML
+	private TextField searchField;
 	/** The tree view on the left side. */
 	@FXML
 	private TreeView<File> treeView;
+	/** The toggle group of the sort order menu items. */
+	@FXML
+	private ToggleGroup sortGroup;
+	/** The menu item used to list directories first. */
+	@FXML
+	private CheckMenuItem directoriesFirst;
 	/** The root item of the tree view. */
-	private FileTreeItem root;
+	private RootTreeItem root;
+	/** The sorting selected in the view menu. */
+	private Sorting sorting = Sorting.DEFAULT;
 	/** The primary stage. */
 	private Stage primaryStage;
 	/** The drag and drop handler. */
 	private DragDropHandler dragHandler;
+	/** The details view showing the selected directory in the table view. */
+	private DetailsView detailsView;
+	/** The search view finding files in the opened root. */
+	private SearchView searchView;
+	/** The window showing the background jobs, null if not opened yet. */
+	private JobsWindow jobsWindow;
+	/** The window showing the recorded timings, null if not opened yet. */
+	private DiagnosticsWindow diagnosticsWindow;
 
 	@Override
 	public void initialize(URL location, ResourceBundle resources) {
 		dragHandler = new DragDropHandler(treeView, this);
-		TableColumn<FileInfo, String> name = new TableColumn<>("Name");
-		name.setCellValueFactory(new PropertyValueFactory<FileInfo, String>("name"));
-		tableView.getColumns().add(name);
-		TableColumn<FileInfo, String> date = new TableColumn<>("Date");
-		date.setCellValueFactory(new PropertyValueFactory<FileInfo, String>("date"));
-		tableView.getColumns().add(date);
-		TableColumn<FileInfo, String> size = new TableColumn<>("Size");
-		size.setCellValueFactory(new PropertyValueFactory<FileInfo, String>("size"));
-		tableView.getColumns().add(size);
+		detailsView = new DetailsView(tableView, filterField, statusLabel);
+		searchView = new SearchView(searchField, this::reveal);
 		treeView.setCellFactory(new Callback<TreeView<File>, TreeCell<File>>() {
 			@Override
 			public TreeCell<File> call(TreeView<File> param) {
 				return new FileTreeCell(dragHandler);
 			}
 		});
+		treeView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
 		treeView.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<TreeItem<File>>() {
 			@Override
 			public void changed(ObservableValue<? extends TreeItem<File>> observable, TreeItem<File> oldValue,
 					TreeItem<File> newValue) {
-				tableView.getItems().clear();
-				if (newValue == null)
-					return;
-				File file = newValue.getValue();
-				ObservableList<FileInfo> list = FXCollections.observableArrayList(new FileInfo(file));
-				tableView.setItems(list);
+				detailsView.show(newValue instanceof FileTreeItem ? (FileTreeItem) newValue : null);
+				if (newValue instanceof FileTreeItem)
+					((FileTreeItem) newValue).prefetch();
 			}
 		});
 	}
@@ -93,17 +114,104 @@ public class Controller implements Initializable, DialogHandler {
 		Platform.exit();
 	}
 
+	@FXML
+	void handleSort(ActionEvent event) {
+		SortOrder order = SortOrder.valueOf((String) sortGroup.getSelectedToggle().getUserData());
+		sorting = new Sorting(order, directoriesFirst.isSelected());
+		if (root != null)
+			root.setSorting(sorting);
+	}
+
+	@FXML
+	void handleShowJobs(ActionEvent event) {
+		if (jobsWindow == null)
+			jobsWindow = new JobsWindow(primaryStage);
+		jobsWindow.show();
+	}
+
+	@FXML
+	void handleShowDiagnostics(ActionEvent event) {
+		if (diagnosticsWindow == null)
+			diagnosticsWindow = new DiagnosticsWindow(primaryStage);
+		diagnosticsWindow.show();
+	}
+
 	@FXML
 	void handleOpen(ActionEvent event) {
 		DirectoryChooser directoryChooser = new DirectoryChooser();
 		directoryChooser.setTitle("Open Directory");
 		File dir = directoryChooser.showDialog(primaryStage);
-		if (dir != null) {
-			root = new FileTreeItem(dir, this);
-			treeView.setRoot(root);
+		if (dir != null)
+			open(dir);
+	}
+
+	/**
+	 * Starts loading the persisted checksums, the details view shows them once loaded.
+	 */
+	public void loadChecksums() {
+		ChecksumCache.getInstance().startLoading(detailsView::refresh);
+	}
+
+	/**
+	 * Opens the root directory of the last session with its expanded directories, if any.
+	 */
+	public void restoreSnapshot() {
+		TreeSnapshot.load((TreeSnapshot snapshot) -> {
+			// a directory opened by the user meanwhile is kept
+			if (root != null)
+				return;
+			open(snapshot.getRoot());
+			snapshot.restore(root);
+		});
+	}
+
+	/**
+	 * Persists the opened root directory with its expanded directories for the next session.
+	 */
+	public void saveSnapshot() {
+		if (root == null)
+			return;
+		try {
+			TreeSnapshot.save(root);
+		} catch (IOException e) {
+			// the next session starts with the last snapshot written
 		}
 	}
 
+	/**
+	 * Opens a root directory in the tree.
+	 * @param dir the root directory.
+	 */
+	private void open(File dir) {
+		// the directories of the previous tree must not keep it alive
+		DirectoryWatcher.getInstance().clear();
+		root = new RootTreeItem(dir, this);
+		root.setSorting(sorting);
+		treeView.setRoot(root);
+		searchView.open(dir.toPath());
+	}
+
+	/**
+	 * Reveals a file of the opened root in the tree and selects it.
+	 * @param path the path of the file.
+	 */
+	private void reveal(Path path) {
+		if (root == null)
+			return;
+		Path relative = root.getValue().toPath().toAbsolutePath().relativize(path.toAbsolutePath());
+		List<String> names = new ArrayList<>();
+		for (Path name : relative) {
+			if (!name.toString().isEmpty())
+				names.add(name.toString());
+		}
+		root.reveal(names, (FileTreeItem item) -> {
+			treeView.getSelectionModel().select(item);
+			int row = treeView.getRow(item);
+			if (row >= 0)
+				treeView.scrollTo(row);
+		});
+	}
+
 	/**
 	 * Sets the primary stage used as dialog owner.
 	 * @param primaryStage the primary stage.
@@ -179,4 +287,47 @@ public class Controller implements Initializable, DialogHandler {
 		else
 			return result.get();
 	}
-}
\ No newline at end of file
+
+	@Override
+	public void showContentSearch(File dir) {
+		String query = showTextInputDialog("Search in Files", "Searching in files below " + dir.getName(),
+				"Please enter text to find (enclose in / for a regular expression):", "");
+		if (query == null || query.isEmpty())
+			return;
+		boolean regex = query.length() > 2 && query.startsWith("/") && query.endsWith("/");
+		if (regex)
+			query = query.substring(1, query.length() - 1);
+		try {
+			new ContentSearchWindow(primaryStage, dir.toPath(), query, regex).show();
+		} catch (PatternSyntaxException e) {
+			showAlert(AlertType.ERROR, "Error", "Invalid regular expression", e.getMessage());
+		}
+	}
+
+	@Override
+	public void showDuplicates(File dir) {
+		DuplicateFinder finder = new DuplicateFinder(dir.toPath());
+		finder.setOnFinished(() -> {
+			if (!finder.isCancelled())
+				new DuplicatesWindow(primaryStage, dir.toPath(), finder.getGroups()).show();
+		});
+		startJob(finder);
+	}
+
+	@Override
+	public void computeChecksums(List<File> files, ChecksumAlgorithm algorithm) {
+		List<Path> sources = new ArrayList<>();
+		for (File file : files)
+			sources.add(file.toPath());
+		ChecksumJob job = new ChecksumJob(sources, algorithm);
+		// the details view shows the new checksums
+		job.setOnFinished(detailsView::refresh);
+		startJob(job);
+	}
+
+	@Override
+	public void startJob(Job job) {
+		JobManager.getInstance().submit(job);
+		handleShowJobs(null);
+	}
+}
@@ -0,0 +1,331 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copies files and directory trees into a target directory in the background.
+ *
+ * The sources are scanned first without following symbolic links, then the directories are
+ * created and the files are copied by a bounded number of parallel workers configured with the
+ * system property {@code filemanager.copy.threads}. Regular files are transferred with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, so the
+ * kernel copies the data without passing it through the Java heap. Symbolic links and special
+ * files are copied with {@link Files#copy(Path, Path, java.nio.file.CopyOption...)}.
+ *
+ * A file is written to a hidden partial file {@code .<name>.<tag>.part} and renamed when complete,
+ * after its permissions and times have been copied. The tag is a hash of path, size and
+ * modification time of the source, so a partial file is only ever taken for a copy of the very
+ * same source and files of the user, e.g. a {@code <name>.part} of a browser, are never touched.
+ * This makes a copy resumable: files already present with the same size and modification time are
+ * skipped and a partial file is continued, unless the source has been modified since. Directory
+ * times are set last, as creating their children changes them.
+ */
+public class CopyJob extends Job {
+	/** The number of files copied in parallel by a single copy job. */
+	private static final int THREADS = Integer.getInteger("filemanager.copy.threads", 4);
+	/** The number of bytes transferred at once, progress is reported after each chunk. */
+	private static final long CHUNK_SIZE = 8 * 1024 * 1024;
+	/** The suffix of partially copied files. */
+	static final String PART_SUFFIX = ".part";
+	/** The maximum number of characters of the target name used in the name of a partial file. */
+	private static final int MAX_PART_NAME = 200;
+	/** The files and directory trees to copy. */
+	private final List<Path> sources;
+	/** The directory to copy into. */
+	private final Path targetDir;
+	/** The directories to create, parents before children. */
+	private final List<Entry> directories = new ArrayList<>();
+	/** The files to copy. */
+	private final List<Entry> files = new ArrayList<>();
+	/** The partial files written by this job. */
+	private final Set<Path> parts = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Creates a new instance.
+	 * @param sources the files and directory trees to copy.
+	 * @param targetDir the directory to copy into.
+	 */
+	public CopyJob(List<Path> sources, Path targetDir) {
+		this("Copy", sources, targetDir);
+	}
+
+	/**
+	 * Creates a new instance with a title naming the operation.
+	 * @param operation the name of the operation shown in the title.
+	 * @param sources the files and directory trees to copy.
+	 * @param targetDir the directory to copy into.
+	 */
+	protected CopyJob(String operation, List<Path> sources, Path targetDir) {
+		super(sources.size() == 1 ? operation + " " + sources.get(0).getFileName() + " to " + targetDir
+				: String.format("%s %,d items to %s", operation, sources.size(), targetDir));
+		this.sources = sources;
+		this.targetDir = targetDir;
+	}
+
+	@Override
+	protected void execute() throws IOException {
+		copyAll(sources);
+	}
+
+	// protected methods
+
+	/**
+	 * Gets the files and directory trees to copy.
+	 * @return the sources.
+	 */
+	protected List<Path> getSources() {
+		return sources;
+	}
+
+	/**
+	 * Gets the copy of a source in the target directory.
+	 * @param source the source.
+	 * @return the copy of the source.
+	 */
+	protected Path getTarget(Path source) {
+		return targetDir.resolve(source.getFileName().toString());
+	}
+
+	/**
+	 * Checks that a source is not copied into or onto itself.
+	 * 
+	 * A source copied into its own directory would otherwise be taken for a complete copy.
+	 * @param source the source.
+	 * @throws IOException if the target directory is the source or one of its descendants, or if
+	 *             the copy of the source is the source itself.
+	 */
+	protected void checkTarget(Path source) throws IOException {
+		Path normalized = source.toAbsolutePath().normalize();
+		if (targetDir.toAbsolutePath().normalize().startsWith(normalized))
+			throw new IOException("Cannot copy " + source + " into itself");
+		if (getTarget(source).toAbsolutePath().normalize().equals(normalized))
+			throw new IOException("Cannot copy " + source + " onto itself");
+	}
+
+	/**
+	 * Copies sources into the target directory: scans them, creates the directories, copies the
+	 * files in parallel and finally copies the directory attributes.
+	 * 
+	 * Returns early if the job has been cancelled.
+	 * @param sources the files and directory trees to copy.
+	 * @throws IOException if a source cannot be copied at all.
+	 */
+	protected void copyAll(List<Path> sources) throws IOException {
+		// nothing is copied unless all sources can be copied
+		for (Path source : sources)
+			checkTarget(source);
+		for (Path source : sources) {
+			scan(source, getTarget(source));
+			if (isCancelled())
+				return;
+		}
+		setScanned();
+		for (Entry directory : directories) {
+			if (isCancelled())
+				return;
+			Files.createDirectories(directory.target);
+		}
+		runParallel(THREADS, files.size(), new Step() {
+			@Override
+			public void run(int item) throws IOException {
+				copy(files.get(item));
+			}
+
+			@Override
+			public Path getPath(int item) {
+				return files.get(item).source;
+			}
+		});
+		if (isCancelled())
+			return;
+		// children are complete, so the times of the directories are not changed anymore
+		for (int i = directories.size() - 1; i >= 0; i--) {
+			Entry directory = directories.get(i);
+			try {
+				copyAttributes(directory);
+			} catch (IOException e) {
+				addError(directory.target, e);
+			}
+		}
+	}
+
+	/**
+	 * Gets the partial files written by this job and not completed yet.
+	 * @return the partial files, e.g. to delete them when the job is rolled back.
+	 */
+	protected Set<Path> getParts() {
+		return parts;
+	}
+
+	/**
+	 * Gets the hidden file a copy is written to before it is complete.
+	 * 
+	 * The name is tagged with a hash of path, size and modification time of the source, so it
+	 * is owned by copies of this source and never clashes with a file of the user.
+	 * @param source the source.
+	 * @param attributes the attributes of the source.
+	 * @param target the copy.
+	 * @return the partial copy.
+	 */
+	static Path getPart(Path source, BasicFileAttributes attributes, Path target) {
+		byte[] identity = (source.toAbsolutePath() + "\0" + attributes.size() + "\0"
+				+ attributes.lastModifiedTime().toMillis()).getBytes(StandardCharsets.UTF_8);
+		XxHash64 hash = new XxHash64();
+		hash.update(identity, 0, identity.length);
+		String name = target.getFileName().toString();
+		if (name.length() > MAX_PART_NAME)
+			name = name.substring(0, MAX_PART_NAME);
+		return target.resolveSibling("." + name + "." + Long.toHexString(hash.getValue()) + PART_SUFFIX);
+	}
+
+	// private methods
+
+	/**
+	 * Collects the directories and files of a source.
+	 * @param source the file or directory tree to copy.
+	 * @param target the copy of the source.
+	 * @throws IOException if the source cannot be read.
+	 */
+	private void scan(Path source, Path target) throws IOException {
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+				directories.add(new Entry(dir, target.resolve(source.relativize(dir).toString()), attributes));
+				return isCancelled() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				Path copy = file.equals(source) ? target : target.resolve(source.relativize(file).toString());
+				files.add(new Entry(file, copy, attributes));
+				addTotal(attributes.isRegularFile() ? attributes.size() : 0, 1);
+				return isCancelled() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exception) {
+				addError(file, exception);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Copies a single file, resuming a previous partial copy.
+	 * @param entry the file.
+	 * @throws IOException if the file cannot be copied.
+	 */
+	private void copy(Entry entry) throws IOException {
+		if (!entry.attributes.isRegularFile()) {
+			Files.copy(entry.source, entry.target, LinkOption.NOFOLLOW_LINKS, StandardCopyOption.COPY_ATTRIBUTES,
+					StandardCopyOption.REPLACE_EXISTING);
+			addDone(0, 1);
+			return;
+		}
+		long size = entry.attributes.size();
+		long lastModified = entry.attributes.lastModifiedTime().toMillis();
+		BasicFileAttributes existing = readAttributes(entry.target);
+		if (existing != null && existing.isRegularFile() && existing.size() == size
+				&& existing.lastModifiedTime().toMillis() == lastModified) {
+			// copied completely before
+			addDone(size, 1);
+			return;
+		}
+		Path part = getPart(entry.source, entry.attributes, entry.target);
+		BasicFileAttributes partial = readAttributes(part);
+		long position = 0;
+		if (partial != null && partial.isRegularFile() && partial.size() <= size
+				&& partial.lastModifiedTime().toMillis() >= lastModified) {
+			// continue an interrupted copy of an unchanged source
+			position = partial.size();
+			addDone(position, 0);
+		}
+		parts.add(part);
+		try (FileChannel in = FileChannel.open(entry.source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			out.truncate(position);
+			out.position(position);
+			while (position < size) {
+				if (isCancelled())
+					return;
+				long transferred = in.transferTo(position, Math.min(CHUNK_SIZE, size - position), out);
+				if (transferred <= 0)
+					throw new IOException("File has been truncated while copying");
+				position += transferred;
+				addDone(transferred, 0);
+			}
+		}
+		copyAttributes(new Entry(entry.source, part, entry.attributes));
+		Files.move(part, entry.target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		parts.remove(part);
+		addDone(0, 1);
+	}
+
+	/**
+	 * Copies the permissions and times of a source to its copy.
+	 * @param entry the source and its copy.
+	 * @throws IOException if the attributes cannot be copied.
+	 */
+	private static void copyAttributes(Entry entry) throws IOException {
+		try {
+			Files.setPosixFilePermissions(entry.target,
+					Files.getPosixFilePermissions(entry.source, LinkOption.NOFOLLOW_LINKS));
+		} catch (UnsupportedOperationException e) {
+			// not a POSIX file system, only the times are copied
+		}
+		Files.getFileAttributeView(entry.target, BasicFileAttributeView.class).setTimes(
+				entry.attributes.lastModifiedTime(), entry.attributes.lastAccessTime(), null);
+	}
+
+	/**
+	 * Reads the attributes of a file if it exists.
+	 * @param path the file.
+	 * @return the attributes, null if the file does not exist.
+	 */
+	private static BasicFileAttributes readAttributes(Path path) {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * A file or directory to copy.
+	 */
+	private static class Entry {
+		/** The source. */
+		private final Path source;
+		/** The copy of the source. */
+		private final Path target;
+		/** The attributes of the source. */
+		private final BasicFileAttributes attributes;
+
+		/**
+		 * Creates a new instance.
+		 * @param source the source.
+		 * @param target the copy of the source.
+		 * @param attributes the attributes of the source.
+		 */
+		Entry(Path source, Path target, BasicFileAttributes attributes) {
+			this.source = source;
+			this.target = target;
+			this.attributes = attributes;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deletes files and directory trees in the background.
+ *
+ * The sources are scanned first without following symbolic links, so links are deleted but never
+ * their targets. Then the files are deleted by a bounded number of parallel workers configured with
+ * the system property {@code filemanager.delete.threads}, followed by the directories level by
+ * level, the deepest first. Files which cannot be deleted are reported at the end, their
+ * directories are kept.
+ */
+public class DeleteJob extends Job {
+	/** The number of entries deleted in parallel by a single delete job. */
+	private static final int THREADS = Integer.getInteger("filemanager.delete.threads", 4);
+	/** The files and directory trees to delete. */
+	private final List<Path> sources;
+	/** The files to delete. */
+	private final List<Path> files = new ArrayList<>();
+	/** The sizes of the files to delete. */
+	private final List<Long> sizes = new ArrayList<>();
+	/** The directories to delete by their depth below a source. */
+	private final List<List<Path>> directories = new ArrayList<>();
+
+	/**
+	 * Creates a new instance.
+	 * @param sources the files and directory trees to delete.
+	 */
+	public DeleteJob(List<Path> sources) {
+		super(sources.size() == 1 ? "Delete " + sources.get(0)
+				: String.format("Delete %,d items", sources.size()));
+		this.sources = sources;
+	}
+
+	@Override
+	protected void execute() throws IOException {
+		for (Path source : sources) {
+			scan(source);
+			if (isCancelled())
+				return;
+		}
+		setScanned();
+		runParallel(THREADS, files.size(), new Step() {
+			@Override
+			public void run(int item) throws IOException {
+				delete(files.get(item), sizes.get(item));
+			}
+
+			@Override
+			public Path getPath(int item) {
+				return files.get(item);
+			}
+		});
+		// directories are empty once all their children have been deleted
+		for (int depth = directories.size() - 1; depth >= 0 && !isCancelled(); depth--) {
+			List<Path> level = directories.get(depth);
+			runParallel(THREADS, level.size(), new Step() {
+				@Override
+				public void run(int item) throws IOException {
+					delete(level.get(item), 0);
+				}
+
+				@Override
+				public Path getPath(int item) {
+					return level.get(item);
+				}
+			});
+		}
+	}
+
+	// private methods
+
+	/**
+	 * Collects the files and directories of a source.
+	 * @param source the file or directory tree to delete.
+	 * @throws IOException if the source cannot be read.
+	 */
+	private void scan(Path source) throws IOException {
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+			/** The depth of the visited directory below the source. */
+			private int depth = -1;
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+				depth++;
+				if (directories.size() == depth)
+					directories.add(new ArrayList<>());
+				directories.get(depth).add(dir);
+				addTotal(0, 1);
+				return isCancelled() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exception) {
+				depth--;
+				if (exception != null)
+					addError(dir, exception);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				long size = attributes.isRegularFile() ? attributes.size() : 0;
+				files.add(file);
+				sizes.add(size);
+				addTotal(size, 1);
+				return isCancelled() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exception) {
+				addError(file, exception);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Deletes a single file or empty directory.
+	 * @param path the file or directory.
+	 * @param size the size of a regular file, 0 otherwise.
+	 * @throws IOException if the entry cannot be deleted.
+	 */
+	private void delete(Path path, long size) throws IOException {
+		Files.delete(path);
+		addDone(size, 1);
+	}
+}
@@ -0,0 +1,371 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableColumn.SortType;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+
+/**
+ * The details view listing the contents of the selected directory in a table.
+ *
+ * The table rows are backed by the compact listing of the directory. A row object is only
+ * created when the table asks for it, i.e. for rows that are rendered, so huge directories need
+ * no per entry objects. Sorting and filtering work on the listing in memory: the table sort policy
+ * is replaced by reordering the listing through precomputed index permutations comparing the raw
+ * sizes and modification times, and the filter selects matching indices. Both run in the
+ * background, the rows shown are replaced once the latest sort order and filter have been applied.
+ */
+public class DetailsView {
+	/** The rows shown if no directory is shown. */
+	private static final ObservableList<FileInfo> NO_ROWS = FXCollections.emptyObservableList();
+	/** The table showing the rows. */
+	private final TableView<FileInfo> tableView;
+	/** The text field holding the name filter. */
+	private final TextField filterField;
+	/** The label showing the number of entries and the disk usage. */
+	private final Label statusLabel;
+	/** The name column. */
+	private final TableColumn<FileInfo, String> nameColumn;
+	/** The date column. */
+	private final TableColumn<FileInfo, String> dateColumn;
+	/** The size column. */
+	private final TableColumn<FileInfo, String> sizeColumn;
+	/** The owner column. */
+	private final TableColumn<FileInfo, String> ownerColumn;
+	/** The permissions column. */
+	private final TableColumn<FileInfo, String> permissionsColumn;
+	/** The checksum column. */
+	private final TableColumn<FileInfo, String> checksumColumn;
+	/** The shown listing, null if nothing is shown. */
+	private Listing listing;
+	/** The rows currently shown. */
+	private Rows rows;
+	/** Flag indicating rows to be created again although sort order and filter did not change. */
+	private boolean stale;
+	/** The generation of the latest rows requested, older rows are dropped. */
+	private int rowsGeneration;
+	/** The pending load of the shown directory, null if none. */
+	private LoadScheduler.Task<Listing> loadTask;
+	/** The generation of the latest show request, results of older loads are dropped. */
+	private int generation;
+	/** The disk usage calculation of the shown directory, null if none. */
+	private DiskUsageCalculator.Calculation diskUsage;
+	/** The formatted disk usage of the shown directory, null if none. */
+	private String usageText;
+
+	/**
+	 * Creates a new instance.
+	 * @param tableView the table showing the rows.
+	 * @param filterField the text field holding the name filter.
+	 * @param statusLabel the label showing the number of entries and the disk usage.
+	 */
+	public DetailsView(TableView<FileInfo> tableView, TextField filterField, Label statusLabel) {
+		this.tableView = tableView;
+		this.filterField = filterField;
+		this.statusLabel = statusLabel;
+		nameColumn = new TableColumn<>("Name");
+		nameColumn.setCellValueFactory((TableColumn.CellDataFeatures<FileInfo, String> data) -> data.getValue().nameProperty());
+		dateColumn = new TableColumn<>("Date");
+		dateColumn.setCellValueFactory((TableColumn.CellDataFeatures<FileInfo, String> data) -> data.getValue().dateProperty());
+		sizeColumn = new TableColumn<>("Size");
+		sizeColumn.setCellValueFactory((TableColumn.CellDataFeatures<FileInfo, String> data) -> data.getValue().sizeProperty());
+		ownerColumn = new TableColumn<>("Owner");
+		ownerColumn.setCellValueFactory((TableColumn.CellDataFeatures<FileInfo, String> data) -> data.getValue().ownerProperty());
+		ownerColumn.setSortable(false);
+		permissionsColumn = new TableColumn<>("Permissions");
+		permissionsColumn.setCellValueFactory((TableColumn.CellDataFeatures<FileInfo, String> data) -> data.getValue().permissionsProperty());
+		permissionsColumn.setSortable(false);
+		checksumColumn = new TableColumn<>("Checksum");
+		checksumColumn.setCellValueFactory((TableColumn.CellDataFeatures<FileInfo, String> data) -> data.getValue().checksumProperty());
+		checksumColumn.setSortable(false);
+		tableView.getColumns().add(nameColumn);
+		tableView.getColumns().add(dateColumn);
+		tableView.getColumns().add(sizeColumn);
+		tableView.getColumns().add(ownerColumn);
+		tableView.getColumns().add(permissionsColumn);
+		tableView.getColumns().add(checksumColumn);
+		tableView.setSortPolicy((TableView<FileInfo> table) -> {
+			updateRows(null);
+			return true;
+		});
+		filterField.textProperty().addListener((observable, oldValue, newValue) -> updateRows(null));
+	}
+
+	/**
+	 * Shows the contents of a directory, or the directory of a file with the file selected.
+	 * @param item the selected tree item, null to clear the view.
+	 */
+	public void show(FileTreeItem item) {
+		if (loadTask != null) {
+			loadTask.cancel();
+			loadTask = null;
+		}
+		if (diskUsage != null) {
+			diskUsage.cancel();
+			diskUsage = null;
+		}
+		usageText = null;
+		if (item == null) {
+			generation++;
+			setListing(null, null);
+		} else if (!item.isDirectory()) {
+			generation++;
+			setListing(item.getListing(), item.getName());
+		} else {
+			File dir = item.getValue();
+			int loadGeneration = ++generation;
+			setListing(null, null);
+			loadTask = LoadScheduler.getInstance().submit(dir.toPath(), LoadScheduler.Priority.FOREGROUND,
+					() -> {
+						try {
+							return ListingCache.getInstance().list(dir, null, null);
+						} catch (IOException e) {
+							return Listing.empty(dir);
+						}
+					}, (Listing loaded, Throwable throwable) -> Platform.runLater(() -> {
+						if (loadGeneration != generation)
+							return;
+						loadTask = null;
+						setListing(loaded != null ? loaded : Listing.empty(dir), null);
+					}));
+			updateStatus();
+			// show the disk usage of the directory tree, updated while it is computed
+			diskUsage = DiskUsageCalculator.getInstance().calculate(dir.toPath(), (DiskUsage usage, boolean done) -> {
+				usageText = done ? usage.toString() : usage + " ...";
+				updateStatus();
+			});
+		}
+	}
+
+	/**
+	 * Creates the rows of the shown listing again, e.g. to show new checksums.
+	 */
+	public void refresh() {
+		stale = true;
+		updateRows(null);
+	}
+
+	// private methods
+
+	/**
+	 * Shows a listing.
+	 * @param listing the listing, null to clear the table.
+	 * @param selectedName the name of the entry to select, null if none.
+	 */
+	private void setListing(Listing listing, String selectedName) {
+		this.listing = listing;
+		rows = null;
+		if (tableView.getItems() != NO_ROWS)
+			tableView.setItems(NO_ROWS);
+		updateRows(selectedName);
+	}
+
+	/**
+	 * Creates the rows for the current listing, sort order and filter in the background if any of
+	 * them changed.
+	 *
+	 * The selected entry is kept if it is still shown.
+	 * @param selectedName the name of the entry to select, null to keep the current selection.
+	 */
+	private void updateRows(String selectedName) {
+		int sortGeneration = ++rowsGeneration;
+		if (listing == null) {
+			rows = null;
+			stale = false;
+			if (tableView.getItems() != NO_ROWS)
+				tableView.setItems(NO_ROWS);
+			updateStatus();
+			return;
+		}
+		SortOrder order = SortOrder.NAME;
+		boolean descending = false;
+		if (!tableView.getSortOrder().isEmpty()) {
+			TableColumn<FileInfo, ?> column = tableView.getSortOrder().get(0);
+			if (column == sizeColumn)
+				order = SortOrder.SIZE;
+			else if (column == dateColumn)
+				order = SortOrder.MODIFIED;
+			descending = column.getSortType() == SortType.DESCENDING;
+		}
+		String filter = filterField.getText() == null ? "" : filterField.getText();
+		if (!stale && rows != null && rows.matches(listing, order, descending, filter) && selectedName == null)
+			return;
+		Listing shown = listing;
+		SortOrder sortOrder = order;
+		boolean sortDescending = descending;
+		ForkJoinPool.commonPool().execute(() -> {
+			Rows created = createRows(shown, sortOrder, sortDescending, filter);
+			Platform.runLater(() -> {
+				if (sortGeneration == rowsGeneration)
+					showRows(created, selectedName);
+			});
+		});
+		updateStatus();
+	}
+
+	/**
+	 * Creates the rows of a listing, invoked in a background thread.
+	 * @param listing the listing.
+	 * @param order the sort order.
+	 * @param descending true, if sorted in descending order.
+	 * @param filter the name filter.
+	 * @return the rows.
+	 */
+	private static Rows createRows(Listing listing, SortOrder order, boolean descending, String filter) {
+		Listing sorted = listing.sortedBy(new Sorting(order, false));
+		int size = sorted.size();
+		int[] view = new int[size];
+		int count = 0;
+		for (int k = 0; k < size; k++) {
+			int i = descending ? size - 1 - k : k;
+			if (filter.isEmpty() || containsIgnoreCase(sorted.getName(i), filter))
+				view[count++] = i;
+		}
+		return new Rows(sorted, count == size ? view : Arrays.copyOf(view, count), order, descending, filter);
+	}
+
+	/**
+	 * Shows new rows, keeping the selected entry if it is still shown.
+	 * @param created the rows.
+	 * @param selectedName the name of the entry to select, null to keep the current selection.
+	 */
+	private void showRows(Rows created, String selectedName) {
+		if (selectedName == null) {
+			FileInfo selected = tableView.getSelectionModel().getSelectedItem();
+			if (selected != null)
+				selectedName = selected.getName();
+		}
+		rows = created;
+		stale = false;
+		tableView.setItems(rows);
+		if (selectedName != null) {
+			int index = rows.indexOfName(selectedName);
+			if (index >= 0) {
+				tableView.getSelectionModel().select(index);
+				tableView.scrollTo(index);
+			}
+		}
+		updateStatus();
+	}
+
+	/**
+	 * Shows the number of entries and the disk usage below the table.
+	 */
+	private void updateStatus() {
+		if (listing == null && loadTask == null) {
+			statusLabel.setText(null);
+			return;
+		}
+		StringBuilder status = new StringBuilder();
+		if (rows != null)
+			status.append(String.format("%,d of %,d entries", rows.size(), listing.size()));
+		else
+			status.append("Loading...");
+		if (usageText != null)
+			status.append(" - disk usage: ").append(usageText);
+		statusLabel.setText(status.toString());
+	}
+
+	/**
+	 * Checks whether a name contains a filter text ignoring case, without creating new strings.
+	 * @param name the name.
+	 * @param filter the filter text.
+	 * @return true, if the name contains the filter text, false otherwise.
+	 */
+	private static boolean containsIgnoreCase(String name, String filter) {
+		int last = name.length() - filter.length();
+		for (int i = 0; i <= last; i++) {
+			if (name.regionMatches(true, i, filter, 0, filter.length()))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The unmodifiable rows of the table backed by a listing.
+	 *
+	 * Row objects are created on first access and kept for later accesses.
+	 */
+	private static class Rows extends ObservableListBase<FileInfo> {
+		/** The sorted listing. */
+		private final Listing sorted;
+		/** The indices into the sorted listing of the shown entries. */
+		private final int[] view;
+		/** The created row objects by row index. */
+		private final FileInfo[] created;
+		/** The sort order. */
+		private final SortOrder order;
+		/** Flag indicating descending order. */
+		private final boolean descending;
+		/** The name filter. */
+		private final String filter;
+
+		/**
+		 * Creates a new instance.
+		 * @param sorted the sorted listing.
+		 * @param view the indices into the sorted listing of the shown entries.
+		 * @param order the sort order.
+		 * @param descending true, if sorted in descending order.
+		 * @param filter the name filter.
+		 */
+		Rows(Listing sorted, int[] view, SortOrder order, boolean descending, String filter) {
+			this.sorted = sorted;
+			this.view = view;
+			this.created = new FileInfo[view.length];
+			this.order = order;
+			this.descending = descending;
+			this.filter = filter;
+		}
+
+		@Override
+		public FileInfo get(int index) {
+			FileInfo row = created[index];
+			if (row == null) {
+				row = new FileInfo(sorted.getEntry(view[index]));
+				created[index] = row;
+			}
+			return row;
+		}
+
+		@Override
+		public int size() {
+			return view.length;
+		}
+
+		/**
+		 * Checks whether these rows show a listing with the given order and filter.
+		 * @param listing the listing.
+		 * @param order the sort order.
+		 * @param descending true, if sorted in descending order.
+		 * @param filter the name filter.
+		 * @return true, if these rows are up to date, false otherwise.
+		 */
+		boolean matches(Listing listing, SortOrder order, boolean descending, String filter) {
+			return listing.sortedBy(Sorting.DEFAULT) == sorted.sortedBy(Sorting.DEFAULT) && this.order == order
+					&& this.descending == descending && this.filter.equals(filter);
+		}
+
+		/**
+		 * Finds the row of an entry.
+		 * @param name the entry name.
+		 * @return the row index, -1 if the entry is not shown.
+		 */
+		int indexOfName(String name) {
+			for (int i = 0; i < view.length; i++) {
+				if (sorted.getName(view[i]).equals(name))
+					return i;
+			}
+			return -1;
+		}
+	}
+}
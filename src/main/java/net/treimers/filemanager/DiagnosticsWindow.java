@@ -0,0 +1,111 @@
+package net.treimers.filemanager;
+
+import java.util.function.ToDoubleFunction;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.geometry.Insets;
+import javafx.geometry.Orientation;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.ListView;
+import javafx.scene.control.SplitPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
+
+/**
+ * A window showing the timings recorded by the {@link Metrics}.
+ *
+ * The upper table shows count, mean, median, 99th percentile and maximum of every stage, e.g. the
+ * expand latency, the lower list the slowest directory loads with the time spent in each stage.
+ * Both are refreshed every second while the window is shown.
+ */
+public class DiagnosticsWindow {
+	/** The refresh interval. */
+	private static final Duration REFRESH_INTERVAL = Duration.seconds(1);
+	/** The window. */
+	private final Stage stage = new Stage();
+	/** The table of stage statistics. */
+	private final TableView<Metrics.Statistics> statisticsTable = new TableView<>();
+	/** The list of the slowest loads. */
+	private final ListView<String> slowestList = new ListView<>();
+	/** The timeline refreshing the window while shown. */
+	private final Timeline refresher = new Timeline(new KeyFrame(REFRESH_INTERVAL, event -> refresh()));
+
+	/**
+	 * Creates a new instance.
+	 * @param owner the owner window.
+	 */
+	public DiagnosticsWindow(Window owner) {
+		stage.initOwner(owner);
+		stage.setTitle("Diagnostics");
+		TableColumn<Metrics.Statistics, String> stageColumn = new TableColumn<>("Stage");
+		stageColumn.setCellValueFactory((TableColumn.CellDataFeatures<Metrics.Statistics, String> data) ->
+				new ReadOnlyStringWrapper(data.getValue().getStage()));
+		TableColumn<Metrics.Statistics, String> countColumn = new TableColumn<>("Count");
+		countColumn.setCellValueFactory((TableColumn.CellDataFeatures<Metrics.Statistics, String> data) ->
+				new ReadOnlyStringWrapper(String.format("%,d", data.getValue().getCount())));
+		statisticsTable.getColumns().add(stageColumn);
+		statisticsTable.getColumns().add(countColumn);
+		statisticsTable.getColumns().add(millisColumn("Mean (ms)", Metrics.Statistics::getMean));
+		statisticsTable.getColumns().add(millisColumn("p50 (ms)", Metrics.Statistics::getP50));
+		statisticsTable.getColumns().add(millisColumn("p99 (ms)", Metrics.Statistics::getP99));
+		statisticsTable.getColumns().add(millisColumn("Max (ms)", Metrics.Statistics::getMax));
+		statisticsTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+		SplitPane splitPane = new SplitPane(statisticsTable, slowestList);
+		splitPane.setOrientation(Orientation.VERTICAL);
+		Button resetButton = new Button("Reset");
+		resetButton.setOnAction(event -> {
+			Metrics.getInstance().reset();
+			refresh();
+		});
+		HBox bottom = new HBox(8, resetButton);
+		bottom.setPadding(new Insets(4));
+		BorderPane pane = new BorderPane(splitPane);
+		pane.setBottom(bottom);
+		stage.setScene(new Scene(pane, 800, 500));
+		refresher.setCycleCount(Animation.INDEFINITE);
+		stage.setOnShown(event -> refresher.play());
+		stage.setOnHidden(event -> refresher.stop());
+	}
+
+	/**
+	 * Shows the window in front of other windows.
+	 */
+	public void show() {
+		refresh();
+		stage.show();
+		stage.toFront();
+	}
+
+	// private methods
+
+	/**
+	 * Shows the current statistics.
+	 */
+	private void refresh() {
+		statisticsTable.getItems().setAll(Metrics.getInstance().getStatistics());
+		slowestList.getItems().setAll(Metrics.getInstance().getSlowestDirectories());
+	}
+
+	/**
+	 * Creates a column showing milliseconds.
+	 * @param title the column title.
+	 * @param value the function getting the milliseconds of a row.
+	 * @return the column.
+	 */
+	private static TableColumn<Metrics.Statistics, String> millisColumn(String title,
+			ToDoubleFunction<Metrics.Statistics> value) {
+		TableColumn<Metrics.Statistics, String> column = new TableColumn<>(title);
+		column.setCellValueFactory((TableColumn.CellDataFeatures<Metrics.Statistics, String> data) ->
+				new ReadOnlyStringWrapper(String.format("%,.2f", value.applyAsDouble(data.getValue()))));
+		return column;
+	}
+}
@@ -1,5 +1,8 @@
 package net.treimers.filemanager;
 
+import java.io.File;
+import java.util.List;
+
 import javafx.scene.control.Alert.AlertType;
 
 /**
@@ -39,4 +42,29 @@ public interface DialogHandler {
 	 * @return the user input string.
 	 */
 	public String showTextInputDialog(String title, String headerText, String contentText, String defaultValue);
+
+	/**
+	 * Asks for a text and shows the files below a directory containing it.
+	 * @param dir the directory to search.
+	 */
+	public void showContentSearch(File dir);
+
+	/**
+	 * Finds duplicate files below a directory in the background and shows them when done.
+	 * @param dir the directory to search.
+	 */
+	public void showDuplicates(File dir);
+
+	/**
+	 * Computes checksums of files and directory trees in the background.
+	 * @param files the files and directory trees.
+	 * @param algorithm the algorithm.
+	 */
+	public void computeChecksums(List<File> files, ChecksumAlgorithm algorithm);
+
+	/**
+	 * Starts a background job and shows its progress.
+	 * @param job the job.
+	 */
+	public void startJob(Job job);
 }
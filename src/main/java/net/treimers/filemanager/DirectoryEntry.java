@@ -0,0 +1,155 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Instances of this class hold an immutable attribute snapshot of a single directory entry.
+ *
+ * The snapshot is taken once while listing a directory so that tree items and file infos
+ * never need to query the file system again for type, size or modification time.
+ */
+public final class DirectoryEntry implements Comparable<DirectoryEntry> {
+	/** The underlying file. */
+	private final File file;
+	/** Flag indicating a directory (symbolic links are followed). */
+	private final boolean directory;
+	/** Flag indicating a regular file (symbolic links are followed). */
+	private final boolean regularFile;
+	/** The size in bytes. */
+	private final long size;
+	/** The last modification time in milliseconds since the epoch. */
+	private final long lastModified;
+
+	/**
+	 * Creates a new instance.
+	 * @param file the underlying file.
+	 * @param directory true, if the entry is a directory.
+	 * @param regularFile true, if the entry is a regular file.
+	 * @param size the size in bytes.
+	 * @param lastModified the last modification time in milliseconds since the epoch.
+	 */
+	public DirectoryEntry(File file, boolean directory, boolean regularFile, long size, long lastModified) {
+		this.file = file;
+		this.directory = directory;
+		this.regularFile = regularFile;
+		this.size = size;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Creates a new instance from file attributes.
+	 * @param file the underlying file.
+	 * @param attributes the file attributes read for this file.
+	 */
+	public DirectoryEntry(File file, BasicFileAttributes attributes) {
+		this(file, attributes.isDirectory(), attributes.isRegularFile(), attributes.size(),
+				attributes.lastModifiedTime().toMillis());
+	}
+
+	/**
+	 * Reads the attribute snapshot of a single file.
+	 *
+	 * Symbolic links are followed. Broken links are reported with the attributes of the link
+	 * itself, entries that cannot be read at all are reported as non-existing plain entries.
+	 * @param file the file.
+	 * @return the attribute snapshot of the file.
+	 */
+	public static DirectoryEntry of(File file) {
+		return of(file, file.toPath());
+	}
+
+	/**
+	 * Reads the attribute snapshot of a single file.
+	 * @param file the file.
+	 * @param path the path of the file.
+	 * @return the attribute snapshot of the file.
+	 */
+	static DirectoryEntry of(File file, Path path) {
+		BasicFileAttributes attributes = readAttributes(path);
+		if (attributes == null)
+			return new DirectoryEntry(file, false, false, 0L, 0L);
+		return new DirectoryEntry(file, attributes);
+	}
+
+	/**
+	 * Reads the attributes of a file following symbolic links.
+	 * 
+	 * Broken links are reported with the attributes of the link itself.
+	 * @param path the path of the file.
+	 * @return the attributes of the file, null if they cannot be read.
+	 */
+	static BasicFileAttributes readAttributes(Path path) {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException e) {
+			try {
+				return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			} catch (IOException e1) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Gets the underlying file.
+	 * @return the underlying file.
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Gets the file name.
+	 * @return the file name.
+	 */
+	public String getName() {
+		return file.getName();
+	}
+
+	/**
+	 * Checks whether this entry is a directory.
+	 * @return true, if this entry is a directory, false otherwise.
+	 */
+	public boolean isDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Checks whether this entry is a regular file.
+	 * @return true, if this entry is a regular file, false otherwise.
+	 */
+	public boolean isRegularFile() {
+		return regularFile;
+	}
+
+	/**
+	 * Gets the size in bytes.
+	 * @return the size in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the last modification time.
+	 * @return the last modification time in milliseconds since the epoch.
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	@Override
+	public int compareTo(DirectoryEntry other) {
+		return file.compareTo(other.file);
+	}
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+}
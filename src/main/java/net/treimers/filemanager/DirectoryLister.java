@@ -0,0 +1,62 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Utility class used to list directories.
+ *
+ * The directory is read with a single directory stream and the attributes of every entry
+ * are read exactly once while scanning, so callers get names and attributes in one pass.
+ * Long scans report their progress chunk by chunk and can be cancelled between chunks.
+ */
+public class DirectoryLister {
+	/** The number of entries scanned between two progress reports. */
+	public static final int CHUNK_SIZE = 1024;
+
+	/**
+	 * A listener informed about the progress of a scan.
+	 */
+	public interface Listener {
+		/**
+		 * Called after every chunk of scanned entries.
+		 * @param count the number of entries scanned so far.
+		 * @return true to continue the scan, false to cancel it.
+		 */
+		boolean scanned(int count);
+	}
+
+	/**
+	 * Lists the entries of a directory sorted by name.
+	 * @param dir the directory.
+	 * @return the sorted listing of the directory.
+	 * @throws IOException if the directory cannot be read.
+	 */
+	public static Listing list(File dir) throws IOException {
+		return list(dir, null);
+	}
+
+	/**
+	 * Lists the entries of a directory sorted by name and reports the scan progress.
+	 * @param dir the directory.
+	 * @param listener the listener informed after every chunk, may be null.
+	 * @return the sorted listing of the directory.
+	 * @throws IOException if the directory cannot be read.
+	 * @throws CancellationException if the listener cancelled the scan.
+	 */
+	public static Listing list(File dir, Listener listener) throws IOException {
+		Listing.Builder builder = new Listing.Builder(dir);
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+			for (Path path : stream) {
+				builder.add(path.getFileName().toString(), DirectoryEntry.readAttributes(path));
+				if (listener != null && builder.size() % CHUNK_SIZE == 0 && !listener.scanned(builder.size()))
+					throw new CancellationException("Listing cancelled: " + dir);
+			}
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,55 @@
+package net.treimers.filemanager;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event of a finished directory load with the durations of its stages.
+ */
+@Name("net.treimers.filemanager.DirectoryLoad")
+@Label("Directory Load")
+@Category("File Manager")
+@Description("A directory load from submitting it to showing its children")
+class DirectoryLoadEvent extends Event {
+	/** The loaded directory. */
+	@Label("Directory")
+	String directory;
+	/** The number of entries. */
+	@Label("Entries")
+	int entries;
+	/** Flag indicating a load the user waits for. */
+	@Label("Foreground")
+	boolean foreground;
+	/** The time waiting for a loader thread. */
+	@Label("Queued")
+	@Timespan(Timespan.NANOSECONDS)
+	long queued;
+	/** The time listing the directory. */
+	@Label("Listing")
+	@Timespan(Timespan.NANOSECONDS)
+	long listing;
+	/** The time sorting the listing. */
+	@Label("Sorting")
+	@Timespan(Timespan.NANOSECONDS)
+	long sorting;
+	/** The time creating the tree items. */
+	@Label("Tree Items")
+	@Timespan(Timespan.NANOSECONDS)
+	long treeItems;
+	/** The time waiting for the JavaFX thread. */
+	@Label("FX Queued")
+	@Timespan(Timespan.NANOSECONDS)
+	long fxQueued;
+	/** The time mutating the children in the JavaFX thread. */
+	@Label("Tree Update")
+	@Timespan(Timespan.NANOSECONDS)
+	long treeUpdate;
+	/** The time of the whole load. */
+	@Label("Total")
+	@Timespan(Timespan.NANOSECONDS)
+	long total;
+}
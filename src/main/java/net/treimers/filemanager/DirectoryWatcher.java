@@ -0,0 +1,176 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A directory watcher keeps expanded tree items in sync with the file system.
+ *
+ * Expanded directories are registered with a {@link WatchService}. Events are coalesced per
+ * directory until the directory has been quiet for a short time (or a maximum delay has passed),
+ * then every changed directory is reloaded once and the result is applied to the existing
+ * children of its tree item as a minimal diff.
+ */
+public class DirectoryWatcher implements Runnable {
+	/** The quiet time in milliseconds after the last event before changes are applied. */
+	private static final long QUIET_DELAY = 200;
+	/** The maximum time in milliseconds events of a burst are held back. */
+	private static final long MAX_DELAY = 1000;
+	/** The shared watcher instance. */
+	private static final DirectoryWatcher INSTANCE = new DirectoryWatcher();
+	/** The watched tree items by directory path. */
+	private final Map<Path, FileTreeItem> items = new HashMap<>();
+	/** The watch keys by directory path. */
+	private final Map<Path, WatchKey> keys = new HashMap<>();
+	/** The watch service, created on first registration. */
+	private WatchService watchService;
+
+	/**
+	 * Gets the shared watcher instance.
+	 * @return the shared watcher instance.
+	 */
+	public static DirectoryWatcher getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Starts watching the directory of a tree item.
+	 *
+	 * Registering a directory twice replaces the tree item notified on changes.
+	 * Directories of other file system providers are silently not watched.
+	 * @param item the tree item of an expanded directory.
+	 */
+	public synchronized void register(FileTreeItem item) {
+		Path dir = item.getValue().toPath();
+		items.put(dir, item);
+		if (keys.containsKey(dir))
+			return;
+		try {
+			if (watchService == null) {
+				watchService = FileSystems.getDefault().newWatchService();
+				Thread thread = new Thread(this, "DirectoryWatcher");
+				thread.setDaemon(true);
+				thread.start();
+			}
+			WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			keys.put(dir, key);
+		} catch (IOException | ProviderMismatchException | UnsupportedOperationException e) {
+			items.remove(dir);
+		}
+	}
+
+	/**
+	 * Stops watching the directory of a tree item.
+	 * @param item the tree item.
+	 */
+	public synchronized void unregister(FileTreeItem item) {
+		Path dir = item.getValue().toPath();
+		if (items.get(dir) != item)
+			return;
+		items.remove(dir);
+		WatchKey key = keys.remove(dir);
+		if (key != null)
+			key.cancel();
+	}
+
+	/**
+	 * Stops watching the directory of a tree item and of all its descendants, e.g. when the item
+	 * has been removed from the tree.
+	 * @param item the tree item.
+	 */
+	public synchronized void unregisterAll(FileTreeItem item) {
+		Path dir = item.getValue().toPath();
+		Iterator<Map.Entry<Path, FileTreeItem>> iterator = items.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Path, FileTreeItem> entry = iterator.next();
+			if (entry.getKey().startsWith(dir) && item.isAncestor(entry.getValue())) {
+				iterator.remove();
+				WatchKey key = keys.remove(entry.getKey());
+				if (key != null)
+					key.cancel();
+			}
+		}
+	}
+
+	/**
+	 * Stops watching all directories, e.g. when another root directory has been opened.
+	 */
+	public synchronized void clear() {
+		for (WatchKey key : keys.values())
+			key.cancel();
+		keys.clear();
+		items.clear();
+	}
+
+	/**
+	 * Processes watch events. Runs in the watcher thread.
+	 */
+	@Override
+	public void run() {
+		Set<Path> changed = new LinkedHashSet<>();
+		try {
+			while (true) {
+				// block until the first event of a burst arrives
+				collect(watchService.take(), changed);
+				long deadline = System.currentTimeMillis() + MAX_DELAY;
+				// coalesce further events until quiet or deadline reached
+				long now;
+				while ((now = System.currentTimeMillis()) < deadline) {
+					WatchKey key = watchService.poll(Math.min(QUIET_DELAY, deadline - now), TimeUnit.MILLISECONDS);
+					if (key == null)
+						break;
+					collect(key, changed);
+				}
+				for (Path dir : changed) {
+					FileTreeItem item;
+					synchronized (this) {
+						item = items.get(dir);
+					}
+					// repeated changes of a directory still waiting for its update are coalesced
+					if (item != null)
+						TreeUpdateScheduler.getInstance().submit(item, item::update);
+				}
+				changed.clear();
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// watcher stopped
+		}
+	}
+
+	// private methods
+
+	/**
+	 * Drains the events of a watch key and records its directory as changed.
+	 *
+	 * An overflow also marks the directory as changed, which results in a full reload.
+	 * @param key the signalled watch key.
+	 * @param changed the set of changed directories.
+	 */
+	private void collect(WatchKey key, Set<Path> changed) {
+		Path dir = (Path) key.watchable();
+		if (!key.pollEvents().isEmpty())
+			changed.add(dir);
+		if (!key.reset()) {
+			// directory no longer accessible
+			synchronized (this) {
+				if (keys.get(dir) == key) {
+					keys.remove(dir);
+					items.remove(dir);
+				}
+			}
+		}
+	}
+}
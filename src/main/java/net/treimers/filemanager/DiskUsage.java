@@ -0,0 +1,65 @@
+package net.treimers.filemanager;
+
+/**
+ * An immutable disk usage total of a directory tree.
+ */
+public final class DiskUsage {
+	/** The empty disk usage. */
+	public static final DiskUsage EMPTY = new DiskUsage(0, 0, 0);
+	/** The total size of all files in bytes. */
+	private final long size;
+	/** The number of files. */
+	private final long files;
+	/** The number of directories including the top directory. */
+	private final long directories;
+
+	/**
+	 * Creates a new instance.
+	 * @param size the total size of all files in bytes.
+	 * @param files the number of files.
+	 * @param directories the number of directories.
+	 */
+	public DiskUsage(long size, long files, long directories) {
+		this.size = size;
+		this.files = files;
+		this.directories = directories;
+	}
+
+	/**
+	 * Gets the total size of all files.
+	 * @return the total size in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of files.
+	 * @return the number of files.
+	 */
+	public long getFiles() {
+		return files;
+	}
+
+	/**
+	 * Gets the number of directories.
+	 * @return the number of directories including the top directory.
+	 */
+	public long getDirectories() {
+		return directories;
+	}
+
+	/**
+	 * Adds another disk usage to this disk usage.
+	 * @param other the other disk usage.
+	 * @return the sum of both disk usages.
+	 */
+	public DiskUsage plus(DiskUsage other) {
+		return new DiskUsage(size + other.size, files + other.files, directories + other.directories);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%,d bytes in %,d files, %,d directories", size, files, directories);
+	}
+}
@@ -0,0 +1,308 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javafx.application.Platform;
+
+/**
+ * Computes the disk usage of directory trees in parallel.
+ *
+ * Every directory of a tree is scanned by its own background load of the {@link LoadScheduler},
+ * subdirectories are submitted as soon as they are found. The walk is thereby subject to the
+ * per device limit and overtaken by every load the user is waiting for. Symbolic links are
+ * counted but never followed. Partial totals are reported while the walk runs.
+ *
+ * The files and subdirectories directly contained in a directory are memoized keyed on the
+ * directory modification time. A later walk only lists directories whose modification time
+ * changed, unchanged directories cost a single stat. Size changes of files written in place do
+ * not touch the directory and are only seen once their directory changes.
+ *
+ * The number of memoized directories is configured with the system property
+ * {@code filemanager.du.maxEntries}.
+ */
+public class DiskUsageCalculator {
+	/** The time span in milliseconds a scan must be younger than its directory to be trusted. */
+	private static final long RACY_INTERVAL = 2000;
+	/** The minimum time in milliseconds between two partial results. */
+	private static final long UPDATE_INTERVAL = 100;
+	/** The shared calculator instance. */
+	private static final DiskUsageCalculator INSTANCE = new DiskUsageCalculator(
+			Integer.getInteger("filemanager.du.maxEntries", 200000));
+	/** The memoized directory contents in access order. */
+	private final Map<Path, Memo> memos;
+
+	/**
+	 * A listener informed about the progress of a calculation.
+	 */
+	public interface Listener {
+		/**
+		 * Called in the JavaFX thread with a partial or the final total.
+		 * @param usage the disk usage counted so far.
+		 * @param done true, if the calculation has finished.
+		 */
+		void update(DiskUsage usage, boolean done);
+	}
+
+	/**
+	 * Creates a new instance.
+	 * @param maxEntries the maximum number of memoized directories.
+	 */
+	public DiskUsageCalculator(int maxEntries) {
+		memos = new LinkedHashMap<>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Path, Memo> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Gets the shared calculator instance.
+	 * @return the shared calculator instance.
+	 */
+	public static DiskUsageCalculator getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Starts calculating the disk usage of a directory tree.
+	 * @param dir the top directory.
+	 * @param listener the listener informed about partial and final totals.
+	 * @return the running calculation which can be used to cancel it.
+	 */
+	public Calculation calculate(Path dir, Listener listener) {
+		Calculation calculation = new Calculation(listener);
+		submit(calculation, dir);
+		return calculation;
+	}
+
+	// private methods
+
+	/**
+	 * Submits the scan of a directory of a calculation as a background load.
+	 *
+	 * The calculation finishes when the last of its scans has finished.
+	 * @param calculation the calculation.
+	 * @param dir the directory.
+	 */
+	private void submit(Calculation calculation, Path dir) {
+		calculation.pending.incrementAndGet();
+		LoadScheduler.getInstance().submit(dir, LoadScheduler.Priority.BACKGROUND, () -> visit(calculation, dir),
+				(Void result, Throwable throwable) -> {
+					if (calculation.pending.decrementAndGet() == 0 && !calculation.cancelled)
+						Platform.runLater(calculation::finish);
+				});
+	}
+
+	/**
+	 * Counts the direct contents of a directory and submits its subdirectories.
+	 *
+	 * The method is invoked asynchronously by the load scheduler.
+	 * @param calculation the calculation.
+	 * @param dir the directory.
+	 * @return nothing.
+	 */
+	private Void visit(Calculation calculation, Path dir) {
+		if (calculation.cancelled)
+			return null;
+		long lastModified;
+		try {
+			lastModified = Files.getLastModifiedTime(dir, LinkOption.NOFOLLOW_LINKS).toMillis();
+		} catch (IOException e) {
+			return null;
+		}
+		Memo memo = getMemo(dir, lastModified);
+		if (memo == null) {
+			memo = scan(dir, lastModified);
+			putMemo(dir, memo);
+		}
+		calculation.add(memo.size, memo.files);
+		for (String subdir : memo.subdirs)
+			submit(calculation, dir.resolve(subdir));
+		return null;
+	}
+
+	/**
+	 * Gets the memoized contents of a directory if still valid.
+	 * @param dir the directory.
+	 * @param lastModified the current modification time of the directory.
+	 * @return the memoized contents, null if not memoized or outdated.
+	 */
+	private Memo getMemo(Path dir, long lastModified) {
+		synchronized (memos) {
+			Memo memo = memos.get(dir);
+			if (memo == null || memo.lastModified != lastModified
+					|| memo.scanTime - memo.lastModified <= RACY_INTERVAL)
+				return null;
+			return memo;
+		}
+	}
+
+	/**
+	 * Memoizes the contents of a directory.
+	 * @param dir the directory.
+	 * @param memo the contents.
+	 */
+	private void putMemo(Path dir, Memo memo) {
+		synchronized (memos) {
+			memos.put(dir, memo);
+		}
+	}
+
+	/**
+	 * Scans the direct contents of a directory.
+	 * @param dir the directory.
+	 * @param lastModified the modification time of the directory before the scan.
+	 * @return the contents of the directory.
+	 */
+	private static Memo scan(Path dir, long lastModified) {
+		long scanTime = System.currentTimeMillis();
+		long size = 0;
+		long files = 0;
+		List<String> subdirs = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path path : stream) {
+				BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				} catch (IOException e) {
+					continue;
+				}
+				if (attributes.isDirectory()) {
+					subdirs.add(path.getFileName().toString());
+				} else {
+					size += attributes.size();
+					files++;
+				}
+			}
+		} catch (IOException e) {
+			// unreadable directories are counted as empty
+		}
+		return new Memo(lastModified, scanTime, size, files, subdirs.toArray(new String[subdirs.size()]));
+	}
+
+	/**
+	 * A running calculation.
+	 */
+	public static class Calculation {
+		/** The listener informed about partial and final totals. */
+		private final Listener listener;
+		/** The size counted so far. */
+		private final LongAdder size = new LongAdder();
+		/** The number of files counted so far. */
+		private final LongAdder files = new LongAdder();
+		/** The number of directories counted so far. */
+		private final LongAdder directories = new LongAdder();
+		/** The number of scans submitted and not finished yet. */
+		private final AtomicInteger pending = new AtomicInteger();
+		/** The time of the last partial result. */
+		private volatile long lastUpdate;
+		/** Indicator for a pending partial result in the JavaFX thread. */
+		private volatile boolean updatePending;
+		/** Flag indicating a cancelled calculation. */
+		private volatile boolean cancelled;
+		/** Flag indicating a finished calculation. */
+		private boolean done;
+
+		/**
+		 * Creates a new instance.
+		 * @param listener the listener informed about partial and final totals.
+		 */
+		Calculation(Listener listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * Cancels this calculation, the listener is not informed any more.
+		 * 
+		 * Must be invoked in the JavaFX thread.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * Checks whether this calculation has finished.
+		 * @return true, if the final total has been reported, false otherwise.
+		 */
+		public boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * Adds the direct contents of a directory and reports a partial total from time to time.
+		 * @param size the size of the files in the directory.
+		 * @param files the number of files in the directory.
+		 */
+		private void add(long size, long files) {
+			this.size.add(size);
+			this.files.add(files);
+			directories.increment();
+			long now = System.currentTimeMillis();
+			if (!updatePending && now - lastUpdate >= UPDATE_INTERVAL) {
+				updatePending = true;
+				lastUpdate = now;
+				Platform.runLater(() -> {
+					updatePending = false;
+					if (!cancelled && !done)
+						listener.update(new DiskUsage(this.size.sum(), this.files.sum(), directories.sum()), false);
+				});
+			}
+		}
+
+		/**
+		 * Reports the final total.
+		 */
+		private void finish() {
+			if (cancelled)
+				return;
+			done = true;
+			listener.update(new DiskUsage(size.sum(), files.sum(), directories.sum()), true);
+		}
+	}
+
+	/**
+	 * The memoized direct contents of a directory.
+	 */
+	private static class Memo {
+		/** The modification time of the directory when scanned. */
+		private final long lastModified;
+		/** The time of the scan. */
+		private final long scanTime;
+		/** The total size of the files directly contained. */
+		private final long size;
+		/** The number of files directly contained. */
+		private final long files;
+		/** The names of the subdirectories. */
+		private final String[] subdirs;
+
+		/**
+		 * Creates a new instance.
+		 * @param lastModified the modification time of the directory when scanned.
+		 * @param scanTime the time of the scan.
+		 * @param size the total size of the files directly contained.
+		 * @param files the number of files directly contained.
+		 * @param subdirs the names of the subdirectories.
+		 */
+		Memo(long lastModified, long scanTime, long size, long files, String[] subdirs) {
+			this.lastModified = lastModified;
+			this.scanTime = scanTime;
+			this.size = size;
+			this.files = files;
+			this.subdirs = subdirs;
+		}
+	}
+}
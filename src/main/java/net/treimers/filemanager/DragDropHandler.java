@@ -1,15 +1,12 @@
 package net.treimers.filemanager;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import javafx.animation.PauseTransition;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
-import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.TreeItem;
 import javafx.scene.control.TreeView;
 import javafx.scene.input.ClipboardContent;
@@ -23,6 +20,9 @@ import javafx.util.Duration;
 /**
  * A DragDropHandler instance is used to register for drag and drop operations.
  * 
+ * Dropping moves the dragged files, dropping with the copy modifier copies them, both in the background.
+ * If the dragged item is selected, all selected items are dragged.
+ * 
  * Links:
  * https://docs.oracle.com/javase/8/javafx/api/index.html?javafx/scene/control/package-summary.html
  * https://docs.oracle.com/javafx/2/drag_drop/jfxpub-drag_drop.htm
@@ -39,6 +39,8 @@ public class DragDropHandler {
 	private DialogHandler dialogHandler;
 	/** A pause transistion used to open folders after a while. */
 	private PauseTransition pauseTransition;
+	/** The items of the running drag operation, empty if none. */
+	private List<FileTreeItem> draggedItems = Collections.emptyList();
 
 	/**
 	 * Creates a new instance.
@@ -53,17 +55,28 @@ public class DragDropHandler {
 
 	/**
 	 * Called when a drag operation is detected.
+	 * 
+	 * If the source is selected, all selected items are dragged.
 	 * @param event the mouse event.
 	 * @param sourceTreeCell the source of the drag operation.
 	 */
 	public void handleDragDetected(MouseEvent event, FileTreeCell sourceTreeCell) {
-		FileTreeItem sourceTreeItem = (FileTreeItem) sourceTreeCell.getTreeItem();
-		// Do not allow moving root
-		if (sourceTreeItem.getParent() == null)
+		// Do not allow dragging placeholders
+		if (!(sourceTreeCell.getTreeItem() instanceof FileTreeItem))
 			return;
-		Dragboard db = sourceTreeCell.startDragAndDrop(TransferMode.MOVE);
+		List<FileTreeItem> batch = FileTreeItem.getBatch((FileTreeItem) sourceTreeCell.getTreeItem(),
+				treeView.getSelectionModel().getSelectedItems());
+		ArrayList<File> files = new ArrayList<>();
+		for (FileTreeItem item : batch) {
+			// Do not allow moving root
+			if (item.getParent() == null)
+				return;
+			files.add(item.getValue());
+		}
+		draggedItems = batch;
+		Dragboard db = sourceTreeCell.startDragAndDrop(TransferMode.COPY_OR_MOVE);
 		ClipboardContent content = new ClipboardContent();
-		content.put(JAVA_FORMAT, sourceTreeItem.getValue());
+		content.put(JAVA_FORMAT, files);
 		db.setContent(content);
 		db.setDragView(sourceTreeCell.snapshot(null, null));
 		event.consume();
@@ -75,13 +88,11 @@ public class DragDropHandler {
 	 * @param targetTreeCell the target of the drag operation.
 	 */
 	public void handleDragOver(DragEvent event, FileTreeCell targetTreeCell) {
-		if (!event.getDragboard().hasContent(JAVA_FORMAT))
+		if (!event.getDragboard().hasContent(JAVA_FORMAT) || !(targetTreeCell.getTreeItem() instanceof FileTreeItem))
 			return;
-		FileTreeCell sourceTreeCell = (FileTreeCell) event.getGestureSource();
-		FileTreeItem sourceTreeItem = (FileTreeItem) sourceTreeCell.getTreeItem();
 		FileTreeItem targetTreeItem = (FileTreeItem) targetTreeCell.getTreeItem();
-		if (dropAllowed(sourceTreeItem, targetTreeItem))
-			event.acceptTransferModes(TransferMode.MOVE);
+		if (dropAllowed(targetTreeItem))
+			event.acceptTransferModes(TransferMode.COPY_OR_MOVE);
 		event.consume();
 	}
 
@@ -91,14 +102,15 @@ public class DragDropHandler {
 	 * @param targetTreeCell the target of the drag entered operation.
 	 */
 	public void handleOnDragEntered(DragEvent event, FileTreeCell targetTreeCell) {
-		if (!event.getDragboard().hasContent(JAVA_FORMAT))
+		if (!event.getDragboard().hasContent(JAVA_FORMAT) || !(targetTreeCell.getTreeItem() instanceof FileTreeItem))
 			return;
-		FileTreeCell sourceTreeCell = (FileTreeCell) event.getGestureSource();
-		FileTreeItem sourceTreeItem = (FileTreeItem) sourceTreeCell.getTreeItem();
 		FileTreeItem targetTreeItem = (FileTreeItem) targetTreeCell.getTreeItem();
-		if (dropAllowed(sourceTreeItem, targetTreeItem)) {
+		if (dropAllowed(targetTreeItem)) {
 			targetTreeCell.setStyle(DROP_HINT_STYLE);
 		}
+		// a hovered directory is expanded after a pause, read it meanwhile
+		if (!targetTreeItem.isExpanded())
+			targetTreeItem.prefetch();
 		pauseTransition.setOnFinished((ActionEvent e) -> {
 			targetTreeItem.setExpanded(true);
 		});
@@ -119,72 +131,59 @@ public class DragDropHandler {
 
 	/**
 	 * Called when a drag dropped is detected.
+	 * 
+	 * All dragged items are moved or copied by a single background job.
 	 * @param event the drag event.
 	 * @param targetTreeCell the target of the drag dropped operation.
 	 */
 	public void handleDragDropped(DragEvent event, FileTreeCell targetTreeCell) {
 		Dragboard db = event.getDragboard();
-		FileTreeCell sourceTreeCell = (FileTreeCell) event.getGestureSource();
-		FileTreeItem sourceTreeItem = (FileTreeItem) sourceTreeCell.getTreeItem();
-		FileTreeItem sourceParent = (FileTreeItem) sourceTreeItem.getParent();
+		if (!(targetTreeCell.getTreeItem() instanceof FileTreeItem)) {
+			event.setDropCompleted(false);
+			event.consume();
+			return;
+		}
 		FileTreeItem targetTreeItem = (FileTreeItem) targetTreeCell.getTreeItem();
-		boolean success = db.hasContent(JAVA_FORMAT) && sourceParent != null;
-		if (success) {
-			File targetDir = targetTreeItem.getValue();
-			File sourceFile = sourceTreeItem.getValue();
-			try {
-				System.out.println("Moving " + sourceFile + " to directory " + targetDir);
-				File newTargetFile = new File(targetDir, sourceFile.getName());
-				if (newTargetFile.exists()) {
-					dialogHandler.showAlert(AlertType.ERROR, "Error", "Error moving File: " + sourceFile.getName(), "Sorry, file already exists in target");
-					success = false;
-				} else {
-					Files.move(sourceFile.toPath(), Paths.get(targetDir.getPath(), sourceFile.getName()),
-							StandardCopyOption.ATOMIC_MOVE);
-					// remove item from source parent
-					sourceParent.getChildren().remove(sourceTreeItem);
-					// add item to target item, if target item is expanded
-					// otherwise expand target item
-					if (targetTreeItem.isExpanded()) {
-						FileTreeItem newTargetTreeItem = new FileTreeItem(newTargetFile, dialogHandler);
-						ObservableList<TreeItem<File>> children = targetTreeItem.getChildren();
-						children.add(newTargetTreeItem);
-						children.sort(Util.COMPARATOR);
-						treeView.getSelectionModel().select(newTargetTreeItem);
-					} else {
-						targetTreeItem.setExpanded(true);
-						treeView.getSelectionModel().select(targetTreeItem);
-					}
-				}
-			} catch (IOException e) {
-				dialogHandler.showAlert(AlertType.ERROR, "Error", "Error moving File: " + sourceFile.getName(), "Sorry, failed to move file: " + e.getMessage());
-				success = false;
-			}
+		boolean success = db.hasContent(JAVA_FORMAT) && dropAllowed(targetTreeItem);
+		if (success && event.getTransferMode() == TransferMode.COPY) {
+			// copies run in the background, the target is refreshed when done
+			List<File> files = new ArrayList<>();
+			for (FileTreeItem item : draggedItems)
+				files.add(item.getValue());
+			targetTreeItem.copyHere(files);
+			targetTreeItem.setExpanded(true);
+		} else if (success) {
+			// moves run in the background, sources and target are refreshed when done
+			targetTreeItem.moveHere(draggedItems);
+			targetTreeItem.setExpanded(true);
+			treeView.getSelectionModel().clearAndSelect(treeView.getRow(targetTreeItem));
 		}
+		draggedItems = Collections.emptyList();
 		event.setDropCompleted(success);
 		event.consume();
 	}
 
 	/**
-	 * Calculates whether a drop is allowed.
+	 * Calculates whether the dragged items may be dropped.
 	 * 
 	 * The following situations will be rejected:
-	 * - the source tree item is null
 	 * - the target tree item is null
-	 * - the source tree item and the target tree item are the same
-	 * - the source tree item is already child of the target tree item
 	 * - the target tree item is a leaf (and cannot contain children)
-	 * - the source tree item is ancestor of the target tree item and cannot be moved into its own descendant
-	  * @param sourceTreeItem the source tree item.
-	  * @param targetTreeItem the target tree item.
-	  * @return true if source tree item can be dropped into target tree item, false otherwise.
+	 * - a source tree item and the target tree item are the same
+	 * - a source tree item is already child of the target tree item
+	 * - a source tree item is ancestor of the target tree item and cannot be moved into its own descendant
+	 * @param targetTreeItem the target tree item.
+	 * @return true if all dragged tree items can be dropped into target tree item, false otherwise.
 	 */
-	private boolean dropAllowed(FileTreeItem sourceTreeItem, FileTreeItem targetTreeItem) {
-		return sourceTreeItem != null
-				&& targetTreeItem != null
-				&& targetTreeItem != sourceTreeItem
-				&& sourceTreeItem.getParent() != targetTreeItem
-				&& !targetTreeItem.isLeaf()
-				&& !sourceTreeItem.isAncestor(targetTreeItem);
+	private boolean dropAllowed(FileTreeItem targetTreeItem) {
+		if (targetTreeItem == null || targetTreeItem.isLeaf() || draggedItems.isEmpty())
+			return false;
+		for (FileTreeItem sourceTreeItem : draggedItems) {
+			if (targetTreeItem == sourceTreeItem
+					|| sourceTreeItem.getParent() == targetTreeItem
+					|| sourceTreeItem.isAncestor(targetTreeItem))
+				return false;
+		}
+		return true;
 	}
 }
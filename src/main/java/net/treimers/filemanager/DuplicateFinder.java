@@ -0,0 +1,387 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Finds files with identical contents below a directory in the background.
+ *
+ * The search runs in stages, each only looking at the files the previous stage could not tell
+ * apart:
+ * <ol>
+ * <li>The directory tree is walked level by level, the directories of a level are listed in
+ * parallel. Regular files are bucketed by size, symbolic links are not followed and empty files
+ * are ignored. Further hard links to a file already found are skipped, so a file is never
+ * reported as a duplicate of itself and only separate copies count as reclaimable.</li>
+ * <li>Files sharing their size with other files are hashed over their first and last
+ * {@link #BLOCK_SIZE} bytes. Smaller files are hashed completely here.</li>
+ * <li>Larger files sharing size and partial hash are hashed completely, streamed through a
+ * direct buffer of each worker.</li>
+ * </ol>
+ * Files of the same size and hash form a group. Most files are eliminated by the cheap stages,
+ * so only a small part of the data is read. Progress is indeterminate until the last stage.
+ *
+ * The number of parallel workers is configured with the system property
+ * {@code filemanager.duplicates.threads}.
+ */
+public class DuplicateFinder extends Job {
+	/** The number of directories listed and files hashed in parallel. */
+	private static final int THREADS = Integer.getInteger("filemanager.duplicates.threads", 4);
+	/** The number of bytes hashed at the start and the end of a file by the partial hash. */
+	private static final int BLOCK_SIZE = 16 * 1024;
+	/** The size of the buffer used to stream files through the full hash. */
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	/** The hash algorithm. */
+	private static final String ALGORITHM = "SHA-256";
+	/** The buffer of each worker used to read files. */
+	private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal
+			.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+	/** The directory searched. */
+	private final Path dir;
+	/** The regular files found by their size. */
+	private final Map<Long, ConcurrentLinkedQueue<Path>> bySize = new ConcurrentHashMap<>();
+	/** The file keys of the regular files found, used to skip further hard links. */
+	private final Set<Object> fileKeys = ConcurrentHashMap.newKeySet();
+	/** The groups of duplicates found, set when finished. */
+	private volatile List<Group> groups = Collections.emptyList();
+
+	/**
+	 * Creates a new instance.
+	 * @param dir the directory to search.
+	 */
+	public DuplicateFinder(Path dir) {
+		super("Find duplicates in " + dir);
+		this.dir = dir;
+	}
+
+	/**
+	 * Gets the groups of duplicates found.
+	 * @return the groups, the largest reclaimable space first, empty until finished.
+	 */
+	public List<Group> getGroups() {
+		return groups;
+	}
+
+	@Override
+	protected void execute() throws IOException {
+		walk();
+		if (isCancelled())
+			return;
+		// stage 2: partial hashes of files sharing their size
+		List<Path> candidates = new ArrayList<>();
+		List<Long> sizes = new ArrayList<>();
+		for (Map.Entry<Long, ConcurrentLinkedQueue<Path>> entry : bySize.entrySet()) {
+			if (entry.getValue().size() < 2) {
+				addDone(0, 1);
+				continue;
+			}
+			for (Path path : entry.getValue()) {
+				candidates.add(path);
+				sizes.add(entry.getKey());
+				addTotal(Math.min(entry.getKey(), 2 * BLOCK_SIZE), 0);
+			}
+		}
+		bySize.clear();
+		fileKeys.clear();
+		byte[][] partialHashes = new byte[candidates.size()][];
+		runParallel(THREADS, candidates.size(), new Step() {
+			@Override
+			public void run(int item) throws IOException {
+				partialHashes[item] = hashEnds(candidates.get(item), sizes.get(item));
+			}
+
+			@Override
+			public Path getPath(int item) {
+				return candidates.get(item);
+			}
+		});
+		if (isCancelled())
+			return;
+		List<Group> found = new ArrayList<>();
+		List<Path> remaining = new ArrayList<>();
+		List<Long> remainingSizes = new ArrayList<>();
+		for (List<Integer> bucket : bucket(sizes, partialHashes)) {
+			long size = sizes.get(bucket.get(0));
+			if (bucket.size() < 2) {
+				addDone(0, 1);
+			} else if (size <= 2 * BLOCK_SIZE) {
+				// the partial hash covers the whole file
+				found.add(new Group(size, paths(candidates, bucket)));
+				addDone(0, bucket.size());
+			} else {
+				for (int item : bucket) {
+					remaining.add(candidates.get(item));
+					remainingSizes.add(size);
+					addTotal(size, 0);
+				}
+			}
+		}
+		// stage 3: full hashes of the remaining candidates
+		setScanned();
+		byte[][] fullHashes = new byte[remaining.size()][];
+		runParallel(THREADS, remaining.size(), new Step() {
+			@Override
+			public void run(int item) throws IOException {
+				fullHashes[item] = hashAll(remaining.get(item), remainingSizes.get(item));
+			}
+
+			@Override
+			public Path getPath(int item) {
+				return remaining.get(item);
+			}
+		});
+		if (isCancelled())
+			return;
+		for (List<Integer> bucket : bucket(remainingSizes, fullHashes)) {
+			if (bucket.size() > 1)
+				found.add(new Group(remainingSizes.get(bucket.get(0)), paths(remaining, bucket)));
+		}
+		found.sort((Group group1, Group group2) -> Long.compare(group2.getReclaimable(), group1.getReclaimable()));
+		groups = Collections.unmodifiableList(found);
+	}
+
+	// private methods
+
+	/**
+	 * Stage 1: walks the directory tree level by level and buckets the regular files by size.
+	 */
+	private void walk() {
+		List<Path> level = Collections.singletonList(dir);
+		while (!level.isEmpty() && !isCancelled()) {
+			List<Path> dirs = level;
+			ConcurrentLinkedQueue<Path> next = new ConcurrentLinkedQueue<>();
+			runParallel(THREADS, dirs.size(), new Step() {
+				@Override
+				public void run(int item) throws IOException {
+					list(dirs.get(item), next);
+				}
+
+				@Override
+				public Path getPath(int item) {
+					return dirs.get(item);
+				}
+			});
+			level = new ArrayList<>(next);
+		}
+	}
+
+	/**
+	 * Lists a single directory.
+	 * @param directory the directory.
+	 * @param subdirectories the queue receiving the subdirectories.
+	 * @throws IOException if the directory cannot be read.
+	 */
+	private void list(Path directory, ConcurrentLinkedQueue<Path> subdirectories) throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+			for (Path path : stream) {
+				BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				} catch (IOException e) {
+					addError(path, e);
+					continue;
+				}
+				if (attributes.isDirectory()) {
+					subdirectories.add(path);
+				} else if (attributes.isRegularFile() && attributes.size() > 0) {
+					// the contents of further hard links are the same file, not a duplicate
+					Object fileKey = attributes.fileKey();
+					if (fileKey != null && !fileKeys.add(fileKey))
+						continue;
+					bySize.computeIfAbsent(attributes.size(), (Long size) -> new ConcurrentLinkedQueue<>()).add(path);
+					addTotal(0, 1);
+				}
+				if (isCancelled())
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Hashes the first and the last block of a file.
+	 * @param path the file.
+	 * @param size the size of the file when found.
+	 * @return the hash.
+	 * @throws IOException if the file cannot be read or its size changed.
+	 */
+	private byte[] hashEnds(Path path, long size) throws IOException {
+		MessageDigest digest = newDigest();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			checkSize(channel, size);
+			if (size <= 2 * BLOCK_SIZE) {
+				read(channel, 0, size, digest);
+			} else {
+				read(channel, 0, BLOCK_SIZE, digest);
+				read(channel, size - BLOCK_SIZE, BLOCK_SIZE, digest);
+			}
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Hashes a whole file.
+	 * @param path the file.
+	 * @param size the size of the file when found.
+	 * @return the hash, null if cancelled.
+	 * @throws IOException if the file cannot be read or its size changed.
+	 */
+	private byte[] hashAll(Path path, long size) throws IOException {
+		MessageDigest digest = newDigest();
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			checkSize(channel, size);
+			if (!read(channel, 0, size, digest))
+				return null;
+		}
+		addDone(0, 1);
+		return digest.digest();
+	}
+
+	/**
+	 * Reads a range of a file into a digest.
+	 * @param channel the file.
+	 * @param position the start of the range.
+	 * @param length the length of the range.
+	 * @param digest the digest.
+	 * @return true, if the range has been read, false if cancelled.
+	 * @throws IOException if the file cannot be read.
+	 */
+	private boolean read(FileChannel channel, long position, long length, MessageDigest digest) throws IOException {
+		ByteBuffer buffer = BUFFER.get();
+		long end = position + length;
+		while (position < end) {
+			if (isCancelled())
+				return false;
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), end - position));
+			int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new IOException("File has been truncated while reading");
+			buffer.flip();
+			digest.update(buffer);
+			position += read;
+			addDone(read, 0);
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that a file has not changed its size since it was found.
+	 * @param channel the file.
+	 * @param size the size of the file when found.
+	 * @throws IOException if the size changed.
+	 */
+	private static void checkSize(FileChannel channel, long size) throws IOException {
+		if (channel.size() != size)
+			throw new IOException("File has been modified while searching");
+	}
+
+	/**
+	 * Groups items by size and hash, items without hash are left out.
+	 * @param sizes the sizes of the items.
+	 * @param hashes the hashes of the items.
+	 * @return the indexes of the items of each group.
+	 */
+	private static List<List<Integer>> bucket(List<Long> sizes, byte[][] hashes) {
+		Map<List<Object>, List<Integer>> buckets = new HashMap<>();
+		for (int i = 0; i < hashes.length; i++) {
+			if (hashes[i] != null)
+				buckets.computeIfAbsent(List.of(sizes.get(i), ByteBuffer.wrap(hashes[i])),
+						(List<Object> key) -> new ArrayList<>()).add(i);
+		}
+		return new ArrayList<>(buckets.values());
+	}
+
+	/**
+	 * Gets the paths of items.
+	 * @param paths the paths of all items.
+	 * @param items the indexes of the items.
+	 * @return the paths of the items sorted.
+	 */
+	private static List<Path> paths(List<Path> paths, List<Integer> items) {
+		List<Path> result = new ArrayList<>(items.size());
+		for (int item : items)
+			result.add(paths.get(item));
+		Collections.sort(result);
+		return result;
+	}
+
+	/**
+	 * Creates a new digest.
+	 * @return the digest.
+	 */
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * A group of files with identical contents.
+	 */
+	public static class Group {
+		/** The size of each file. */
+		private final long size;
+		/** The files sorted by path. */
+		private final List<Path> files;
+
+		/**
+		 * Creates a new instance.
+		 * @param size the size of each file.
+		 * @param files the files.
+		 */
+		Group(long size, List<Path> files) {
+			this.size = size;
+			this.files = Collections.unmodifiableList(files);
+		}
+
+		/**
+		 * Gets the size of each file.
+		 * @return the size in bytes.
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Gets the files.
+		 * @return the files sorted by path.
+		 */
+		public List<Path> getFiles() {
+			return files;
+		}
+
+		/**
+		 * Gets the space reclaimed by keeping a single file of this group.
+		 * @return the reclaimable space in bytes.
+		 */
+		public long getReclaimable() {
+			return size * (files.size() - 1);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%,d files of %s, %s reclaimable", files.size(), Job.formatBytes(size),
+					Job.formatBytes(getReclaimable()));
+		}
+	}
+}
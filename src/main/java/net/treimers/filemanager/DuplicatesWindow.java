@@ -0,0 +1,59 @@
+package net.treimers.filemanager;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+/**
+ * A window showing the groups of duplicate files found by a {@link DuplicateFinder}.
+ *
+ * Groups are listed with the space reclaimable by keeping a single file, the largest first, and
+ * can be expanded to show their files.
+ */
+public class DuplicatesWindow {
+	/** The window. */
+	private final Stage stage = new Stage();
+
+	/**
+	 * Creates a new instance.
+	 * @param owner the owner window.
+	 * @param dir the directory searched.
+	 * @param groups the groups of duplicates found.
+	 */
+	public DuplicatesWindow(Window owner, Path dir, List<DuplicateFinder.Group> groups) {
+		stage.initOwner(owner);
+		stage.setTitle("Duplicates in " + dir);
+		TreeItem<String> root = new TreeItem<>();
+		long reclaimable = 0;
+		for (DuplicateFinder.Group group : groups) {
+			TreeItem<String> groupItem = new TreeItem<>(group.toString());
+			for (Path file : group.getFiles())
+				groupItem.getChildren().add(new TreeItem<>(dir.relativize(file).toString()));
+			root.getChildren().add(groupItem);
+			reclaimable += group.getReclaimable();
+		}
+		TreeView<String> groupTree = new TreeView<>(root);
+		groupTree.setShowRoot(false);
+		Label statusLabel = new Label(String.format("%,d groups of duplicates, %s reclaimable", groups.size(),
+				Job.formatBytes(reclaimable)));
+		statusLabel.setPadding(new Insets(4));
+		BorderPane pane = new BorderPane(groupTree);
+		pane.setBottom(statusLabel);
+		stage.setScene(new Scene(pane, 700, 400));
+	}
+
+	/**
+	 * Shows the window.
+	 */
+	public void show() {
+		stage.show();
+	}
+}
@@ -0,0 +1,173 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Expands a directory and its subdirectories down to a number of levels.
+ *
+ * The subtree is crawled breadth first: the directories of a level are listed through the
+ * {@link ListingCache} as background loads of the {@link LoadScheduler}, at most
+ * {@code filemanager.expand.threads} at a time. The crawl is thereby subject to the per device
+ * limit and overtaken by every load the user is waiting for, and a level does not wait for the
+ * tree items of the previous one. After each level its listings are handed to the
+ * {@link TreeUpdateScheduler}, which expands the directories in the tree in batches per pulse,
+ * parents before their children. The crawl stops after the number of entries given by the system
+ * property {@code filemanager.expand.maxEntries} (default 1,000,000). "All levels" is limited to
+ * {@code filemanager.expand.maxDepth} levels (default 32). The crawled listings have just been
+ * read, so expanded directories are not loaded again and only watched once shown.
+ */
+public class ExpandJob extends Job {
+	/** The number of directories listed concurrently. */
+	private static final int THREADS = Integer.getInteger("filemanager.expand.threads", 8);
+	/** The maximum number of entries crawled. */
+	private static final long MAX_ENTRIES = Long.getLong("filemanager.expand.maxEntries", 1_000_000);
+	/** The time in milliseconds between two checks for cancellation while waiting for loads. */
+	private static final long POLL_INTERVAL = 100;
+	/** The number of levels expanded by "all levels". */
+	public static final int MAX_DEPTH = Integer.getInteger("filemanager.expand.maxDepth", 32);
+	/** The item of the directory to expand. */
+	private final FileTreeItem item;
+	/** The number of levels to expand, 1 for the directory itself. */
+	private final int levels;
+	/** The number of entries crawled. */
+	private final AtomicLong entries = new AtomicLong();
+	/** The expanded items by directory (JavaFX thread only). */
+	private final Map<File, FileTreeItem> expanded = new HashMap<>();
+
+	/**
+	 * Creates a new instance.
+	 * @param item the item of the directory to expand.
+	 * @param levels the number of levels to expand, 1 for the directory itself.
+	 */
+	public ExpandJob(FileTreeItem item, int levels) {
+		super("Expand " + item.getValue());
+		this.item = item;
+		this.levels = levels;
+		expanded.put(item.getValue(), item);
+	}
+
+	@Override
+	protected void execute() {
+		List<File> level = List.of(item.getValue());
+		for (int depth = 0; depth < levels && !level.isEmpty() && !isCancelled(); depth++) {
+			List<File> dirs = level;
+			Listing[] listings = list(dirs);
+			if (isCancelled())
+				break;
+			List<File> next = new ArrayList<>();
+			for (int i = 0; i < listings.length; i++) {
+				Listing listing = listings[i];
+				if (listing == null)
+					continue;
+				File dir = dirs.get(i);
+				TreeUpdateScheduler.getInstance().submit(dir, () -> expand(dir, listing));
+				for (int j = 0; j < listing.size(); j++) {
+					if (listing.isDirectory(j))
+						next.add(listing.getFile(j));
+				}
+			}
+			if (entries.get() >= MAX_ENTRIES)
+				break;
+			level = next;
+		}
+		setScanned();
+	}
+
+	// private methods
+
+	/**
+	 * Lists the directories of a level as background loads.
+	 *
+	 * Returns early if the job has been cancelled, pending loads are cancelled then.
+	 * @param dirs the directories.
+	 * @return the listings by directory, null for directories not listed.
+	 */
+	private Listing[] list(List<File> dirs) {
+		Listing[] listings = new Listing[dirs.size()];
+		// the listings are published by releasing the slots
+		Semaphore slots = new Semaphore(THREADS);
+		List<LoadScheduler.Task<Listing>> tasks = new ArrayList<>();
+		for (int i = 0; i < dirs.size() && entries.get() < MAX_ENTRIES; i++) {
+			if (!acquire(slots, 1))
+				break;
+			int index = i;
+			File dir = dirs.get(i);
+			tasks.add(LoadScheduler.getInstance().submit(dir.toPath(), LoadScheduler.Priority.BACKGROUND,
+					() -> list(dir), (Listing listing, Throwable throwable) -> {
+						if (listing != null) {
+							entries.addAndGet(listing.size());
+							addTotal(0, listing.size());
+							addDone(0, listing.size());
+							listings[index] = listing;
+						}
+						slots.release();
+					}));
+		}
+		if (!acquire(slots, THREADS)) {
+			for (LoadScheduler.Task<Listing> task : tasks)
+				task.cancel();
+		}
+		return listings;
+	}
+
+	/**
+	 * Lists a single directory, the scan is aborted if the job is cancelled.
+	 *
+	 * The method is invoked asynchronously by the load scheduler.
+	 * @param dir the directory.
+	 * @return the listing, null if the directory cannot be read.
+	 */
+	private Listing list(File dir) {
+		try {
+			return ListingCache.getInstance().list(dir, (int count) -> !isCancelled(), null);
+		} catch (IOException e) {
+			addError(dir.toPath(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Waits for free load slots unless the job is cancelled.
+	 * @param slots the load slots.
+	 * @param count the number of slots.
+	 * @return true, if the slots have been acquired, false if the job has been cancelled.
+	 */
+	private boolean acquire(Semaphore slots, int count) {
+		try {
+			while (!isCancelled()) {
+				if (slots.tryAcquire(count, POLL_INTERVAL, TimeUnit.MILLISECONDS))
+					return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+
+	/**
+	 * Expands the item of a crawled directory, must be invoked in the JavaFX thread.
+	 *
+	 * Does nothing if the item of the parent directory has not been expanded.
+	 * @param dir the directory.
+	 * @param listing the listing of the directory.
+	 */
+	private void expand(File dir, Listing listing) {
+		FileTreeItem dirItem = expanded.get(dir);
+		if (dirItem == null) {
+			FileTreeItem parentItem = expanded.get(dir.getParentFile());
+			dirItem = parentItem == null ? null : parentItem.getLoadedChild(dir.getName());
+			if (dirItem == null || !dirItem.isDirectory())
+				return;
+			expanded.put(dir, dirItem);
+		}
+		dirItem.restore(listing, false);
+	}
+}
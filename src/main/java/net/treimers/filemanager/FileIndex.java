@@ -0,0 +1,683 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A compact, immutable index of all paths below a root directory.
+ *
+ * Entries are stored in breadth first order in parallel primitive arrays: the index of the parent
+ * entry, the start of the name in one shared character array and a type flag. The children of
+ * every directory form a contiguous block, the directories additionally record their modification
+ * time so that an index can be updated by listing changed directories only.
+ *
+ * Searches scan the shared name array in parallel chunks without creating objects per entry.
+ * Queries containing {@code *} or {@code ?} are matched as glob patterns against the names, all
+ * other queries as case insensitive substrings.
+ */
+public final class FileIndex {
+	/** The magic number of index files. */
+	private static final int MAGIC = 0x46494458;
+	/** The version of the index file format. */
+	private static final int VERSION = 1;
+	/** The number of entries scanned by one search task. */
+	private static final int SEARCH_CHUNK = 1 << 16;
+	/** The size of the buffer used to read and write index files. */
+	private static final int BUFFER_SIZE = 1 << 20;
+	/** Flag bit of a directory. */
+	private static final byte DIRECTORY = 1;
+	/** The root directory. */
+	private final Path root;
+	/** The time the scan of this index started in milliseconds since the epoch. */
+	private final long createdTime;
+	/** The number of entries. */
+	private final int size;
+	/** The parent entry of each entry, -1 for the root. */
+	private final int[] parents;
+	/** The start of each name in the name array, followed by the end of the last name. */
+	private final int[] nameStarts;
+	/** The concatenated names. */
+	private final char[] names;
+	/** The type flags of each entry. */
+	private final byte[] flags;
+	/** The number of directories. */
+	private final int directoryCount;
+	/** The entry of each directory. */
+	private final int[] directoryEntries;
+	/** The first child entry of each directory, followed by the end of the last block. */
+	private final int[] firstChildren;
+	/** The modification time of each directory, -1 if it could not be read. */
+	private final long[] directoryModified;
+
+	/**
+	 * Creates a new instance.
+	 * @param root the root directory.
+	 * @param createdTime the time the scan started.
+	 * @param size the number of entries.
+	 * @param parents the parent entry of each entry.
+	 * @param nameStarts the start of each name.
+	 * @param names the concatenated names.
+	 * @param flags the type flags of each entry.
+	 * @param directoryCount the number of directories.
+	 * @param directoryEntries the entry of each directory.
+	 * @param firstChildren the first child entry of each directory.
+	 * @param directoryModified the modification time of each directory.
+	 */
+	private FileIndex(Path root, long createdTime, int size, int[] parents, int[] nameStarts, char[] names,
+			byte[] flags, int directoryCount, int[] directoryEntries, int[] firstChildren, long[] directoryModified) {
+		this.root = root;
+		this.createdTime = createdTime;
+		this.size = size;
+		this.parents = parents;
+		this.nameStarts = nameStarts;
+		this.names = names;
+		this.flags = flags;
+		this.directoryCount = directoryCount;
+		this.directoryEntries = directoryEntries;
+		this.firstChildren = firstChildren;
+		this.directoryModified = directoryModified;
+	}
+
+	/**
+	 * Gets the root directory.
+	 * @return the root directory.
+	 */
+	public Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * Gets the number of indexed entries.
+	 * @return the number of entries including the root.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the time the scan of this index started.
+	 * @return the time in milliseconds since the epoch.
+	 */
+	public long getCreatedTime() {
+		return createdTime;
+	}
+
+	/**
+	 * Creates the path of an entry.
+	 * @param entry the entry.
+	 * @return the path of the entry.
+	 */
+	public Path getPath(int entry) {
+		List<String> segments = new ArrayList<>();
+		for (int current = entry; current > 0; current = parents[current])
+			segments.add(getName(current));
+		Path path = root;
+		for (int i = segments.size() - 1; i >= 0; i--)
+			path = path.resolve(segments.get(i));
+		return path;
+	}
+
+	/**
+	 * Searches entries by name.
+	 *
+	 * Matches are returned in breadth first order, i.e. matches closer to the root first.
+	 * @param query a glob pattern if containing {@code *} or {@code ?}, otherwise a substring,
+	 *            both matched ignoring case.
+	 * @param maxResults the maximum number of results.
+	 * @return the paths of the matching entries.
+	 */
+	public List<Path> search(String query, int maxResults) {
+		boolean glob = query.indexOf('*') >= 0 || query.indexOf('?') >= 0;
+		Pattern pattern = glob ? globPattern(query) : null;
+		char[] literal = fold(glob ? longestLiteral(query) : query);
+		int chunks = (size + SEARCH_CHUNK - 1) / SEARCH_CHUNK;
+		List<int[]> matches = IntStream.range(0, chunks).parallel()
+				.mapToObj((int chunk) -> searchChunk(chunk, literal, pattern, maxResults))
+				.collect(Collectors.toList());
+		List<Path> paths = new ArrayList<>();
+		for (int[] chunkMatches : matches) {
+			for (int entry : chunkMatches) {
+				if (paths.size() == maxResults)
+					return paths;
+				paths.add(getPath(entry));
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Reads an index file.
+	 * @param file the index file.
+	 * @return the index.
+	 * @throws IOException if the file cannot be read or has an unknown format.
+	 */
+	public static FileIndex load(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			buffer.limit(0);
+			if (readInts(channel, buffer, 1)[0] != MAGIC)
+				throw new IOException("Not an index file: " + file);
+			int[] header = readInts(channel, buffer, 4);
+			if (header[0] != VERSION)
+				throw new IOException("Unsupported index version: " + header[0]);
+			Path root = Paths.get(new String(readChars(channel, buffer, header[1])));
+			long createdTime = readLongs(channel, buffer, 1)[0];
+			int size = header[2];
+			int directoryCount = header[3];
+			int[] parents = readInts(channel, buffer, size);
+			int[] nameStarts = readInts(channel, buffer, size + 1);
+			char[] names = readChars(channel, buffer, nameStarts[size]);
+			byte[] flags = readBytes(channel, buffer, size);
+			int[] directoryEntries = readInts(channel, buffer, directoryCount);
+			int[] firstChildren = readInts(channel, buffer, directoryCount + 1);
+			long[] directoryModified = readLongs(channel, buffer, directoryCount);
+			return new FileIndex(root, createdTime, size, parents, nameStarts, names, flags, directoryCount,
+					directoryEntries, firstChildren, directoryModified);
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt index file: " + file, e);
+		}
+	}
+
+	/**
+	 * Writes this index to a file.
+	 * @param file the index file.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void save(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			String rootName = root.toString();
+			writeInts(channel, buffer, new int[] { MAGIC, VERSION, rootName.length(), size, directoryCount });
+			writeChars(channel, buffer, rootName.toCharArray(), rootName.length());
+			writeLongs(channel, buffer, new long[] { createdTime }, 1);
+			writeInts(channel, buffer, parents, size);
+			writeInts(channel, buffer, nameStarts, size + 1);
+			writeChars(channel, buffer, names, nameStarts[size]);
+			writeBytes(channel, buffer, flags, size);
+			writeInts(channel, buffer, directoryEntries, directoryCount);
+			writeInts(channel, buffer, firstChildren, directoryCount + 1);
+			writeLongs(channel, buffer, directoryModified, directoryCount);
+			flush(channel, buffer);
+		}
+	}
+
+	// package methods used to update an index
+
+	/**
+	 * Gets the name of an entry.
+	 * @param entry the entry.
+	 * @return the name of the entry.
+	 */
+	String getName(int entry) {
+		return new String(names, nameStarts[entry], nameStarts[entry + 1] - nameStarts[entry]);
+	}
+
+	/**
+	 * Checks whether an entry is a directory.
+	 * @param entry the entry.
+	 * @return true, if the entry is a directory, false otherwise.
+	 */
+	boolean isDirectory(int entry) {
+		return (flags[entry] & DIRECTORY) != 0;
+	}
+
+	/**
+	 * Gets the modification time of a directory.
+	 * @param directory the directory number.
+	 * @return the modification time, -1 if it could not be read.
+	 */
+	long getDirectoryModified(int directory) {
+		return directoryModified[directory];
+	}
+
+	/**
+	 * Gets the first child entry of a directory.
+	 * @param directory the directory number.
+	 * @return the first child entry.
+	 */
+	int getFirstChild(int directory) {
+		return firstChildren[directory];
+	}
+
+	/**
+	 * Gets the end of the child entries of a directory.
+	 * @param directory the directory number.
+	 * @return the entry following the last child entry.
+	 */
+	int getChildrenEnd(int directory) {
+		return firstChildren[directory + 1];
+	}
+
+	/**
+	 * Computes the directory number of every entry.
+	 * @return the directory number of each entry, -1 for files.
+	 */
+	int[] getDirectoryNumbers() {
+		int[] numbers = new int[size];
+		Arrays.fill(numbers, -1);
+		for (int directory = 0; directory < directoryCount; directory++)
+			numbers[directoryEntries[directory]] = directory;
+		return numbers;
+	}
+
+	// private methods
+
+	/**
+	 * Searches a chunk of entries.
+	 * @param chunk the chunk number.
+	 * @param literal the folded text every match must contain.
+	 * @param pattern the glob pattern every match must match, null for a substring search.
+	 * @param maxResults the maximum number of results.
+	 * @return the matching entries of the chunk, at most the maximum number of results.
+	 */
+	private int[] searchChunk(int chunk, char[] literal, Pattern pattern, int maxResults) {
+		int[] matches = new int[16];
+		int count = 0;
+		int end = Math.min(size, (chunk + 1) * SEARCH_CHUNK);
+		// the root itself is not searched
+		for (int entry = Math.max(1, chunk * SEARCH_CHUNK); entry < end; entry++) {
+			int start = nameStarts[entry];
+			int length = nameStarts[entry + 1] - start;
+			if (!contains(start, length, literal))
+				continue;
+			if (pattern != null && !pattern.matcher(CharBuffer.wrap(names, start, length)).matches())
+				continue;
+			if (count == matches.length)
+				matches = Arrays.copyOf(matches, count * 2);
+			matches[count++] = entry;
+			if (count == maxResults)
+				break;
+		}
+		return Arrays.copyOf(matches, count);
+	}
+
+	/**
+	 * Checks whether a name contains a text ignoring case.
+	 * @param start the start of the name in the name array.
+	 * @param length the length of the name.
+	 * @param literal the folded text.
+	 * @return true, if the name contains the text, false otherwise.
+	 */
+	private boolean contains(int start, int length, char[] literal) {
+		int last = start + length - literal.length;
+		outer: for (int i = start; i <= last; i++) {
+			for (int j = 0; j < literal.length; j++) {
+				if (fold(names[i + j]) != literal[j])
+					continue outer;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Folds a character to lower case, with a fast path for ASCII.
+	 * @param c the character.
+	 * @return the folded character.
+	 */
+	private static char fold(char c) {
+		if (c < 128)
+			return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+		return Character.toLowerCase(c);
+	}
+
+	/**
+	 * Folds a text to lower case.
+	 * @param text the text.
+	 * @return the folded characters.
+	 */
+	private static char[] fold(String text) {
+		char[] folded = new char[text.length()];
+		for (int i = 0; i < folded.length; i++)
+			folded[i] = fold(text.charAt(i));
+		return folded;
+	}
+
+	/**
+	 * Converts a glob pattern to a case insensitive regular expression.
+	 * @param glob the glob pattern.
+	 * @return the regular expression.
+	 */
+	private static Pattern globPattern(String glob) {
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (char c : glob.toCharArray()) {
+			if (c == '*' || c == '?') {
+				if (literal.length() > 0) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(c == '*' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		if (literal.length() > 0)
+			regex.append(Pattern.quote(literal.toString()));
+		return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE | Pattern.DOTALL);
+	}
+
+	/**
+	 * Gets the longest part of a glob pattern without wildcards, used to skip names quickly.
+	 * @param glob the glob pattern.
+	 * @return the longest literal part.
+	 */
+	private static String longestLiteral(String glob) {
+		String longest = "";
+		for (String part : glob.split("[*?]")) {
+			if (part.length() > longest.length())
+				longest = part;
+		}
+		return longest;
+	}
+
+	/**
+	 * Reads ints from a channel.
+	 * @param channel the channel.
+	 * @param buffer the read buffer.
+	 * @param count the number of values.
+	 * @return the values.
+	 * @throws IOException if reading fails.
+	 */
+	private static int[] readInts(FileChannel channel, ByteBuffer buffer, int count) throws IOException {
+		int[] values = new int[count];
+		for (int done = 0; done < count;) {
+			int n = Math.min(count - done, fill(channel, buffer, Integer.BYTES) / Integer.BYTES);
+			buffer.asIntBuffer().get(values, done, n);
+			buffer.position(buffer.position() + n * Integer.BYTES);
+			done += n;
+		}
+		return values;
+	}
+
+	/**
+	 * Reads longs from a channel.
+	 * @param channel the channel.
+	 * @param buffer the read buffer.
+	 * @param count the number of values.
+	 * @return the values.
+	 * @throws IOException if reading fails.
+	 */
+	private static long[] readLongs(FileChannel channel, ByteBuffer buffer, int count) throws IOException {
+		long[] values = new long[count];
+		for (int done = 0; done < count;) {
+			int n = Math.min(count - done, fill(channel, buffer, Long.BYTES) / Long.BYTES);
+			buffer.asLongBuffer().get(values, done, n);
+			buffer.position(buffer.position() + n * Long.BYTES);
+			done += n;
+		}
+		return values;
+	}
+
+	/**
+	 * Reads chars from a channel.
+	 * @param channel the channel.
+	 * @param buffer the read buffer.
+	 * @param count the number of values.
+	 * @return the values.
+	 * @throws IOException if reading fails.
+	 */
+	private static char[] readChars(FileChannel channel, ByteBuffer buffer, int count) throws IOException {
+		char[] values = new char[count];
+		for (int done = 0; done < count;) {
+			int n = Math.min(count - done, fill(channel, buffer, Character.BYTES) / Character.BYTES);
+			buffer.asCharBuffer().get(values, done, n);
+			buffer.position(buffer.position() + n * Character.BYTES);
+			done += n;
+		}
+		return values;
+	}
+
+	/**
+	 * Reads bytes from a channel.
+	 * @param channel the channel.
+	 * @param buffer the read buffer.
+	 * @param count the number of values.
+	 * @return the values.
+	 * @throws IOException if reading fails.
+	 */
+	private static byte[] readBytes(FileChannel channel, ByteBuffer buffer, int count) throws IOException {
+		byte[] values = new byte[count];
+		for (int done = 0; done < count;) {
+			int n = Math.min(count - done, fill(channel, buffer, 1));
+			buffer.get(values, done, n);
+			done += n;
+		}
+		return values;
+	}
+
+	/**
+	 * Makes at least a number of bytes available in the read buffer.
+	 * @param channel the channel.
+	 * @param buffer the read buffer.
+	 * @param minimum the minimum number of bytes.
+	 * @return the number of available bytes.
+	 * @throws IOException if the end of the file is reached or reading fails.
+	 */
+	private static int fill(FileChannel channel, ByteBuffer buffer, int minimum) throws IOException {
+		if (buffer.remaining() < minimum) {
+			buffer.compact();
+			while (buffer.position() < minimum) {
+				if (channel.read(buffer) < 0)
+					throw new IOException("Unexpected end of index file");
+			}
+			buffer.flip();
+		}
+		return buffer.remaining();
+	}
+
+	/**
+	 * Writes ints to a channel.
+	 * @param channel the channel.
+	 * @param buffer the write buffer.
+	 * @param values the values.
+	 * @param count the number of values.
+	 * @throws IOException if writing fails.
+	 */
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values, int count) throws IOException {
+		for (int done = 0; done < count;) {
+			int n = Math.min(count - done, space(channel, buffer, Integer.BYTES) / Integer.BYTES);
+			buffer.asIntBuffer().put(values, done, n);
+			buffer.position(buffer.position() + n * Integer.BYTES);
+			done += n;
+		}
+	}
+
+	/**
+	 * Writes all ints of an array to a channel.
+	 * @param channel the channel.
+	 * @param buffer the write buffer.
+	 * @param values the values.
+	 * @throws IOException if writing fails.
+	 */
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+		writeInts(channel, buffer, values, values.length);
+	}
+
+	/**
+	 * Writes longs to a channel.
+	 * @param channel the channel.
+	 * @param buffer the write buffer.
+	 * @param values the values.
+	 * @param count the number of values.
+	 * @throws IOException if writing fails.
+	 */
+	private static void writeLongs(FileChannel channel, ByteBuffer buffer, long[] values, int count)
+			throws IOException {
+		for (int done = 0; done < count;) {
+			int n = Math.min(count - done, space(channel, buffer, Long.BYTES) / Long.BYTES);
+			buffer.asLongBuffer().put(values, done, n);
+			buffer.position(buffer.position() + n * Long.BYTES);
+			done += n;
+		}
+	}
+
+	/**
+	 * Writes chars to a channel.
+	 * @param channel the channel.
+	 * @param buffer the write buffer.
+	 * @param values the values.
+	 * @param count the number of values.
+	 * @throws IOException if writing fails.
+	 */
+	private static void writeChars(FileChannel channel, ByteBuffer buffer, char[] values, int count)
+			throws IOException {
+		for (int done = 0; done < count;) {
+			int n = Math.min(count - done, space(channel, buffer, Character.BYTES) / Character.BYTES);
+			buffer.asCharBuffer().put(values, done, n);
+			buffer.position(buffer.position() + n * Character.BYTES);
+			done += n;
+		}
+	}
+
+	/**
+	 * Writes bytes to a channel.
+	 * @param channel the channel.
+	 * @param buffer the write buffer.
+	 * @param values the values.
+	 * @param count the number of values.
+	 * @throws IOException if writing fails.
+	 */
+	private static void writeBytes(FileChannel channel, ByteBuffer buffer, byte[] values, int count)
+			throws IOException {
+		for (int done = 0; done < count;) {
+			int n = Math.min(count - done, space(channel, buffer, 1));
+			buffer.put(values, done, n);
+			done += n;
+		}
+	}
+
+	/**
+	 * Makes at least a number of bytes free in the write buffer.
+	 * @param channel the channel.
+	 * @param buffer the write buffer.
+	 * @param minimum the minimum number of bytes.
+	 * @return the number of free bytes.
+	 * @throws IOException if writing fails.
+	 */
+	private static int space(FileChannel channel, ByteBuffer buffer, int minimum) throws IOException {
+		if (buffer.remaining() < minimum)
+			flush(channel, buffer);
+		return buffer.remaining();
+	}
+
+	/**
+	 * Writes the content of the write buffer to a channel.
+	 * @param channel the channel.
+	 * @param buffer the write buffer.
+	 * @throws IOException if writing fails.
+	 */
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/**
+	 * A builder used to collect the entries of an index in breadth first order.
+	 */
+	static class Builder {
+		/** The root directory. */
+		private final Path root;
+		/** The time the scan started. */
+		private final long createdTime;
+		/** The number of collected entries. */
+		private int size;
+		/** The collected parent entries. */
+		private int[] parents = new int[1024];
+		/** The collected name starts. */
+		private int[] nameStarts = new int[1025];
+		/** The collected names. */
+		private char[] names = new char[16384];
+		/** The collected flags. */
+		private byte[] flags = new byte[1024];
+		/** The number of collected directories. */
+		private int directoryCount;
+		/** The collected directory entries. */
+		private int[] directoryEntries = new int[256];
+		/** The collected first children. */
+		private int[] firstChildren = new int[257];
+		/** The collected directory modification times. */
+		private long[] directoryModified = new long[256];
+
+		/**
+		 * Creates a new instance containing the root entry.
+		 * @param root the root directory.
+		 * @param createdTime the time the scan started.
+		 */
+		Builder(Path root, long createdTime) {
+			this.root = root;
+			this.createdTime = createdTime;
+			add(-1, "", true);
+		}
+
+		/**
+		 * Adds an entry.
+		 * @param parent the parent entry.
+		 * @param name the name.
+		 * @param directory true, if the entry is a directory.
+		 * @return the new entry.
+		 */
+		int add(int parent, String name, boolean directory) {
+			if (size == parents.length) {
+				int capacity = size * 2;
+				parents = Arrays.copyOf(parents, capacity);
+				nameStarts = Arrays.copyOf(nameStarts, capacity + 1);
+				flags = Arrays.copyOf(flags, capacity);
+			}
+			int start = nameStarts[size];
+			if (start + name.length() > names.length)
+				names = Arrays.copyOf(names, Math.max(names.length * 2, start + name.length()));
+			name.getChars(0, name.length(), names, start);
+			parents[size] = parent;
+			flags[size] = directory ? DIRECTORY : 0;
+			nameStarts[size + 1] = start + name.length();
+			return size++;
+		}
+
+		/**
+		 * Starts the child block of the next directory.
+		 *
+		 * Directories must be started in the order of their entries.
+		 * @param entry the directory entry.
+		 * @param lastModified the modification time of the directory, -1 if unknown.
+		 */
+		void startDirectory(int entry, long lastModified) {
+			if (directoryCount == directoryEntries.length) {
+				int capacity = directoryCount * 2;
+				directoryEntries = Arrays.copyOf(directoryEntries, capacity);
+				firstChildren = Arrays.copyOf(firstChildren, capacity + 1);
+				directoryModified = Arrays.copyOf(directoryModified, capacity);
+			}
+			directoryEntries[directoryCount] = entry;
+			firstChildren[directoryCount] = size;
+			directoryModified[directoryCount] = lastModified;
+			directoryCount++;
+		}
+
+		/**
+		 * Creates the index.
+		 * @return the index.
+		 */
+		FileIndex build() {
+			firstChildren[directoryCount] = size;
+			return new FileIndex(root, createdTime, size, Arrays.copyOf(parents, size),
+					Arrays.copyOf(nameStarts, size + 1), Arrays.copyOf(names, nameStarts[size]),
+					Arrays.copyOf(flags, size), directoryCount, Arrays.copyOf(directoryEntries, directoryCount),
+					Arrays.copyOf(firstChildren, directoryCount + 1), Arrays.copyOf(directoryModified, directoryCount));
+		}
+	}
+}
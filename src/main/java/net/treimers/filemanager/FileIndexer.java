@@ -0,0 +1,375 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javafx.application.Platform;
+
+/**
+ * Builds the file index of the opened root directory in the background.
+ *
+ * The index of a root is persisted in the directory given by the system property
+ * {@code filemanager.index.dir} (default {@code ~/.filemanager/index}). When a root is opened
+ * its persisted index is loaded and usable at once, then it is updated: the tree is walked level
+ * by level, every directory of a level scanned by its own background load of the
+ * {@link LoadScheduler}, so the walk is subject to the per device limit and overtaken by every
+ * load the user is waiting for. Directories whose modification time is unchanged are taken from
+ * the previous index with a single stat. Symbolic links are indexed but not followed.
+ */
+public class FileIndexer {
+	/** The time span in milliseconds a scan must be younger than its directory to be trusted. */
+	private static final long RACY_INTERVAL = 2000;
+	/** The directory holding the persisted indexes. */
+	private static final Path INDEX_DIR = Paths.get(System.getProperty("filemanager.index.dir",
+			Paths.get(System.getProperty("user.home"), ".filemanager", "index").toString()));
+	/** The shared indexer instance. */
+	private static final FileIndexer INSTANCE = new FileIndexer();
+	/** The generation of the latest build, older builds stop. */
+	private volatile int generation;
+	/** The current index, null if none. */
+	private volatile FileIndex index;
+
+	/**
+	 * A listener informed about index changes.
+	 */
+	public interface Listener {
+		/**
+		 * Called in the JavaFX thread when an index is available.
+		 * @param index the index.
+		 * @param done true, if the index is up to date, false if it is being updated.
+		 */
+		void indexChanged(FileIndex index, boolean done);
+	}
+
+	/**
+	 * Creates a new instance.
+	 */
+	private FileIndexer() {
+	}
+
+	/**
+	 * Gets the shared indexer instance.
+	 * @return the shared indexer instance.
+	 */
+	public static FileIndexer getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Gets the current index.
+	 * @return the current index, null if none is available yet.
+	 */
+	public FileIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Starts indexing a root directory, stopping the indexing of a previous root.
+	 * @param root the root directory.
+	 * @param listener the listener informed when an index is available.
+	 */
+	public void start(Path root, Listener listener) {
+		Build build = new Build(root.toAbsolutePath(), ++generation, listener);
+		index = null;
+		LoadScheduler.getInstance().submit(INDEX_DIR, LoadScheduler.Priority.BACKGROUND, () -> load(build),
+				(FileIndex previous, Throwable throwable) -> {
+					if (build.generation != generation)
+						return;
+					build.setPrevious(previous);
+					if (previous != null)
+						publish(previous, false, build);
+					List<Directory> level = new ArrayList<>();
+					level.add(new Directory(0, build.root, previous == null ? -1 : 0));
+					scan(build, level);
+				});
+	}
+
+	// private methods
+
+	/**
+	 * Loads the persisted index of the root of a build.
+	 *
+	 * The method is invoked asynchronously by the load scheduler.
+	 * @param build the build.
+	 * @return the persisted index, null if none or if it is corrupt.
+	 */
+	private FileIndex load(Build build) {
+		if (build.generation != generation)
+			return null;
+		try {
+			if (Files.isRegularFile(build.file)) {
+				FileIndex previous = FileIndex.load(build.file);
+				if (previous.getRoot().equals(build.root))
+					return previous;
+			}
+		} catch (IOException e) {
+			// a missing or corrupt index is built from scratch
+		}
+		return null;
+	}
+
+	/**
+	 * Submits the scans of the directories of a level as background loads.
+	 *
+	 * When the last scan of the level has finished its children are added to the index and the
+	 * next level is submitted. The index is published and saved after the last level.
+	 * @param build the build.
+	 * @param level the directories of the level.
+	 */
+	private void scan(Build build, List<Directory> level) {
+		if (build.generation != generation)
+			return;
+		if (level.isEmpty()) {
+			finish(build);
+			return;
+		}
+		Children[] listed = new Children[level.size()];
+		AtomicInteger pending = new AtomicInteger(level.size());
+		for (int i = 0; i < level.size(); i++) {
+			int position = i;
+			Directory directory = level.get(i);
+			LoadScheduler.getInstance().submit(directory.path, LoadScheduler.Priority.BACKGROUND,
+					() -> build.generation == generation ? list(directory, build.previous, build.previousDirectories)
+							: null,
+					(Children children, Throwable throwable) -> {
+						listed[position] = children;
+						if (pending.decrementAndGet() == 0)
+							scan(build, add(build, level, listed));
+					});
+		}
+	}
+
+	/**
+	 * Adds the listed children of a level to the index.
+	 * @param build the build.
+	 * @param level the directories of the level.
+	 * @param listed the children of the directories, null elements for failed scans.
+	 * @return the subdirectories forming the next level, empty if the build has been superseded.
+	 */
+	private List<Directory> add(Build build, List<Directory> level, Children[] listed) {
+		List<Directory> next = new ArrayList<>();
+		if (build.generation != generation)
+			return next;
+		for (int i = 0; i < level.size(); i++) {
+			Directory directory = level.get(i);
+			Children children = listed[i] == null ? Children.EMPTY : listed[i];
+			build.builder.startDirectory(directory.entry, children.lastModified);
+			for (int j = 0; j < children.names.length; j++) {
+				int entry = build.builder.add(directory.entry, children.names[j], children.directories[j]);
+				if (children.directories[j])
+					next.add(new Directory(entry, directory.path.resolve(children.names[j]),
+							children.previousDirectories[j]));
+			}
+		}
+		return next;
+	}
+
+	/**
+	 * Publishes and saves the index of a completed build.
+	 * @param build the build.
+	 */
+	private void finish(Build build) {
+		FileIndex updated = build.builder.build();
+		LoadScheduler.getInstance().submit(INDEX_DIR, LoadScheduler.Priority.BACKGROUND, () -> {
+			try {
+				Files.createDirectories(INDEX_DIR);
+				Path temp = build.file.resolveSibling(build.file.getFileName() + ".tmp");
+				updated.save(temp);
+				Files.move(temp, build.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				// the index is built again on the next start
+			}
+			return null;
+		}, (Void result, Throwable throwable) -> {
+		});
+		publish(updated, true, build);
+	}
+
+	/**
+	 * Makes an index the current index and informs the listener.
+	 * @param available the available index.
+	 * @param done true, if the index is up to date.
+	 * @param build the build.
+	 */
+	private void publish(FileIndex available, boolean done, Build build) {
+		if (build.generation != generation)
+			return;
+		index = available;
+		Platform.runLater(() -> {
+			if (build.generation == generation)
+				build.listener.indexChanged(available, done);
+		});
+	}
+
+	/**
+	 * Lists the children of a directory, taken from the previous index if unchanged.
+	 * @param directory the directory.
+	 * @param previous the previous index, null if none.
+	 * @param previousDirectories the directory numbers of the previous index by entry.
+	 * @return the children.
+	 */
+	private static Children list(Directory directory, FileIndex previous, int[] previousDirectories) {
+		long lastModified;
+		try {
+			lastModified = Files.getLastModifiedTime(directory.path, LinkOption.NOFOLLOW_LINKS).toMillis();
+		} catch (IOException e) {
+			return Children.EMPTY;
+		}
+		int from = directory.previous < 0 ? 0 : previous.getFirstChild(directory.previous);
+		int to = directory.previous < 0 ? 0 : previous.getChildrenEnd(directory.previous);
+		if (directory.previous >= 0 && previous.getDirectoryModified(directory.previous) == lastModified
+				&& previous.getCreatedTime() - lastModified > RACY_INTERVAL) {
+			int count = to - from;
+			String[] names = new String[count];
+			boolean[] directories = new boolean[count];
+			int[] previousNumbers = new int[count];
+			for (int i = 0; i < count; i++) {
+				names[i] = previous.getName(from + i);
+				directories[i] = previous.isDirectory(from + i);
+				previousNumbers[i] = previousDirectories[from + i];
+			}
+			return new Children(lastModified, names, directories, previousNumbers);
+		}
+		// subdirectories still present keep their previous children if unchanged
+		Map<String, Integer> previousEntries = new HashMap<>();
+		for (int entry = from; entry < to; entry++) {
+			if (previous.isDirectory(entry))
+				previousEntries.put(previous.getName(entry), entry);
+		}
+		List<String> names = new ArrayList<>();
+		List<Boolean> directories = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory.path)) {
+			for (Path path : stream) {
+				boolean isDirectory;
+				try {
+					isDirectory = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)
+							.isDirectory();
+				} catch (IOException e) {
+					isDirectory = false;
+				}
+				names.add(path.getFileName().toString());
+				directories.add(isDirectory);
+			}
+		} catch (IOException e) {
+			// unreadable directories are indexed without children
+		}
+		int count = names.size();
+		String[] nameArray = names.toArray(new String[count]);
+		boolean[] directoryArray = new boolean[count];
+		int[] previousNumbers = new int[count];
+		for (int i = 0; i < count; i++) {
+			directoryArray[i] = directories.get(i);
+			Integer entry = directoryArray[i] ? previousEntries.get(nameArray[i]) : null;
+			previousNumbers[i] = entry == null ? -1 : previousDirectories[entry];
+		}
+		return new Children(lastModified, nameArray, directoryArray, previousNumbers);
+	}
+
+	/**
+	 * A directory waiting to be listed.
+	 */
+	private static class Directory {
+		/** The entry of the directory in the new index. */
+		private final int entry;
+		/** The path of the directory. */
+		private final Path path;
+		/** The directory number in the previous index, -1 if not contained. */
+		private final int previous;
+
+		/**
+		 * Creates a new instance.
+		 * @param entry the entry of the directory in the new index.
+		 * @param path the path of the directory.
+		 * @param previous the directory number in the previous index, -1 if not contained.
+		 */
+		Directory(int entry, Path path, int previous) {
+			this.entry = entry;
+			this.path = path;
+			this.previous = previous;
+		}
+	}
+
+	/**
+	 * The listed children of a directory.
+	 */
+	private static class Children {
+		/** The children of a directory which cannot be read. */
+		private static final Children EMPTY = new Children(-1, new String[0], new boolean[0], new int[0]);
+		/** The modification time of the directory, -1 if unknown. */
+		private final long lastModified;
+		/** The names of the children. */
+		private final String[] names;
+		/** The directory flags of the children. */
+		private final boolean[] directories;
+		/** The directory numbers of the children in the previous index, -1 if not contained. */
+		private final int[] previousDirectories;
+
+		/**
+		 * Creates a new instance.
+		 * @param lastModified the modification time of the directory.
+		 * @param names the names of the children.
+		 * @param directories the directory flags of the children.
+		 * @param previousDirectories the directory numbers of the children in the previous index.
+		 */
+		Children(long lastModified, String[] names, boolean[] directories, int[] previousDirectories) {
+			this.lastModified = lastModified;
+			this.names = names;
+			this.directories = directories;
+			this.previousDirectories = previousDirectories;
+		}
+	}
+
+	/**
+	 * The state of the build of an index.
+	 */
+	private static class Build {
+		/** The root directory. */
+		private final Path root;
+		/** The generation of the build. */
+		private final int generation;
+		/** The listener informed when an index is available. */
+		private final Listener listener;
+		/** The file holding the persisted index. */
+		private final Path file;
+		/** The builder of the new index. */
+		private final FileIndex.Builder builder;
+		/** The previous index, null if none. */
+		private volatile FileIndex previous;
+		/** The directory numbers of the previous index by entry, null if none. */
+		private volatile int[] previousDirectories;
+
+		/**
+		 * Creates a new instance.
+		 * @param root the root directory.
+		 * @param generation the generation of the build.
+		 * @param listener the listener informed when an index is available.
+		 */
+		Build(Path root, int generation, Listener listener) {
+			this.root = root;
+			this.generation = generation;
+			this.listener = listener;
+			file = INDEX_DIR.resolve(Integer.toHexString(root.toString().hashCode()) + ".idx");
+			builder = new FileIndex.Builder(root, System.currentTimeMillis());
+		}
+
+		/**
+		 * Sets the previous index.
+		 * @param previous the previous index, null if none.
+		 */
+		void setPrevious(FileIndex previous) {
+			this.previous = previous;
+			previousDirectories = previous == null ? null : previous.getDirectoryNumbers();
+		}
+	}
+}
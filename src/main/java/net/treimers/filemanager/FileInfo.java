@@ -1,31 +1,61 @@
 package net.treimers.filemanager;
 
-import java.io.File;
-import java.util.Date;
+import java.text.NumberFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
 
-import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
 /**
  * Instances are used to represent file data.
+ *
+ * A file info is backed by the typed attribute snapshot of its file. Display strings are only
+ * formatted when the table asks for a property, owner and permissions are only read when they
+ * are shown and are then loaded asynchronously in batches.
  */
 public class FileInfo {
-	/** The file name property. */
-	private SimpleStringProperty nameProperty;
-	/** The file date property. */
-	private SimpleStringProperty dateProperty;
-	/** The file size property. */
-	private SimpleStringProperty sizeProperty;
+	/** The formatter of modification dates. */
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM)
+			.withZone(ZoneId.systemDefault());
+	/** The formatter of sizes (JavaFX thread only). */
+	private static final NumberFormat SIZE_FORMAT = NumberFormat.getIntegerInstance();
+	/** The attribute snapshot of the file. */
+	private final DirectoryEntry entry;
+	/** The file name property, created on first use. */
+	private ReadOnlyStringWrapper nameProperty;
+	/** The file date property, created on first use. */
+	private ReadOnlyStringWrapper dateProperty;
+	/** The file size property, created on first use. */
+	private ReadOnlyStringWrapper sizeProperty;
+	/** The file owner property, created on first use. */
+	private ReadOnlyStringWrapper ownerProperty;
+	/** The file permissions property, created on first use. */
+	private ReadOnlyStringWrapper permissionsProperty;
+	/** The cached checksums property, created on first use. */
+	private ReadOnlyStringWrapper checksumProperty;
+	/** The file owner, null if not loaded yet. */
+	private String owner;
+	/** The file permissions, null if not loaded yet. */
+	private String permissions;
+	/** Flag indicating that owner and permissions have been requested. */
+	private boolean requested;
 
 	/**
 	 * Creates a new file info instance.
-	 * @param file the corresponding file.
+	 * @param entry the attribute snapshot of the corresponding file.
 	 */
-	public FileInfo(File file) {
-		String name = file.getName();
-		String date = new Date(file.lastModified()).toString();
-		String length = "" + file.length();
-		this.nameProperty = new SimpleStringProperty(name);
-		this.dateProperty = new SimpleStringProperty(date);
-		this.sizeProperty = new SimpleStringProperty(length);
+	public FileInfo(DirectoryEntry entry) {
+		this.entry = entry;
+	}
+
+	/**
+	 * Gets the attribute snapshot of the file.
+	 * @return the attribute snapshot of the file.
+	 */
+	public DirectoryEntry getEntry() {
+		return entry;
 	}
 
 	/**
@@ -33,22 +63,134 @@ public class FileInfo {
 	 * @return the file name.
 	 */
 	public String getName() {
-		return nameProperty.get();
+		return entry.getName();
 	}
 
 	/**
-	 * Gets the file date.
-	 * @return the file date.
+	 * Gets the file modification time.
+	 * @return the modification time in milliseconds since the epoch.
 	 */
-	public String getDate() {
-		return dateProperty.get();
+	public long getLastModified() {
+		return entry.getLastModified();
 	}
 
 	/**
 	 * Gets the file size.
-	 * @return the file size.
+	 * @return the file size in bytes.
+	 */
+	public long getSize() {
+		return entry.getSize();
+	}
+
+	/**
+	 * Gets the file owner.
+	 * @return the file owner, null if not loaded yet.
+	 */
+	public String getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Gets the file permissions.
+	 * @return the file permissions, null if not loaded yet.
+	 */
+	public String getPermissions() {
+		return permissions;
+	}
+
+	/**
+	 * Gets the file name property.
+	 * @return the file name property.
+	 */
+	public ReadOnlyStringProperty nameProperty() {
+		if (nameProperty == null)
+			nameProperty = new ReadOnlyStringWrapper(this, "name", entry.getName());
+		return nameProperty.getReadOnlyProperty();
+	}
+
+	/**
+	 * Gets the file date property.
+	 * @return the file date property.
+	 */
+	public ReadOnlyStringProperty dateProperty() {
+		if (dateProperty == null)
+			dateProperty = new ReadOnlyStringWrapper(this, "date",
+					DATE_FORMAT.format(Instant.ofEpochMilli(entry.getLastModified())));
+		return dateProperty.getReadOnlyProperty();
+	}
+
+	/**
+	 * Gets the file size property, empty for directories.
+	 * @return the file size property.
+	 */
+	public ReadOnlyStringProperty sizeProperty() {
+		if (sizeProperty == null)
+			sizeProperty = new ReadOnlyStringWrapper(this, "size",
+					entry.isDirectory() ? "" : SIZE_FORMAT.format(entry.getSize()));
+		return sizeProperty.getReadOnlyProperty();
+	}
+
+	/**
+	 * Gets the file owner property, empty until the owner has been loaded.
+	 * @return the file owner property.
+	 */
+	public ReadOnlyStringProperty ownerProperty() {
+		if (ownerProperty == null) {
+			ownerProperty = new ReadOnlyStringWrapper(this, "owner", owner);
+			requestAttributes();
+		}
+		return ownerProperty.getReadOnlyProperty();
+	}
+
+	/**
+	 * Gets the file permissions property, empty until the permissions have been loaded.
+	 * @return the file permissions property.
+	 */
+	public ReadOnlyStringProperty permissionsProperty() {
+		if (permissionsProperty == null) {
+			permissionsProperty = new ReadOnlyStringWrapper(this, "permissions", permissions);
+			requestAttributes();
+		}
+		return permissionsProperty.getReadOnlyProperty();
+	}
+
+	/**
+	 * Gets the property of the cached checksums, empty for directories and files never hashed.
+	 * @return the checksum property.
+	 */
+	public ReadOnlyStringProperty checksumProperty() {
+		if (checksumProperty == null)
+			checksumProperty = new ReadOnlyStringWrapper(this, "checksum", entry.isRegularFile()
+					? ChecksumCache.getInstance().format(entry.getFile().toPath(), entry.getSize(), entry.getLastModified())
+					: "");
+		return checksumProperty.getReadOnlyProperty();
+	}
+
+	/**
+	 * Sets the loaded owner and permissions.
+	 * 
+	 * Must be invoked in the JavaFX thread.
+	 * @param owner the file owner.
+	 * @param permissions the file permissions.
+	 */
+	void setAttributes(String owner, String permissions) {
+		this.owner = owner;
+		this.permissions = permissions;
+		if (ownerProperty != null)
+			ownerProperty.set(owner);
+		if (permissionsProperty != null)
+			permissionsProperty.set(permissions);
+	}
+
+	// private methods
+
+	/**
+	 * Requests owner and permissions to be loaded, unless already loaded or requested.
 	 */
-	public String getSize() {
-		return sizeProperty.get();
+	private void requestAttributes() {
+		if (!requested) {
+			requested = true;
+			AttributeLoader.getInstance().request(this);
+		}
 	}
 }
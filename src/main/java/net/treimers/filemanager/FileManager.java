@@ -13,6 +13,9 @@ import javafx.stage.Stage;
  * Main class of FileManager application.
  */
 public class FileManager extends Application {
+	/** The controller of the main view. */
+	private Controller controller;
+
 	@Override
 	public void start(Stage primaryStage) throws Exception {
 		primaryStage.setTitle("File Manager");
@@ -25,8 +28,12 @@ public class FileManager extends Application {
 		FXMLLoader loader = new FXMLLoader(getClass().getResource("main.fxml"));
 		Parent root = loader.load();
 		// get view's controller and propagate stage to controller
-		Controller controller = loader.getController();
+		controller = loader.getController();
 		controller.setStage(primaryStage);
+		// checksums shown by the details view are read while the window opens
+		controller.loadChecksums();
+		// show the tree of the last session as soon as its root has been checked
+		controller.restoreSnapshot();
 		// create the scene
 		Scene scene = new Scene(root);
 		// apply the scene to the stage and show the stage
@@ -34,6 +41,12 @@ public class FileManager extends Application {
 		primaryStage.show();
 	}
 
+	@Override
+	public void stop() {
+		if (controller != null)
+			controller.saveSnapshot();
+	}
+
 	/**
 	 * Starts the JavaFX app.
 	 * @param args the command line arguments.
@@ -2,41 +2,139 @@ package net.treimers.filemanager;
 
 import java.io.File;
 
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Label;
 import javafx.scene.control.TreeCell;
+import javafx.scene.control.TreeItem;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.ContextMenuEvent;
 import javafx.scene.input.DragEvent;
 import javafx.scene.input.MouseEvent;
 
 /**
  * Instances of this class are used to render tree items.
+ * 
+ * Rendering does not allocate: every cell owns one icon and one spinner which are
+ * reused for all items it shows, names are taken from the tree items as they are
+ * and context menus are only created when requested. The cell observes the loading
+ * state of the directory it shows and only repaints its icon when that changes.
  */
 public class FileTreeCell extends TreeCell<File> {
+	/** The folder icon image. */
+	private static final Image FOLDER_ICON = new Image(FileTreeCell.class.getResourceAsStream("folder.png"));
+	/** The file icon image. */
+	private static final Image FILE_ICON = new Image(FileTreeCell.class.getResourceAsStream("file.png"));
+	/** The hour glass icon image. */
+	private static final Image HOURGLASS_ICON = new Image(FileTreeCell.class.getResourceAsStream("hourglass.png"));
+	/** The icon of this cell, reused for every item rendered. */
+	private final ImageView icon = new ImageView();
+	/** The loading spinner of this cell with a label for the scan progress. */
+	private final Label spinner;
+	/** The context menu currently shown, null if none. */
+	private ContextMenu contextMenu;
+	/** The directory item whose loading state is observed, null if none. */
+	private FileTreeItem observedItem;
+	/** The listener repainting the icon when the loading state of the observed item changes. */
+	private final ChangeListener<Object> loadingListener = (ObservableValue<?> observable, Object oldValue,
+			Object newValue) -> showIcon(observedItem);
+
 	/**
 	 * Creates a new instance.
 	 * @param dragHandler the handler this tree cell should notify on drag and drop operations.
 	 */
 	public FileTreeCell(DragDropHandler dragHandler) {
-		setOnDragDetected((MouseEvent event) -> dragHandler.handleDragDetected(event, this));
-		setOnDragOver((DragEvent event) -> dragHandler.handleDragOver(event, this));
+		ImageView hourglass = new ImageView(HOURGLASS_ICON);
+		hourglass.rotateProperty().bind(SpinnerClock.angleProperty());
+		spinner = new Label(null, hourglass);
+		// drag handlers check and start file operations in the JavaFX thread, so they are timed
+		Metrics metrics = Metrics.getInstance();
+		setOnDragDetected((MouseEvent event) -> metrics.time(Metrics.Stage.FX_HANDLER,
+				() -> dragHandler.handleDragDetected(event, this)));
+		setOnDragOver((DragEvent event) -> metrics.time(Metrics.Stage.FX_HANDLER,
+				() -> dragHandler.handleDragOver(event, this)));
 		setOnDragEntered((DragEvent event) -> dragHandler.handleOnDragEntered(event, this));
 		setOnDragExited((DragEvent event) -> dragHandler.handleOnDragExited(event, this));
-		setOnDragDropped((DragEvent event) -> dragHandler.handleDragDropped(event, this));
+		setOnDragDropped((DragEvent event) -> metrics.time(Metrics.Stage.FX_HANDLER,
+				() -> dragHandler.handleDragDropped(event, this)));
+		setOnContextMenuRequested((ContextMenuEvent event) -> showContextMenu(event));
 	}
 
 	@Override
 	protected void updateItem(File file, boolean empty) {
 		super.updateItem(file, empty);
-		if (empty) {
+		TreeItem<File> treeItem = getTreeItem();
+		observe(empty || !(treeItem instanceof FileTreeItem) ? null : (FileTreeItem) treeItem);
+		if (empty || treeItem == null) {
 			setText(null);
 			setGraphic(null);
+		} else if (treeItem instanceof MoreTreeItem) {
+			// placeholder of a paged directory, rendering it pages in more children
+			MoreTreeItem moreTreeItem = (MoreTreeItem) treeItem;
+			setText(moreTreeItem.toString());
+			setGraphic(null);
+			moreTreeItem.requestMore();
+		} else if (file == null) {
+			setText("");
+			setGraphic(null);
+		} else {
+			FileTreeItem fileTreeItem = (FileTreeItem) treeItem;
+			setText(fileTreeItem.getName());
+			showIcon(fileTreeItem);
+			fileTreeItem.shown();
+		}
+	}
+
+	/**
+	 * Shows the icon of a tree item, the loading spinner while it is loading.
+	 * @param fileTreeItem the tree item.
+	 */
+	private void showIcon(FileTreeItem fileTreeItem) {
+		if (fileTreeItem.isLoading()) {
+			spinner.setText(fileTreeItem.getProgressText());
+			setGraphic(spinner);
 		} else {
-			if (file == null) {
-				setText("");
-			} else {
-				setText(file.getName());
-				FileTreeItem fileTreeItem = (FileTreeItem) getTreeItem();
-				setContextMenu(fileTreeItem.createContextMenu());
-			}
-			setGraphic(getTreeItem().getGraphic());
+			icon.setImage(fileTreeItem.isDirectory() ? FOLDER_ICON : FILE_ICON);
+			setGraphic(icon);
+		}
+	}
+
+	/**
+	 * Observes the loading state of the directory item shown by this cell.
+	 * @param fileTreeItem the item shown, null if none.
+	 */
+	private void observe(FileTreeItem fileTreeItem) {
+		if (fileTreeItem != null && !fileTreeItem.isDirectory())
+			fileTreeItem = null;
+		if (fileTreeItem == observedItem)
+			return;
+		if (observedItem != null) {
+			observedItem.loadingProperty().removeListener(loadingListener);
+			observedItem.progressTextProperty().removeListener(loadingListener);
+		}
+		observedItem = fileTreeItem;
+		if (observedItem != null) {
+			observedItem.loadingProperty().addListener(loadingListener);
+			observedItem.progressTextProperty().addListener(loadingListener);
+		}
+	}
+
+	/**
+	 * Creates and shows the context menu of the current tree item.
+	 * @param event the context menu event.
+	 */
+	private void showContextMenu(ContextMenuEvent event) {
+		if (contextMenu != null)
+			contextMenu.hide();
+		contextMenu = null;
+		if (!isEmpty() && getTreeItem() instanceof FileTreeItem) {
+			FileTreeItem fileTreeItem = (FileTreeItem) getTreeItem();
+			contextMenu = fileTreeItem.createContextMenu(
+					FileTreeItem.getBatch(fileTreeItem, getTreeView().getSelectionModel().getSelectedItems()));
+			contextMenu.show(this, event.getScreenX(), event.getScreenY());
 		}
+		event.consume();
 	}
 }
@@ -2,159 +2,566 @@ package net.treimers.filemanager;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.concurrent.CompletableFuture;
-import java.util.function.BiConsumer;
-import java.util.function.Supplier;
-
-import javafx.animation.Animation;
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
 import javafx.application.Platform;
-import javafx.beans.value.ChangeListener;
-import javafx.beans.value.ObservableValue;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ContextMenu;
+import javafx.scene.control.Menu;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.TreeItem;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-import javafx.util.Duration;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
 
 /**
  * Instances of this class are used as tree items in the FileManager navigation.
  * 
+ * Tree items are kept lightweight: an item only references its entry in the
+ * compact listing of its parent directory. Icons and the loading spinner are
+ * rendered by the tree cells, which observe the loading state of the item they show,
+ * expansion is handled by a single event handler of the {@link RootTreeItem} and
+ * the dialog handler is taken from the root as well. The state needed to load
+ * children is only created for directories once they are expanded.
+ * 
  * Base on https://docs.oracle.com/javafx/2/api/javafx/scene/control/TreeItem.html
  */
-public class FileTreeItem extends TreeItem<File> implements Supplier<File[]>, BiConsumer<File[], Throwable> {
-	/** The folder icon image. */
-	private static final Image FOLDER_ICON = new Image(FileTreeItem.class.getResourceAsStream("folder.png"));
-	/** The file icon image. */
-	private static final Image FILE_ICON = new Image(FileTreeItem.class.getResourceAsStream("file.png"));
-	/** The hour glass icon image. */
-	private static final Image HOURGLASS_ICON = new Image(FileTreeItem.class.getResourceAsStream("hourglass.png"));
-	/** Cache flag for leaf (plain file) or not (directory). */
-	private boolean isLeaf;
-	/** Indicator used to do leaf testing only once. */
-	private boolean isFirstTimeLeaf = true;
-	/** A completable future used for asynchronous loading. */
-	private CompletableFuture<File[]> completableFuture;
-	/** Time line used for animation. */
-	private Timeline timeLine;
-	/** A dialog handler used to show dialogs. */
-	private DialogHandler dialogHandler;
+public class FileTreeItem extends TreeItem<File> {
+	/** The number of children inserted per pulse when the differences of a listing are applied. */
+	private static final int MAX_INSERTS_PER_PULSE = 64;
+	/** The number of children added to the tree at once, further children are paged in on demand. */
+	private static final int PAGE_SIZE = 1000;
+	/** The number of sibling directories prefetched when a directory is expanded. */
+	private static final int PREFETCH_SIBLINGS = 8;
+	/** The number of subdirectories prefetched when a directory has been loaded or selected. */
+	private static final int PREFETCH_CHILDREN = 16;
+	/** The listing containing the underlying file. */
+	private Listing listing;
+	/** The index of the underlying file in its listing. */
+	private int index;
+	/** The state used to load children, null for files and directories never expanded. */
+	private DirectoryState state;
+	/** The loading indicator observed by tree cells, null until observed. */
+	private ReadOnlyBooleanWrapper loading;
+	/** The scan progress observed by tree cells, null until observed. */
+	private ReadOnlyStringWrapper progressText;
 
 	/**
 	 * Creates a new instance.
 	 * @param file the underlying file.
-	 * @param dialogHandler the dialog handler used to show dialogs.
 	 */
-	public FileTreeItem(File file, DialogHandler dialogHandler) {
-		super(file, new ImageView(file.isDirectory() ? FOLDER_ICON : FILE_ICON));
-		this.dialogHandler = dialogHandler;
-		expandedProperty().addListener(new ChangeListener<Boolean>() {
-			@Override
-			public void changed(ObservableValue<? extends Boolean> observable, Boolean oldEpxanded,
-					Boolean newExpanded) {
-				if (newExpanded != null && newExpanded.booleanValue()) {
-					applyGraphic(HOURGLASS_ICON, true);
-					completableFuture = CompletableFuture.supplyAsync(FileTreeItem.this);
-					completableFuture.whenComplete(FileTreeItem.this);
-				} else
-					getChildren().clear();
-			}
-		});
+	public FileTreeItem(File file) {
+		this(Listing.of(DirectoryEntry.of(file)), 0);
+	}
+
+	/**
+	 * Creates a new instance for an entry of a listing.
+	 * @param listing the listing containing the underlying file.
+	 * @param index the index of the underlying file in the listing.
+	 */
+	public FileTreeItem(Listing listing, int index) {
+		super(listing.getFile(index));
+		this.listing = listing;
+		this.index = index;
 	}
 
 	@Override
 	public boolean isLeaf() {
-		if (isFirstTimeLeaf) {
-			isFirstTimeLeaf = false;
-			File f = (File) getValue();
-			isLeaf = f.isFile();
-		}
-		return isLeaf;
+		return !isDirectory();
+	}
+
+	/**
+	 * Checks whether the underlying file is a directory.
+	 * @return true, if the underlying file is a directory, false otherwise.
+	 */
+	public boolean isDirectory() {
+		return listing.isDirectory(index);
+	}
+
+	/**
+	 * Gets the name of the underlying file without creating a new string.
+	 * @return the name of the underlying file.
+	 */
+	public String getName() {
+		return listing.getName(index);
+	}
+
+	/**
+	 * Checks whether this item is loading its children in the foreground.
+	 * @return true, if a loading spinner should be shown, false otherwise.
+	 */
+	public boolean isLoading() {
+		return state != null && state.spinning;
+	}
+
+	/**
+	 * Gets the formatted number of entries scanned by the running load.
+	 * @return the formatted number of scanned entries, null if not known yet.
+	 */
+	public String getProgressText() {
+		return state == null ? null : state.progressText;
+	}
+
+	/**
+	 * Gets the property indicating a foreground load, see {@link #isLoading()}.
+	 * @return the loading property.
+	 */
+	public ReadOnlyBooleanProperty loadingProperty() {
+		if (loading == null)
+			loading = new ReadOnlyBooleanWrapper(this, "loading", isLoading());
+		return loading.getReadOnlyProperty();
+	}
+
+	/**
+	 * Gets the property of the formatted scan progress, see {@link #getProgressText()}.
+	 * @return the progress text property.
+	 */
+	public ReadOnlyStringProperty progressTextProperty() {
+		if (progressText == null)
+			progressText = new ReadOnlyStringWrapper(this, "progressText", getProgressText());
+		return progressText.getReadOnlyProperty();
+	}
+
+	/**
+	 * Gets the size of the underlying file.
+	 * @return the size in bytes.
+	 */
+	public long getSize() {
+		return listing.getSize(index);
+	}
+
+	/**
+	 * Gets the modification time of the underlying file.
+	 * @return the modification time in milliseconds since the epoch.
+	 */
+	public long getLastModified() {
+		return listing.getLastModified(index);
+	}
+
+	/**
+	 * Gets the listing of the parent directory containing the underlying file.
+	 * @return the listing containing the underlying file.
+	 */
+	Listing getListing() {
+		return listing;
+	}
+
+	/**
+	 * Gets the attribute snapshot of the underlying file.
+	 * @return the attribute snapshot of the underlying file.
+	 */
+	public DirectoryEntry getEntry() {
+		return listing.getEntry(index);
+	}
+
+	/**
+	 * Gets the dialog handler of the tree this item belongs to.
+	 * @return the dialog handler, null if this item is not part of a tree.
+	 */
+	public DialogHandler getDialogHandler() {
+		TreeItem<File> parent = getParent();
+		return parent instanceof FileTreeItem ? ((FileTreeItem) parent).getDialogHandler() : null;
+	}
+
+	/**
+	 * Gets the sorting of the tree this item belongs to.
+	 * @return the sorting, the default sorting if this item is not part of a tree.
+	 */
+	public Sorting getSorting() {
+		TreeItem<File> parent = getParent();
+		return parent instanceof FileTreeItem ? ((FileTreeItem) parent).getSorting() : Sorting.DEFAULT;
 	}
 
 	@Override
 	public String toString() {
-		return getValue().getName();
+		return getName();
 	}
 
 	/**
 	 * Reloads this tree item.
+	 * 
+	 * The directory is read again and the differences are applied to the existing
+	 * children, so expansion state and selection below this item are kept.
 	 */
 	public void refresh() {
-		setExpanded(false);
-		setExpanded(true);
+		ListingCache.getInstance().invalidate(getValue());
+		load();
 	}
 
 	/**
-	 * Loads the children of a directory.
+	 * Copies files into this directory in the background.
 	 * 
-	 * The method implements the Supplier interface and is invoked asynchronously.
+	 * If files of the same name exist, copying continues after confirmation: identical files
+	 * are skipped, partial copies are resumed and other files are overwritten. Existing files
+	 * are looked up by a load of this directory, so a slow target never blocks the JavaFX thread.
+	 * @param files the files and directories to copy.
+	 */
+	public void copyHere(List<File> files) {
+		DialogHandler dialogHandler = getDialogHandler();
+		List<Path> sources = new ArrayList<>();
+		for (File file : files)
+			sources.add(file.toPath());
+		Path targetDir = getValue().toPath();
+		LoadScheduler.getInstance().submit(targetDir, LoadScheduler.Priority.FOREGROUND,
+				() -> findExisting(targetDir, sources), (List<String> existing, Throwable throwable) -> Platform.runLater(() -> {
+					if (throwable != null) {
+						dialogHandler.showError(throwable);
+						return;
+					}
+					if (!existing.isEmpty() && !dialogHandler.showConfirmation("Copy",
+							"Target exists: " + String.join(", ", existing),
+							"Existing files of the same size and date are skipped, partial copies are resumed and other files are overwritten. Continue?"))
+						return;
+					CopyJob job = new CopyJob(sources, targetDir);
+					job.setOnFinished(this::contentsChanged);
+					dialogHandler.startJob(job);
+				}));
+	}
+
+	/**
+	 * Moves files into this directory in the background.
 	 * 
-	 * Any RunTimeExceptions and Errors thrown inside this method will be forwarded
-	 * to the BiConsumer method.
+	 * The tree is updated once the move has finished: the directories of the moved items
+	 * and this directory are read again. The job fails without moving anything if a file of the
+	 * same name exists in this directory.
+	 * @param items the items of the files and directories to move.
 	 */
-	@Override
-	public File[] get() {
-		File[] retval = new File[0];
-		File file = getValue();
-		if (file != null && file.isDirectory()) {
-			retval = file.listFiles();
-			if (retval == null)
-				retval = new File[0];
-			else
-				Arrays.sort(retval);
+	public void moveHere(List<FileTreeItem> items) {
+		DialogHandler dialogHandler = getDialogHandler();
+		List<Path> sources = new ArrayList<>();
+		Set<FileTreeItem> parents = new LinkedHashSet<>();
+		for (FileTreeItem item : items) {
+			sources.add(item.getValue().toPath());
+			parents.add((FileTreeItem) item.getParent());
 		}
-		return retval;
+		parents.add(this);
+		MoveJob job = new MoveJob(sources, getValue().toPath());
+		job.setOnFinished(() -> contentsChanged(parents));
+		dialogHandler.startJob(job);
 	}
 
 	/**
-	 * Handles the result after loading the children of a directory.
+	 * Deletes files and directory trees in the background with a single job.
 	 * 
-	 * The method implements the BiConsumer interface.
+	 * The tree is updated once the deletion has finished: the directories of the deleted
+	 * items are read again.
+	 * @param items the items of the files and directories to delete.
+	 */
+	public static void delete(List<FileTreeItem> items) {
+		List<Path> sources = new ArrayList<>();
+		Set<FileTreeItem> parents = new LinkedHashSet<>();
+		for (FileTreeItem item : items) {
+			sources.add(item.getValue().toPath());
+			if (item.getParent() instanceof FileTreeItem)
+				parents.add((FileTreeItem) item.getParent());
+		}
+		DeleteJob job = new DeleteJob(sources);
+		job.setOnFinished(() -> contentsChanged(parents));
+		items.get(0).getDialogHandler().startJob(job);
+	}
+
+	/**
+	 * Gets the items an operation on an item applies to.
 	 * 
-	 * @param files     the loaded children of a directory.
-	 * @param throwable any Throwable thrown during the load operation or null if
-	 *                  load was successful.
+	 * If the item is selected, the operation applies to all selected items, omitting those
+	 * below other selected items. Otherwise it applies to the item only.
+	 * @param item the item.
+	 * @param selectedItems the selected items.
+	 * @return the items the operation applies to, topmost first.
 	 */
-	@Override
-	public void accept(File[] files, Throwable throwable) {
-		if (throwable != null) {
-			dialogHandler.showError(throwable);
-			resetFolderIcon();
+	public static List<FileTreeItem> getBatch(FileTreeItem item, List<TreeItem<File>> selectedItems) {
+		if (!selectedItems.contains(item))
+			return Collections.singletonList(item);
+		Set<TreeItem<File>> selected = new HashSet<>(selectedItems);
+		List<FileTreeItem> batch = new ArrayList<>();
+		for (TreeItem<File> selectedItem : selectedItems) {
+			if (!(selectedItem instanceof FileTreeItem))
+				continue;
+			boolean below = false;
+			for (TreeItem<File> parent = selectedItem.getParent(); parent != null && !below; parent = parent.getParent())
+				below = selected.contains(parent);
+			if (!below)
+				batch.add((FileTreeItem) selectedItem);
+		}
+		return batch;
+	}
+
+	/**
+	 * Called when the contents of directories have been changed by a batch job.
+	 * 
+	 * Each directory is updated once, applying all changes of the job in a single pass.
+	 * @param dirs the changed directories.
+	 */
+	static void contentsChanged(Set<FileTreeItem> dirs) {
+		for (FileTreeItem dir : dirs)
+			dir.contentsChanged();
+	}
+
+	/**
+	 * Called when the contents of this directory have been changed by a job.
+	 * 
+	 * Expanded directories are refreshed, others are read again when expanded next time.
+	 */
+	void contentsChanged() {
+		if (isExpanded())
+			refresh();
+		else
+			ListingCache.getInstance().invalidate(getValue());
+	}
+
+	/**
+	 * Called when a single file has been created in this directory, e.g. by the New File action.
+	 * 
+	 * The directory is not read again: the loaded listing is extended by the new entry in a
+	 * loader thread and the new child is inserted at its sorted position by the tree update
+	 * scheduler. A pending load is superseded by a refresh instead, collapsed directories are
+	 * read again when expanded next time. Must be invoked in the JavaFX thread.
+	 * @param file the created file.
+	 */
+	void created(File file) {
+		ListingCache.getInstance().invalidate(getValue());
+		if (!isExpanded() || state == null || state.loadedListing == null)
+			return;
+		DirectoryState state = this.state;
+		if (state.loadTask != null && !state.loadTask.isDone()) {
+			refresh();
+			return;
+		}
+		Listing current = state.loadedListing;
+		Sorting sorting = getSorting();
+		int generation;
+		synchronized (state) {
+			generation = ++state.loadGeneration;
+		}
+		state.loadTask = LoadScheduler.getInstance().submit(getValue().toPath(), LoadScheduler.Priority.FOREGROUND,
+				() -> sorting.apply(current.with(DirectoryEntry.of(file))),
+				(Listing inserted, Throwable throwable) -> submitUpdate(state, generation, () -> {
+					state.loadTask = null;
+					if (throwable != null)
+						refresh();
+					else
+						insertChild(inserted, file.getName());
+				}));
+	}
+
+	/**
+	 * Called when this item has been expanded.
+	 * 
+	 * Children are loaded or revalidated against the listing cache. The nearest sibling
+	 * directories are prefetched, users tend to open neighbouring directories next.
+	 * Directories just crawled by an {@link ExpandJob} are neither loaded nor prefetched
+	 * again, they are watched once shown.
+	 */
+	void expanded() {
+		if (state != null && state.unsorted) {
+			// the sorting changed while collapsed, the load below applies it to this item
+			state.unsorted = false;
+			resortChildren();
+		}
+		if (state != null && state.crawled)
+			return;
+		if (state != null && state.restored) {
+			// restored children are shown at once, the directory is revalidated in the background
+			state.restored = false;
+			startLoad(LoadScheduler.Priority.BACKGROUND);
 		} else {
-			try {
-				// avoid NullPointerException
-				if (files == null)
-					files = new File[0];
-				// create FileTreeItem container for all files (outside JavaFX thread)
-				FileTreeItem[] treeItems = new FileTreeItem[files.length];
-				for (int i = 0; i < files.length; i++)
-					treeItems[i] = new FileTreeItem(files[i], dialogHandler);
-				// add all children to this item (in JavaFX thread)
-				Platform.runLater(new Runnable() {
-					@Override
-					public void run() {
-						getChildren().setAll(treeItems);
-						resetFolderIcon();
-					}
+			load();
+		}
+		prefetchSiblings();
+	}
 
-				});
-			} catch (RuntimeException e) {
-				dialogHandler.showError(e);
-				resetFolderIcon();
-			}
+	/**
+	 * Prefetches the listings this directory will probably be opened with next: the
+	 * subdirectories if its children are loaded, the directory itself otherwise.
+	 * 
+	 * Called when this item has been selected. Does nothing for files.
+	 */
+	void prefetch() {
+		if (!isDirectory())
+			return;
+		if (state != null && state.loadedListing != null)
+			prefetchChildren(state.loadedListing);
+		else
+			Prefetcher.getInstance().prefetch(getValue());
+	}
+
+	/**
+	 * Expands this item showing a listing read in advance, e.g. restored from a snapshot or
+	 * crawled by an {@link ExpandJob}.
+	 * 
+	 * The children are created at once without reading the directory. A restored listing may be
+	 * outdated, the directory is revalidated in the background when expanded. A crawled listing
+	 * has just been read, the directory is only watched once its item is shown, so a deep crawl
+	 * neither loads nor watches every directory. Children already loaded are kept and updated
+	 * with the differences. Must be invoked in the JavaFX thread.
+	 * @param restored the listing sorted by name.
+	 * @param revalidate true for a listing which may be outdated, false for a crawled listing.
+	 */
+	void restore(Listing restored, boolean revalidate) {
+		DirectoryState state = state();
+		Listing sorted = getSorting().apply(restored);
+		if (state.loadedListing == null) {
+			getChildren().setAll(firstPage(sorted));
+			state.shownEntries = Math.min(sorted.size(), PAGE_SIZE);
+		} else if (sorted != state.loadedListing) {
+			applyListing(sorted, null);
+		}
+		state.loadedListing = sorted;
+		if (!isExpanded()) {
+			if (revalidate)
+				state.restored = true;
+			else
+				state.crawled = true;
+			setExpanded(true);
 		}
 	}
 
+	/**
+	 * Called when a tree cell shows this item.
+	 * 
+	 * Starts watching a directory crawled by an {@link ExpandJob} and still expanded.
+	 */
+	void shown() {
+		if (state != null && state.crawled && isExpanded()) {
+			state.crawled = false;
+			DirectoryWatcher.getInstance().register(this);
+		}
+	}
+
+	/**
+	 * Expands this directory and its subdirectories in the background.
+	 * @param levels the number of levels to expand, 1 for this directory only.
+	 */
+	public void expandAll(int levels) {
+		JobManager.getInstance().submit(new ExpandJob(this, levels));
+	}
+
+	/**
+	 * Gets a child of a directory whose children are loaded, paging in further children if necessary.
+	 * @param name the name of the child.
+	 * @return the child, null if the children are not loaded or there is no such child.
+	 */
+	FileTreeItem getLoadedChild(String name) {
+		return state == null || state.loadedListing == null ? null : findChild(name);
+	}
+
+	/**
+	 * Called when this item has been collapsed.
+	 * 
+	 * Children are kept, a pending load is cancelled.
+	 */
+	void collapsed() {
+		// crawled directories are loaded when expanded again
+		if (state != null)
+			state.crawled = false;
+		cancelLoad();
+		DirectoryWatcher.getInstance().unregister(this);
+	}
+
+	/**
+	 * Reloads this tree item in the background without showing the loading icon.
+	 * 
+	 * Used by the directory watcher, must be invoked in the JavaFX thread.
+	 */
+	void update() {
+		ListingCache.getInstance().invalidate(getValue());
+		// a pending load is superseded but keeps its priority
+		LoadScheduler.Priority priority = LoadScheduler.Priority.BACKGROUND;
+		if (state != null && state.loadTask != null && !state.loadTask.isDone())
+			priority = state.loadTask.getPriority();
+		startLoad(priority);
+	}
+
+	/**
+	 * Sorts the loaded children of this item and its expanded descendants again.
+	 * 
+	 * The listings are taken from the listing cache and sorted in a loader thread,
+	 * existing children are kept. Collapsed items are only marked and sorted again
+	 * when expanded next time. Must be invoked in the JavaFX thread.
+	 */
+	void resort() {
+		if (state == null || state.loadedListing == null)
+			return;
+		if (!isExpanded()) {
+			state.unsorted = true;
+			return;
+		}
+		state.unsorted = false;
+		startLoad(LoadScheduler.Priority.FOREGROUND);
+		resortChildren();
+	}
+
+	/**
+	 * Adds the next page of children of a huge directory.
+	 * 
+	 * Invoked in the JavaFX thread when the trailing placeholder item is rendered.
+	 */
+	void loadMore() {
+		Listing loaded = state == null ? null : state.loadedListing;
+		ObservableList<TreeItem<File>> children = getChildren();
+		if (loaded == null || children.isEmpty() || !(children.get(children.size() - 1) instanceof MoreTreeItem))
+			return;
+		int shown = state.shownEntries;
+		int end = Math.min(loaded.size(), shown + PAGE_SIZE);
+		List<TreeItem<File>> page = new ArrayList<>(end - shown + 1);
+		for (int i = shown; i < end; i++)
+			page.add(new FileTreeItem(loaded, i));
+		if (end < loaded.size())
+			page.add(new MoreTreeItem(loaded.size() - end));
+		state.shownEntries = end;
+		children.remove(children.size() - 1);
+		children.addAll(page);
+	}
+
+	/**
+	 * Expands the path to a descendant of this item, loading directories on the way.
+	 * 
+	 * Must be invoked in the JavaFX thread.
+	 * @param names the names of the path segments below this item.
+	 * @param consumer invoked with the item of the descendant once it is part of the tree, not
+	 *            invoked if the descendant does not exist.
+	 */
+	public void reveal(List<String> names, Consumer<FileTreeItem> consumer) {
+		if (names.isEmpty()) {
+			consumer.accept(this);
+			return;
+		}
+		if (!isDirectory())
+			return;
+		DirectoryState state = state();
+		if (state.loadedListing == null || state.loadTask != null) {
+			// continue once the children are loaded
+			state.pendingReveal = () -> reveal(names, consumer);
+			if (!isExpanded())
+				setExpanded(true);
+			else if (state.loadTask == null)
+				load();
+			return;
+		}
+		setExpanded(true);
+		FileTreeItem child = findChild(names.get(0));
+		if (child != null)
+			child.reveal(names.subList(1, names.size()), consumer);
+	}
+
 	/**
 	 * Checks whether this FileTreeItem is an ancestor of another FileTreeItem.
 	 * @param other the other FileTreeItem.
@@ -177,19 +584,22 @@ public class FileTreeItem extends TreeItem<File> implements Supplier<File[]>, Bi
 
 	/**
 	 * Creates a context menu for this FileTreeItem.
+	 * 
+	 * Copy and delete apply to all items of the batch, directory actions to this item only.
+	 * @param batch the items copy and delete apply to, see {@link #getBatch(FileTreeItem, List)}.
 	 * @return a context menu for this FileTreeItem.
 	 */
-	public ContextMenu createContextMenu() {
+	public ContextMenu createContextMenu(List<FileTreeItem> batch) {
+		DialogHandler dialogHandler = getDialogHandler();
 		ContextMenu contextMenu = new ContextMenu();
 		ObservableList<MenuItem> menuItems = contextMenu.getItems();
-		if (getValue().isDirectory()) {
+		if (isDirectory()) {
 			/*
 			 * Refresh Action
 			 */
 			MenuItem refresh = new MenuItem("Refresh");
 			menuItems.add(refresh);
-			// We simply close and reopen the folder tree item which will empty the children
-			// list.
+			// We read the directory again and apply the differences to the children.
 			// But only if it was already open before refresh.
 			refresh.setOnAction(new EventHandler<ActionEvent>() {
 				@Override
@@ -199,11 +609,52 @@ public class FileTreeItem extends TreeItem<File> implements Supplier<File[]>, Bi
 					}
 				}
 			});
+			/*
+			 * Expand Actions
+			 */
+			Menu expand = new Menu("Expand");
+			menuItems.add(expand);
+			for (int levels : new int[] { 2, 3, 5, ExpandJob.MAX_DEPTH }) {
+				MenuItem expandLevels = new MenuItem(levels == ExpandJob.MAX_DEPTH ? "All Levels" : levels + " Levels");
+				expand.getItems().add(expandLevels);
+				expandLevels.setOnAction(new EventHandler<ActionEvent>() {
+					@Override
+					public void handle(ActionEvent event) {
+						expandAll(levels);
+					}
+				});
+			}
 			/*
 			 * Separator
 			 */
 			SeparatorMenuItem separatorMenuItem = new SeparatorMenuItem();
 			menuItems.add(separatorMenuItem);
+			/*
+			 * Search in Files Action
+			 */
+			MenuItem searchInFiles = new MenuItem("Search in Files...");
+			menuItems.add(searchInFiles);
+			searchInFiles.setOnAction(new EventHandler<ActionEvent>() {
+				@Override
+				public void handle(ActionEvent event) {
+					dialogHandler.showContentSearch(getValue());
+				}
+			});
+			/*
+			 * Find Duplicates Action
+			 */
+			MenuItem findDuplicates = new MenuItem("Find Duplicates");
+			menuItems.add(findDuplicates);
+			findDuplicates.setOnAction(new EventHandler<ActionEvent>() {
+				@Override
+				public void handle(ActionEvent event) {
+					dialogHandler.showDuplicates(getValue());
+				}
+			});
+			/*
+			 * Separator
+			 */
+			menuItems.add(new SeparatorMenuItem());
 			/*
 			 * Create New File Action
 			 */
@@ -225,10 +676,7 @@ public class FileTreeItem extends TreeItem<File> implements Supplier<File[]>, Bi
 									"Sorry, ignoring your request because file already exists!");
 						} else {
 							file.createNewFile();
-							FileTreeItem newTreeItem = new FileTreeItem(file, dialogHandler);
-							ObservableList<TreeItem<File>> children = getChildren();
-							children.add(newTreeItem);
-							children.sort(Util.COMPARATOR);
+							created(file);
 						}
 						setExpanded(true);
 					} catch (IOException e) {
@@ -262,16 +710,63 @@ public class FileTreeItem extends TreeItem<File> implements Supplier<File[]>, Bi
 									"Error creating Directory: " + file.getName(),
 									"Sorry, failed to create directory!");
 						} else {
-							FileTreeItem newTreeItem = new FileTreeItem(file, dialogHandler);
-							ObservableList<TreeItem<File>> children = getChildren();
-							children.add(newTreeItem);
-							children.sort(Util.COMPARATOR);
+							created(file);
 						}
 					}
 					setExpanded(true);
 				}
 			});
 		}
+		/*
+		 * Copy Action
+		 */
+		MenuItem copy = new MenuItem("Copy");
+		menuItems.add(copy);
+		copy.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent event) {
+				List<File> files = new ArrayList<>();
+				for (FileTreeItem item : batch)
+					files.add(item.getValue());
+				ClipboardContent content = new ClipboardContent();
+				content.putFiles(files);
+				Clipboard.getSystemClipboard().setContent(content);
+			}
+		});
+		/*
+		 * Checksum Actions
+		 */
+		Menu checksum = new Menu("Checksum");
+		menuItems.add(checksum);
+		for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+			MenuItem compute = new MenuItem(algorithm.toString());
+			checksum.getItems().add(compute);
+			compute.setOnAction(new EventHandler<ActionEvent>() {
+				@Override
+				public void handle(ActionEvent event) {
+					List<File> files = new ArrayList<>();
+					for (FileTreeItem item : batch)
+						files.add(item.getValue());
+					dialogHandler.computeChecksums(files, algorithm);
+				}
+			});
+		}
+		if (isDirectory()) {
+			/*
+			 * Paste Action
+			 */
+			MenuItem paste = new MenuItem("Paste");
+			paste.setDisable(!Clipboard.getSystemClipboard().hasFiles());
+			menuItems.add(paste);
+			paste.setOnAction(new EventHandler<ActionEvent>() {
+				@Override
+				public void handle(ActionEvent event) {
+					Clipboard clipboard = Clipboard.getSystemClipboard();
+					if (clipboard.hasFiles())
+						copyHere(clipboard.getFiles());
+				}
+			});
+		}
 		/*
 		 * Delete File Action
 		 */
@@ -280,19 +775,19 @@ public class FileTreeItem extends TreeItem<File> implements Supplier<File[]>, Bi
 		deleteFile.setOnAction(new EventHandler<ActionEvent>() {
 			@Override
 			public void handle(ActionEvent event) {
-				File file = getValue();
-				boolean result = dialogHandler.showConfirmation("Delete File", "Delete File: " + file.getName(),
-						"Are you sure?");
-				if (result) {
-					boolean delete = file.delete();
-					if (!delete) {
-						dialogHandler.showAlert(AlertType.ERROR, "Error", "Error deleting File: " + file.getName(),
-								"Sorry, deletion failed! Maybe non-empty directory?");
-					} else {
-						FileTreeItem parent = (FileTreeItem) getParent();
-						parent.getChildren().remove(FileTreeItem.this);
-					}
-				}
+				FileTreeItem item = batch.get(0);
+				boolean result;
+				if (batch.size() > 1)
+					result = dialogHandler.showConfirmation("Delete Files",
+							String.format("Delete %,d selected items", batch.size()),
+							"Selected directories and all their contents will be deleted. Are you sure?");
+				else
+					result = dialogHandler.showConfirmation("Delete File", "Delete File: " + item.getName(),
+							item.isDirectory() ? "The directory and all its contents will be deleted. Are you sure?"
+									: "Are you sure?");
+				// deletion runs in the background, the parents are refreshed when done
+				if (result)
+					delete(batch);
 			}
 		});
 		return contextMenu;
@@ -301,35 +796,557 @@ public class FileTreeItem extends TreeItem<File> implements Supplier<File[]>, Bi
 	// private methods
 
 	/**
-	 * Sets the icon of this FileTreeItem.
-	 * @param image the icon of this FileTreeItem.
+	 * Finds the sources which exist in a target directory.
+	 *
+	 * The method is invoked asynchronously by the load scheduler.
+	 * @param targetDir the target directory.
+	 * @param sources the files and directories to copy.
+	 * @return the names of the sources which exist in the target directory.
+	 */
+	private static List<String> findExisting(Path targetDir, List<Path> sources) {
+		List<String> existing = new ArrayList<>();
+		for (Path source : sources) {
+			String name = source.getFileName().toString();
+			if (Files.exists(targetDir.resolve(name), LinkOption.NOFOLLOW_LINKS))
+				existing.add(name);
+		}
+		return existing;
+	}
+
+	/**
+	 * Finds a loaded child by name, paging in further children if necessary.
+	 * @param name the name of the child.
+	 * @return the child, null if there is no such child.
+	 */
+	private FileTreeItem findChild(String name) {
+		Listing loaded = state.loadedListing;
+		int index = -1;
+		for (int i = 0; i < loaded.size() && index < 0; i++) {
+			if (loaded.getName(i).equals(name))
+				index = i;
+		}
+		if (index < 0)
+			return null;
+		for (int shown = -1; shown != state.shownEntries && state.shownEntries <= index;) {
+			shown = state.shownEntries;
+			loadMore();
+		}
+		for (TreeItem<File> child : getChildren()) {
+			if (child instanceof FileTreeItem && ((FileTreeItem) child).getName().equals(name))
+				return (FileTreeItem) child;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the loading state of this directory, creating it on first use.
+	 * @return the loading state.
 	 */
-	private void applyGraphic(Image image) {
-		applyGraphic(image, false);
+	private DirectoryState state() {
+		if (state == null)
+			state = new DirectoryState();
+		return state;
 	}
 
 	/**
-	 * Sets the icon of this FileTreeItem.
-	 * @param image the icon of this FileTreeItem.
-	 * @param animate true, if the icon should be animated.
+	 * Loads the children of a directory.
+	 * 
+	 * The method is invoked asynchronously by the load scheduler.
+	 * 
+	 * Names and attributes of all children are read in a single pass or served from
+	 * the listing cache if the directory is unchanged, unreadable directories are
+	 * treated as empty. While scanning, the number of entries read so far is shown
+	 * next to the loading icon.
+	 * 
+	 * Any RunTimeExceptions and Errors thrown inside this method will be forwarded
+	 * to the accept method.
+	 * @param state      the loading state.
+	 * @param generation the generation of the load, the scan is cancelled as soon
+	 *                   as a newer load is started.
+	 * @param sorting    the sorting of the children.
+	 * @param trace      the trace of the load.
+	 * @return the sorted children of the directory.
 	 */
-	private void applyGraphic(Image image, boolean animate) {
-		ImageView icon = new ImageView(image);
-		setGraphic(icon);
-		if (animate) {
-			timeLine = new Timeline(
-					new KeyFrame(Duration.seconds(0), new KeyValue(icon.rotateProperty(), 0)),
-					new KeyFrame(Duration.seconds(1), new KeyValue(icon.rotateProperty(), 360)));
-			timeLine.setCycleCount(Animation.INDEFINITE);
-			timeLine.play();
+	private Listing list(DirectoryState state, int generation, Sorting sorting, Metrics.LoadTrace trace) {
+		trace.mark(Metrics.Stage.QUEUE);
+		File dir = getValue();
+		if (!isDirectory())
+			return Listing.empty(dir);
+		Listing listing;
+		try {
+			listing = ListingCache.getInstance().list(dir, (int count) -> {
+				state.scannedEntries = count;
+				if (!state.progressPending) {
+					state.progressPending = true;
+					Platform.runLater(() -> showProgress(generation));
+				}
+				return generation == state.loadGeneration;
+			}, this::evicted);
+		} catch (IOException e) {
+			listing = Listing.empty(dir);
+		}
+		trace.mark(Metrics.Stage.LIST);
+		Listing sorted = sorting.apply(listing);
+		trace.mark(Metrics.Stage.SORT);
+		trace.setEntries(sorted.size());
+		return sorted;
+	}
+
+	/**
+	 * Handles the result after loading the children of a directory.
+	 * 
+	 * The method is invoked in a loader thread. The children are updated by the tree
+	 * update scheduler, which applies only the latest pending result of this item.
+	 * Results of superseded or cancelled loads are dropped in the JavaFX thread.
+	 * 
+	 * @param state      the loading state.
+	 * @param loaded     the loaded children of a directory.
+	 * @param throwable  any Throwable thrown during the load operation or null if
+	 *                   load was successful.
+	 * @param generation the generation of the load.
+	 * @param trace      the trace of the load.
+	 */
+	private void accept(DirectoryState state, Listing loaded, Throwable throwable, int generation,
+			Metrics.LoadTrace trace) {
+		if (throwable != null) {
+			showError(throwable);
+			submitUpdate(state, generation, () -> loaded(generation, trace));
+		} else {
+			try {
+				// keep existing children if the listing did not change
+				if (loaded == state.loadedListing) {
+					submitUpdate(state, generation, () -> {
+						trace.mark(Metrics.Stage.FX_QUEUE);
+						loaded(generation, trace);
+					});
+					return;
+				}
+				if (state.loadedListing == null) {
+					// create FileTreeItem container for the first page (outside JavaFX thread)
+					int shown = Math.min(loaded.size(), PAGE_SIZE);
+					List<TreeItem<File>> treeItems = firstPage(loaded);
+					trace.mark(Metrics.Stage.BUILD);
+					// add first page to this item (in JavaFX thread)
+					submitUpdate(state, generation, new Runnable() {
+						@Override
+						public void run() {
+							if (generation != state.loadGeneration)
+								return;
+							trace.mark(Metrics.Stage.FX_QUEUE);
+							getChildren().setAll(treeItems);
+							state.loadedListing = loaded;
+							state.shownEntries = shown;
+							trace.mark(Metrics.Stage.APPLY);
+							loaded(generation, trace);
+						}
+					});
+				} else {
+					// apply differences to existing children (in JavaFX thread)
+					submitUpdate(state, generation, new Runnable() {
+						@Override
+						public void run() {
+							if (generation != state.loadGeneration)
+								return;
+							trace.mark(Metrics.Stage.FX_QUEUE);
+							state.loadedListing = loaded;
+							applyListing(loaded, () -> {
+								trace.mark(Metrics.Stage.APPLY);
+								loaded(generation, trace);
+							});
+						}
+					});
+				}
+			} catch (RuntimeException e) {
+				showError(e);
+				submitUpdate(state, generation, () -> loaded(generation, trace));
+			}
 		}
 	}
 
 	/**
-	 * Resets the folder icon to its default and stops the animation.
-	*/
-	private void resetFolderIcon() {
-		timeLine.stop();
-		applyGraphic(FOLDER_ICON);
+	 * Submits the tree mutation of a load to the tree update scheduler, unless the load has been
+	 * superseded.
+	 * 
+	 * A pending mutation of an older load of this item is replaced. The generation is checked and
+	 * the mutation submitted atomically, so a superseded result never replaces a newer one.
+	 * @param state      the loading state.
+	 * @param generation the generation of the load.
+	 * @param mutation   the mutation applied in the JavaFX thread.
+	 */
+	private static void submitUpdate(DirectoryState state, int generation, Runnable mutation) {
+		synchronized (state) {
+			if (generation == state.loadGeneration)
+				TreeUpdateScheduler.getInstance().submit(state, mutation);
+		}
+	}
+
+	/**
+	 * Creates the children of the first page of a listing.
+	 * @param loaded the sorted listing.
+	 * @return the children, followed by a placeholder if there are more entries.
+	 */
+	private static List<TreeItem<File>> firstPage(Listing loaded) {
+		int shown = Math.min(loaded.size(), PAGE_SIZE);
+		List<TreeItem<File>> treeItems = new ArrayList<>(shown + 1);
+		for (int i = 0; i < shown; i++)
+			treeItems.add(new FileTreeItem(loaded, i));
+		if (shown < loaded.size())
+			treeItems.add(new MoreTreeItem(loaded.size() - shown));
+		return treeItems;
+	}
+
+	/**
+	 * Shows an error dialog if this item is part of a tree.
+	 * @param throwable the error.
+	 */
+	private void showError(Throwable throwable) {
+		DialogHandler dialogHandler = getDialogHandler();
+		if (dialogHandler != null)
+			dialogHandler.showError(throwable);
+	}
+
+	/**
+	 * Starts loading the children of this item asynchronously and shows the loading icon.
+	 */
+	private void load() {
+		DirectoryState state = state();
+		if (!state.spinning) {
+			state.spinning = true;
+			SpinnerClock.start();
+			loadingStateChanged();
+		}
+		startLoad(LoadScheduler.Priority.FOREGROUND);
+	}
+
+	/**
+	 * Submits a load to the load scheduler, superseding any pending load.
+	 * @param priority the priority of the load.
+	 */
+	private void startLoad(LoadScheduler.Priority priority) {
+		DirectoryState state = state();
+		if (state.loadTask != null)
+			state.loadTask.cancel();
+		int generation;
+		synchronized (state) {
+			generation = ++state.loadGeneration;
+		}
+		Sorting sorting = getSorting();
+		Path dir = getValue().toPath();
+		Metrics.LoadTrace trace = Metrics.getInstance().startLoad(dir, priority == LoadScheduler.Priority.FOREGROUND);
+		state.loadTask = LoadScheduler.getInstance().submit(dir, priority,
+				() -> list(state, generation, sorting, trace),
+				(Listing loaded, Throwable throwable) -> accept(state, loaded, throwable, generation, trace));
+	}
+
+	/**
+	 * Cancels a pending load and resets the loading icon.
+	 */
+	private void cancelLoad() {
+		if (state != null && state.loadTask != null) {
+			state.loadTask.cancel();
+			state.loadTask = null;
+			synchronized (state) {
+				state.loadGeneration++;
+			}
+			stopSpinner();
+		}
+	}
+
+	/**
+	 * Shows the number of entries scanned so far next to the loading icon.
+	 * @param generation the generation of the running load.
+	 */
+	private void showProgress(int generation) {
+		state.progressPending = false;
+		if (generation == state.loadGeneration && state.spinning) {
+			state.progressText = String.format("%,d", state.scannedEntries);
+			loadingStateChanged();
+		}
+	}
+
+	/**
+	 * Finishes a load: resets the icon and watches the directory while expanded.
+	 * 
+	 * Does nothing if the load has been superseded or cancelled.
+	 * @param generation the generation of the finished load.
+	 * @param trace the trace of the finished load.
+	 */
+	private void loaded(int generation, Metrics.LoadTrace trace) {
+		if (generation != state.loadGeneration)
+			return;
+		trace.finish();
+		boolean foreground = state.loadTask != null
+				&& state.loadTask.getPriority() == LoadScheduler.Priority.FOREGROUND;
+		state.loadTask = null;
+		stopSpinner();
+		if (isExpanded()) {
+			DirectoryWatcher.getInstance().register(this);
+			// revalidations are not followed by prefetches, only loads the user waited for
+			if (foreground && state.loadedListing != null)
+				prefetchChildren(state.loadedListing);
+		}
+		if (state.pendingReveal != null) {
+			Runnable reveal = state.pendingReveal;
+			state.pendingReveal = null;
+			reveal.run();
+		}
+	}
+
+	/**
+	 * Sorts the expanded children of this item again and marks the collapsed ones.
+	 */
+	private void resortChildren() {
+		for (TreeItem<File> child : getChildren()) {
+			if (child instanceof FileTreeItem)
+				((FileTreeItem) child).resort();
+		}
+	}
+
+	/**
+	 * Prefetches the first subdirectories of a listing.
+	 * @param loaded the listing.
+	 */
+	private static void prefetchChildren(Listing loaded) {
+		for (int i = 0, count = 0; i < loaded.size() && count < PREFETCH_CHILDREN; i++) {
+			if (loaded.isDirectory(i)) {
+				Prefetcher.getInstance().prefetch(loaded.getFile(i));
+				count++;
+			}
+		}
+	}
+
+	/**
+	 * Prefetches the sibling directories nearest to this item in the listing of its parent.
+	 */
+	private void prefetchSiblings() {
+		int count = 0;
+		for (int distance = 1; count < PREFETCH_SIBLINGS
+				&& (index - distance >= 0 || index + distance < listing.size()); distance++) {
+			for (int i : new int[] { index + distance, index - distance }) {
+				if (i >= 0 && i < listing.size() && listing.isDirectory(i) && count < PREFETCH_SIBLINGS) {
+					Prefetcher.getInstance().prefetch(listing.getFile(i));
+					count++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Applies a new listing to the existing children with a minimal set of changes.
+	 * 
+	 * Children whose file still exists with the same type are kept (including their
+	 * own expansion state and children) and are pointed to the new listing, removed
+	 * files are removed and new files are inserted at their sorted position. At
+	 * least as many entries as before are shown, the rest stays paged. Many new files
+	 * are inserted in chunks over several pulses of the tree update scheduler, a newer
+	 * listing applied meanwhile continues from the children inserted so far.
+	 * @param loaded the new listing.
+	 * @param finished invoked once all changes have been applied, not invoked if superseded,
+	 *            may be null.
+	 */
+	private void applyListing(Listing loaded, Runnable finished) {
+		ObservableList<TreeItem<File>> children = getChildren();
+		Map<File, FileTreeItem> existing = new HashMap<>();
+		List<TreeItem<File>> removed = new ArrayList<>();
+		for (TreeItem<File> child : children) {
+			if (child instanceof FileTreeItem)
+				existing.put(child.getValue(), (FileTreeItem) child);
+			else
+				removed.add(child);
+		}
+		int shown = Math.min(loaded.size(), Math.max(state.shownEntries, PAGE_SIZE));
+		List<TreeItem<File>> merged = new ArrayList<>(shown + 1);
+		List<Integer> inserted = new ArrayList<>();
+		for (int i = 0; i < shown; i++) {
+			File file = loaded.getFile(i);
+			FileTreeItem child = existing.remove(file);
+			if (child != null && child.isDirectory() == loaded.isDirectory(i)) {
+				child.listing = loaded;
+				child.index = i;
+			} else {
+				if (child != null)
+					existing.put(file, child);
+				child = new FileTreeItem(loaded, i);
+				inserted.add(merged.size());
+			}
+			merged.add(child);
+		}
+		if (shown < loaded.size()) {
+			inserted.add(merged.size());
+			merged.add(new MoreTreeItem(loaded.size() - shown));
+		}
+		state.shownEntries = shown;
+		// removed directories and their expanded descendants are no longer watched
+		for (FileTreeItem child : existing.values())
+			unwatch(child);
+		removed.addAll(existing.values());
+		if (!removed.isEmpty())
+			children.removeAll(new HashSet<>(removed));
+		Object token = new Object();
+		state.applyToken = token;
+		applyInserts(token, merged, inserted, 0, finished);
+	}
+
+	/**
+	 * Inserts the next chunk of new children of a listing being applied and submits the rest to
+	 * the next pulse.
+	 * 
+	 * Does nothing if another listing has been applied or the children have been released meanwhile.
+	 * @param token the token of the listing being applied.
+	 * @param merged all children of the listing.
+	 * @param inserted the ascending positions of the new children.
+	 * @param from the index of the first position of this chunk.
+	 * @param finished invoked once all children have been inserted, may be null.
+	 */
+	private void applyInserts(Object token, List<TreeItem<File>> merged, List<Integer> inserted, int from,
+			Runnable finished) {
+		if (state.applyToken != token)
+			return;
+		ObservableList<TreeItem<File>> children = getChildren();
+		int to = Math.min(inserted.size(), from + MAX_INSERTS_PER_PULSE);
+		for (int i = from; i < to; i++) {
+			int index = inserted.get(i);
+			children.add(index, merged.get(index));
+		}
+		if (to < inserted.size()) {
+			// keyed by the token, so a pending mutation of a newer load is not replaced
+			TreeUpdateScheduler.getInstance().submit(token,
+					() -> applyInserts(token, merged, inserted, to, finished));
+			return;
+		}
+		state.applyToken = null;
+		// fall back to full replacement if the previous order differed
+		if (!children.equals(merged))
+			children.setAll(merged);
+		if (finished != null)
+			finished.run();
+	}
+
+	/**
+	 * Inserts the child of a single new entry without applying the whole listing.
+	 * 
+	 * The children are pointed to the extended listing and the new child is inserted at its
+	 * position, or counted by the trailing placeholder if it is not shown yet. Falls back to
+	 * applying the listing if the children do not match the loaded listing.
+	 * @param inserted the loaded listing extended by the new entry.
+	 * @param name the name of the new entry.
+	 */
+	private void insertChild(Listing inserted, String name) {
+		Listing current = state.loadedListing;
+		ObservableList<TreeItem<File>> children = getChildren();
+		int shown = state.shownEntries;
+		boolean consistent = state.applyToken == null && inserted.size() == current.size() + 1
+				&& children.size() == (shown < current.size() ? shown + 1 : shown);
+		for (int i = 0; consistent && i < shown; i++) {
+			TreeItem<File> child = children.get(i);
+			consistent = child instanceof FileTreeItem && ((FileTreeItem) child).listing == current
+					&& ((FileTreeItem) child).index == i;
+		}
+		int index = -1;
+		for (int i = 0; consistent && i < inserted.size() && index < 0; i++) {
+			if (inserted.getName(i).equals(name))
+				index = i;
+		}
+		state.loadedListing = inserted;
+		if (index < 0) {
+			applyListing(inserted, null);
+			return;
+		}
+		for (int i = 0; i < shown; i++) {
+			FileTreeItem child = (FileTreeItem) children.get(i);
+			child.listing = inserted;
+			child.index = i < index ? i : i + 1;
+		}
+		if (index < shown || shown == current.size()) {
+			state.shownEntries = shown + 1;
+			children.add(index, new FileTreeItem(inserted, index));
+		} else {
+			children.set(children.size() - 1, new MoreTreeItem(inserted.size() - shown));
+		}
+	}
+
+	/**
+	 * Called by the listing cache when the listing of this item was evicted.
+	 * 
+	 * The children of a collapsed item are released, they will be loaded again on
+	 * the next expand.
+	 */
+	private void evicted() {
+		Platform.runLater(() -> {
+			if (!isExpanded() && state != null) {
+				state.applyToken = null;
+				state.loadedListing = null;
+				state.shownEntries = 0;
+				for (TreeItem<File> child : getChildren()) {
+					if (child instanceof FileTreeItem)
+						unwatch((FileTreeItem) child);
+				}
+				getChildren().clear();
+			}
+		});
+	}
+
+	/**
+	 * Stops watching a child removed from this item and its descendants.
+	 * @param child the removed child.
+	 */
+	private static void unwatch(FileTreeItem child) {
+		// only directories expanded once can have been watched
+		if (child.state != null)
+			DirectoryWatcher.getInstance().unregisterAll(child);
+	}
+
+	/**
+	 * Stops the loading spinner of this item.
+	 */
+	private void stopSpinner() {
+		if (state.spinning) {
+			state.spinning = false;
+			state.progressText = null;
+			SpinnerClock.stop();
+			loadingStateChanged();
+		}
+	}
+
+	/**
+	 * Publishes a changed loading state to the tree cell showing this item, if any.
+	 */
+	private void loadingStateChanged() {
+		if (loading != null)
+			loading.set(isLoading());
+		if (progressText != null)
+			progressText.set(getProgressText());
+	}
+
+	/**
+	 * The state of a directory item needed to load its children.
+	 */
+	private static class DirectoryState {
+		/** The listing the current children were created from, null if not loaded. */
+		private volatile Listing loadedListing;
+		/** The number of leading entries of the loaded listing shown as children. */
+		private int shownEntries;
+		/** The token of the listing whose new children are being inserted, null if none. */
+		private Object applyToken;
+		/** The pending asynchronous load, null if none. */
+		private LoadScheduler.Task<Listing> loadTask;
+		/** The generation of the latest load, results of older loads are dropped. */
+		private volatile int loadGeneration;
+		/** The number of entries scanned by the running load. */
+		private volatile int scannedEntries;
+		/** Indicator for a pending progress update in the JavaFX thread. */
+		private volatile boolean progressPending;
+		/** Indicator for a foreground load showing the loading spinner. */
+		private boolean spinning;
+		/** The formatted number of scanned entries shown next to the spinner. */
+		private String progressText;
+		/** The reveal continued once the children are loaded, null if none. */
+		private Runnable pendingReveal;
+		/** Flag indicating children restored from a snapshot and not revalidated yet. */
+		private boolean restored;
+		/** Flag indicating children crawled by an expand job and not watched yet. */
+		private boolean crawled;
+		/** Flag indicating children sorted by a previous sorting, sorted again on expand. */
+		private boolean unsorted;
 	}
 }
@@ -0,0 +1,124 @@
+package net.treimers.filemanager;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of durations in nanoseconds.
+ *
+ * Values are counted in logarithmic buckets, every power of two is split into
+ * {@link #SUB_BUCKETS} linear sub buckets, so percentiles are exact to 12.5 percent with a fixed
+ * amount of memory. Recording is a few atomic increments and can be done from any thread.
+ */
+public class Histogram {
+	/** The number of sub buckets per power of two. */
+	private static final int SUB_BUCKETS = 8;
+	/** The number of bits of the sub bucket index. */
+	private static final int SUB_BUCKET_BITS = 3;
+	/** The number of buckets covering all positive long values. */
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+	/** The counts per bucket. */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	/** The number of recorded values. */
+	private final LongAdder count = new LongAdder();
+	/** The sum of recorded values. */
+	private final LongAdder sum = new LongAdder();
+	/** The maximum recorded value. */
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records a value.
+	 * @param value the value, negative values are recorded as 0.
+	 */
+	public void record(long value) {
+		value = Math.max(0, value);
+		counts.incrementAndGet(bucket(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * Gets the number of recorded values.
+	 * @return the number of recorded values.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Gets the mean of the recorded values.
+	 * @return the mean, 0 if no value has been recorded.
+	 */
+	public long getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : sum.sum() / n;
+	}
+
+	/**
+	 * Gets the maximum recorded value.
+	 * @return the maximum, 0 if no value has been recorded.
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Gets a percentile of the recorded values.
+	 * @param percentile the percentile between 0 and 100.
+	 * @return the upper bound of the bucket holding the percentile, 0 if no value has been recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			n += counts.get(i);
+		long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(upperBound(i), getMax());
+		}
+		return 0;
+	}
+
+	/**
+	 * Removes all recorded values.
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	// private methods
+
+	/**
+	 * Gets the bucket of a value.
+	 * @param value the non negative value.
+	 * @return the bucket index.
+	 */
+	private static int bucket(long value) {
+		if (value < SUB_BUCKETS)
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Gets the largest value of a bucket.
+	 * @param bucket the bucket index.
+	 * @return the largest value counted in the bucket.
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lower + (1L << shift) - 1;
+	}
+}
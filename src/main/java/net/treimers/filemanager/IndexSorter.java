@@ -0,0 +1,161 @@
+package net.treimers.filemanager;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Utility class used to sort entries of parallel arrays by index.
+ *
+ * Instead of sorting objects, a permutation of {@code int} indices is sorted with a stable merge
+ * sort, so no boxing or per entry objects are needed. Large inputs are sorted in parallel on the
+ * common fork join pool.
+ */
+public class IndexSorter {
+	/** The size above which a range is sorted in parallel. */
+	public static final int PARALLEL_THRESHOLD = 1 << 13;
+	/** The size up to which a range is sorted by insertion sort. */
+	private static final int INSERTION_THRESHOLD = 32;
+
+	/**
+	 * A comparator of two entries given by their index.
+	 */
+	public interface IndexComparator {
+		/**
+		 * Compares two entries.
+		 * @param index1 the index of the first entry.
+		 * @param index2 the index of the second entry.
+		 * @return a negative number, zero or a positive number if the first entry is less than,
+		 *         equal to or greater than the second entry.
+		 */
+		int compare(int index1, int index2);
+	}
+
+	/**
+	 * Computes the sorted order of entries.
+	 * @param size the number of entries.
+	 * @param comparator the comparator of the entries.
+	 * @return the indices of the entries in sorted order.
+	 */
+	public static int[] sort(int size, IndexComparator comparator) {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++)
+			order[i] = i;
+		int[] buffer = new int[size];
+		if (size >= PARALLEL_THRESHOLD)
+			ForkJoinPool.commonPool().invoke(new SortTask(order, buffer, 0, size, comparator));
+		else
+			mergeSort(order, buffer, 0, size, comparator);
+		return order;
+	}
+
+	// private methods
+
+	/**
+	 * Sorts a range of indices.
+	 * @param order the indices.
+	 * @param buffer a buffer of the same size.
+	 * @param from the first index of the range (inclusive).
+	 * @param to the last index of the range (exclusive).
+	 * @param comparator the comparator of the entries.
+	 */
+	private static void mergeSort(int[] order, int[] buffer, int from, int to, IndexComparator comparator) {
+		if (to - from <= INSERTION_THRESHOLD) {
+			insertionSort(order, from, to, comparator);
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(order, buffer, from, mid, comparator);
+		mergeSort(order, buffer, mid, to, comparator);
+		merge(order, buffer, from, mid, to, comparator);
+	}
+
+	/**
+	 * Sorts a small range of indices by insertion sort.
+	 * @param order the indices.
+	 * @param from the first index of the range (inclusive).
+	 * @param to the last index of the range (exclusive).
+	 * @param comparator the comparator of the entries.
+	 */
+	private static void insertionSort(int[] order, int from, int to, IndexComparator comparator) {
+		for (int i = from + 1; i < to; i++) {
+			int current = order[i];
+			int j = i - 1;
+			while (j >= from && comparator.compare(order[j], current) > 0) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = current;
+		}
+	}
+
+	/**
+	 * Merges two adjacent sorted ranges of indices.
+	 * @param order the indices.
+	 * @param buffer a buffer of the same size.
+	 * @param from the first index of the first range (inclusive).
+	 * @param mid the first index of the second range.
+	 * @param to the last index of the second range (exclusive).
+	 * @param comparator the comparator of the entries.
+	 */
+	private static void merge(int[] order, int[] buffer, int from, int mid, int to, IndexComparator comparator) {
+		// ranges already in order
+		if (comparator.compare(order[mid - 1], order[mid]) <= 0)
+			return;
+		System.arraycopy(order, from, buffer, from, to - from);
+		int i = from;
+		int j = mid;
+		int k = from;
+		while (i < mid && j < to)
+			order[k++] = comparator.compare(buffer[j], buffer[i]) < 0 ? buffer[j++] : buffer[i++];
+		while (i < mid)
+			order[k++] = buffer[i++];
+		while (j < to)
+			order[k++] = buffer[j++];
+	}
+
+	/**
+	 * A task sorting a range of indices in parallel.
+	 */
+	private static class SortTask extends RecursiveAction {
+		/** The serial version UID. */
+		private static final long serialVersionUID = 1L;
+		/** The indices. */
+		private final int[] order;
+		/** A buffer of the same size. */
+		private final int[] buffer;
+		/** The first index of the range (inclusive). */
+		private final int from;
+		/** The last index of the range (exclusive). */
+		private final int to;
+		/** The comparator of the entries. */
+		private final IndexComparator comparator;
+
+		/**
+		 * Creates a new instance.
+		 * @param order the indices.
+		 * @param buffer a buffer of the same size.
+		 * @param from the first index of the range (inclusive).
+		 * @param to the last index of the range (exclusive).
+		 * @param comparator the comparator of the entries.
+		 */
+		SortTask(int[] order, int[] buffer, int from, int to, IndexComparator comparator) {
+			this.order = order;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+			this.comparator = comparator;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from < PARALLEL_THRESHOLD) {
+				mergeSort(order, buffer, from, to, comparator);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new SortTask(order, buffer, from, mid, comparator),
+					new SortTask(order, buffer, mid, to, comparator));
+			merge(order, buffer, from, mid, to, comparator);
+		}
+	}
+}
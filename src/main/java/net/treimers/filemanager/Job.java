@@ -0,0 +1,398 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+
+/**
+ * A long running file operation executed in the background by the {@link JobManager}.
+ *
+ * Subclasses implement {@link #execute()} and report the amount of work found and done. Progress,
+ * throughput and state are published as JavaFX properties, updated at most once per pulse. Errors
+ * of single files are collected and reported at the end instead of stopping the job.
+ */
+public abstract class Job implements Runnable {
+	/**
+	 * The state of a job.
+	 */
+	public enum State {
+		/** Submitted but not started yet. */
+		WAITING,
+		/** Running. */
+		RUNNING,
+		/** Finished without errors. */
+		DONE,
+		/** Finished with errors. */
+		FAILED,
+		/** Cancelled. */
+		CANCELLED
+	}
+
+	/** The maximum number of errors kept. */
+	private static final int MAX_ERRORS = 100;
+	/** The weight of a new throughput sample in the smoothed throughput. */
+	private static final double THROUGHPUT_SMOOTHING = 0.3;
+	/** Runs property updates in the JavaFX thread, replaced by tests running without a toolkit. */
+	static Executor fxExecutor = Platform::runLater;
+	/** The title of the job. */
+	private final String title;
+	/** The progress property, -1 while the amount of work is unknown. */
+	private final ReadOnlyDoubleWrapper progress = new ReadOnlyDoubleWrapper(this, "progress", -1);
+	/** The message property describing the progress. */
+	private final ReadOnlyStringWrapper message = new ReadOnlyStringWrapper(this, "message", "Waiting...");
+	/** The state property. */
+	private final ReadOnlyObjectWrapper<State> state = new ReadOnlyObjectWrapper<>(this, "state", State.WAITING);
+	/** The total number of bytes to process. */
+	private final AtomicLong totalBytes = new AtomicLong();
+	/** The number of bytes processed. */
+	private final AtomicLong doneBytes = new AtomicLong();
+	/** The total number of files to process. */
+	private final AtomicLong totalFiles = new AtomicLong();
+	/** The number of files processed. */
+	private final AtomicLong doneFiles = new AtomicLong();
+	/** The errors of single files. */
+	private final List<String> errors = new ArrayList<>();
+	/** The number of errors of single files. */
+	private final AtomicInteger errorCount = new AtomicInteger();
+	/** Indicator for a pending update in the JavaFX thread. */
+	private final AtomicBoolean updatePending = new AtomicBoolean();
+	/** Flag indicating that the amount of work is known. */
+	private volatile boolean scanned;
+	/** Flag indicating a cancelled job. */
+	private volatile boolean cancelled;
+	/** The action run in the JavaFX thread when this job has finished, null if none. */
+	private volatile Runnable onFinished;
+	/** The start time in nanoseconds. */
+	private long startTime;
+	/** The time of the last throughput sample in nanoseconds (JavaFX thread only). */
+	private long sampleTime;
+	/** The processed bytes of the last throughput sample (JavaFX thread only). */
+	private long sampleBytes;
+	/** The smoothed throughput in bytes per second (JavaFX thread only). */
+	private double throughput;
+
+	/**
+	 * Creates a new instance.
+	 * @param title the title of the job.
+	 */
+	protected Job(String title) {
+		this.title = title;
+	}
+
+	/**
+	 * Gets the title.
+	 * @return the title.
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	/**
+	 * Gets the progress property.
+	 * @return the progress between 0 and 1, -1 while the amount of work is unknown.
+	 */
+	public ReadOnlyDoubleProperty progressProperty() {
+		return progress.getReadOnlyProperty();
+	}
+
+	/**
+	 * Gets the message property.
+	 * @return the message describing the progress.
+	 */
+	public ReadOnlyStringProperty messageProperty() {
+		return message.getReadOnlyProperty();
+	}
+
+	/**
+	 * Gets the state property.
+	 * @return the state.
+	 */
+	public ReadOnlyObjectProperty<State> stateProperty() {
+		return state.getReadOnlyProperty();
+	}
+
+	/**
+	 * Checks whether this job has finished.
+	 *
+	 * Must be invoked in the JavaFX thread.
+	 * @return true, if this job is done, failed or cancelled, false otherwise.
+	 */
+	public boolean isFinished() {
+		State current = state.get();
+		return current == State.DONE || current == State.FAILED || current == State.CANCELLED;
+	}
+
+	/**
+	 * Gets the errors of single files.
+	 * @return a copy of the errors, at most the first 100.
+	 */
+	public List<String> getErrors() {
+		synchronized (errors) {
+			return new ArrayList<>(errors);
+		}
+	}
+
+	/**
+	 * Sets the action run in the JavaFX thread when this job has finished, e.g. to refresh the tree.
+	 * @param onFinished the action, null if none.
+	 */
+	public void setOnFinished(Runnable onFinished) {
+		this.onFinished = onFinished;
+	}
+
+	/**
+	 * Cancels this job. Work already done is kept.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Checks whether this job has been cancelled.
+	 * @return true, if cancelled, false otherwise.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public final void run() {
+		startTime = System.nanoTime();
+		JobEvent event = new JobEvent();
+		event.begin();
+		fxExecutor.execute(() -> state.set(State.RUNNING));
+		State finalState;
+		try {
+			execute();
+			finalState = cancelled ? State.CANCELLED : errorCount.get() > 0 ? State.FAILED : State.DONE;
+		} catch (IOException | RuntimeException e) {
+			addError(null, e);
+			finalState = cancelled ? State.CANCELLED : State.FAILED;
+		}
+		Metrics.getInstance().record(Metrics.Stage.JOB, System.nanoTime() - startTime);
+		if (event.shouldCommit()) {
+			event.title = title;
+			event.files = doneFiles.get();
+			event.bytes = doneBytes.get();
+			event.state = finalState.name();
+			event.commit();
+		}
+		State result = finalState;
+		fxExecutor.execute(() -> {
+			update();
+			state.set(result);
+			message.set(describe(result));
+			if (onFinished != null)
+				onFinished.run();
+		});
+	}
+
+	// protected methods
+
+	/**
+	 * Executes this job in a job thread.
+	 *
+	 * Implementations should check {@link #isCancelled()} regularly.
+	 * @throws IOException if the job fails as a whole.
+	 */
+	protected abstract void execute() throws IOException;
+
+	/**
+	 * Adds to the amount of work found.
+	 * @param bytes the number of bytes.
+	 * @param files the number of files.
+	 */
+	protected void addTotal(long bytes, long files) {
+		totalBytes.addAndGet(bytes);
+		totalFiles.addAndGet(files);
+		scheduleUpdate();
+	}
+
+	/**
+	 * Marks the amount of work as completely known, so progress can be shown.
+	 */
+	protected void setScanned() {
+		scanned = true;
+		scheduleUpdate();
+	}
+
+	/**
+	 * Adds to the amount of work done.
+	 * @param bytes the number of bytes.
+	 * @param files the number of files.
+	 */
+	protected void addDone(long bytes, long files) {
+		doneBytes.addAndGet(bytes);
+		doneFiles.addAndGet(files);
+		scheduleUpdate();
+	}
+
+	/**
+	 * Records the error of a single file, the job continues.
+	 * @param path the file, null if not related to a single file.
+	 * @param exception the error.
+	 */
+	protected void addError(Path path, Exception exception) {
+		errorCount.incrementAndGet();
+		synchronized (errors) {
+			if (errors.size() < MAX_ERRORS)
+				errors.add(path == null ? String.valueOf(exception.getMessage()) : path + ": " + exception.getMessage());
+		}
+	}
+
+	/**
+	 * Checks whether errors of single files have been recorded.
+	 * @return true, if errors have been recorded, false otherwise.
+	 */
+	protected boolean hasErrors() {
+		return errorCount.get() > 0;
+	}
+
+	/**
+	 * Runs a step for a number of items on the shared job workers.
+	 *
+	 * At most the given number of workers run concurrently, each taking the next item until all
+	 * items are done or the job is cancelled. Errors of single items are recorded and do not stop the
+	 * other items.
+	 * @param parallelism the maximum number of concurrent workers.
+	 * @param count the number of items.
+	 * @param step the step to run for each item.
+	 */
+	protected void runParallel(int parallelism, int count, Step step) {
+		AtomicInteger next = new AtomicInteger();
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < Math.min(parallelism, count); i++) {
+			futures.add(JobManager.getInstance().getWorkers().submit(() -> {
+				for (int item = next.getAndIncrement(); item < count && !cancelled; item = next.getAndIncrement()) {
+					try {
+						step.run(item);
+					} catch (IOException | RuntimeException e) {
+						addError(step.getPath(item), e);
+					}
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				cancelled = true;
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				addError(null, e);
+			}
+		}
+	}
+
+	/**
+	 * A step of a job run for each of a number of items.
+	 */
+	protected interface Step {
+		/**
+		 * Runs the step for an item.
+		 * @param item the item index.
+		 * @throws IOException if the step fails for this item.
+		 */
+		void run(int item) throws IOException;
+
+		/**
+		 * Gets the path of an item used to report errors.
+		 * @param item the item index.
+		 * @return the path of the item.
+		 */
+		Path getPath(int item);
+	}
+
+	// private methods
+
+	/**
+	 * Schedules updating the properties in the JavaFX thread.
+	 */
+	private void scheduleUpdate() {
+		if (updatePending.compareAndSet(false, true))
+			fxExecutor.execute(this::update);
+	}
+
+	/**
+	 * Updates progress and message from the counters.
+	 */
+	private void update() {
+		updatePending.set(false);
+		long now = System.nanoTime();
+		long bytes = doneBytes.get();
+		long total = totalBytes.get();
+		// sample the throughput at most every 500 ms
+		if (now - sampleTime >= 500_000_000L) {
+			if (sampleTime != 0) {
+				double sample = (bytes - sampleBytes) * 1e9 / (now - sampleTime);
+				throughput = throughput == 0 ? sample : THROUGHPUT_SMOOTHING * sample + (1 - THROUGHPUT_SMOOTHING) * throughput;
+			}
+			sampleTime = now;
+			sampleBytes = bytes;
+		}
+		if (!scanned) {
+			progress.set(-1);
+			message.set(String.format("Scanning... %,d files, %s", totalFiles.get(), formatBytes(total)));
+			return;
+		}
+		progress.set(total == 0 ? (totalFiles.get() == 0 ? 1 : (double) doneFiles.get() / totalFiles.get())
+				: (double) bytes / total);
+		StringBuilder text = new StringBuilder(String.format("%,d of %,d files, %s of %s", doneFiles.get(),
+				totalFiles.get(), formatBytes(bytes), formatBytes(total)));
+		if (throughput > 0) {
+			text.append(", ").append(formatBytes((long) throughput)).append("/s");
+			long remaining = (long) ((total - bytes) / throughput);
+			if (remaining > 0)
+				text.append(String.format(", %d:%02d left", remaining / 60, remaining % 60));
+		}
+		message.set(text.toString());
+	}
+
+	/**
+	 * Describes the result of this job.
+	 * @param result the final state.
+	 * @return the description.
+	 */
+	private String describe(State result) {
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		String summary = String.format("%,d files, %s in %.1f s", doneFiles.get(), formatBytes(doneBytes.get()),
+				seconds);
+		switch (result) {
+		case CANCELLED:
+			return "Cancelled after " + summary;
+		case FAILED:
+			List<String> current = getErrors();
+			return String.format("%,d errors (%s), %s", errorCount.get(), current.isEmpty() ? "" : current.get(0),
+					summary);
+		default:
+			return "Done: " + summary;
+		}
+	}
+
+	/**
+	 * Formats a number of bytes with a binary unit.
+	 * @param bytes the number of bytes.
+	 * @return the formatted number.
+	 */
+	static String formatBytes(long bytes) {
+		if (bytes < 1024)
+			return bytes + " B";
+		int unit = (63 - Long.numberOfLeadingZeros(bytes)) / 10;
+		return String.format("%.1f %sB", bytes / (double) (1L << (unit * 10)), " KMGTPE".charAt(unit));
+	}
+}
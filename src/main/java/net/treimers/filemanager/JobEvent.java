@@ -0,0 +1,31 @@
+package net.treimers.filemanager;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event of a background job, e.g. copying, moving or deleting files.
+ */
+@Name("net.treimers.filemanager.Job")
+@Label("Job")
+@Category("File Manager")
+@Description("A background file operation")
+class JobEvent extends Event {
+	/** The title of the job. */
+	@Label("Title")
+	String title;
+	/** The number of processed files. */
+	@Label("Files")
+	long files;
+	/** The number of processed bytes. */
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+	/** The final state of the job. */
+	@Label("State")
+	String state;
+}
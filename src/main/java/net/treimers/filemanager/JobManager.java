@@ -0,0 +1,94 @@
+package net.treimers.filemanager;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Runs the background file operations.
+ *
+ * Each job is driven by its own thread, which scans the job and hands out the transfer of single
+ * files to a shared pool of workers, so several jobs share a bounded number of concurrent
+ * transfers. The number of workers is configured with the system property
+ * {@code filemanager.jobs.threads}.
+ */
+public class JobManager {
+	/** The number of shared workers. */
+	private static final int THREADS = Integer.getInteger("filemanager.jobs.threads", 8);
+	/** The shared job manager instance. */
+	private static final JobManager INSTANCE = new JobManager();
+	/** The threads driving the jobs. */
+	private final ExecutorService drivers;
+	/** The shared workers transferring single files. */
+	private final ThreadPoolExecutor workers;
+	/** The submitted jobs, accessed in the JavaFX thread only. */
+	private final ObservableList<Job> jobs = FXCollections.observableArrayList();
+
+	/**
+	 * Creates a new instance.
+	 */
+	private JobManager() {
+		AtomicInteger driverCount = new AtomicInteger();
+		drivers = Executors.newCachedThreadPool((Runnable runnable) -> {
+			Thread thread = new Thread(runnable, "Job-" + driverCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		AtomicInteger workerCount = new AtomicInteger();
+		workers = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+				(Runnable runnable) -> {
+					Thread thread = new Thread(runnable, "JobWorker-" + workerCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		workers.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Gets the shared job manager instance.
+	 * @return the shared job manager instance.
+	 */
+	public static JobManager getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Gets the submitted jobs.
+	 *
+	 * Must be accessed in the JavaFX thread.
+	 * @return the submitted jobs.
+	 */
+	public ObservableList<Job> getJobs() {
+		return jobs;
+	}
+
+	/**
+	 * Submits a job, must be invoked in the JavaFX thread.
+	 * @param job the job.
+	 */
+	public void submit(Job job) {
+		jobs.add(job);
+		drivers.execute(job);
+	}
+
+	/**
+	 * Removes all finished jobs, must be invoked in the JavaFX thread.
+	 */
+	public void clearFinished() {
+		jobs.removeIf(Job::isFinished);
+	}
+
+	/**
+	 * Gets the shared workers.
+	 * @return the shared workers.
+	 */
+	ExecutorService getWorkers() {
+		return workers;
+	}
+}
@@ -0,0 +1,98 @@
+package net.treimers.filemanager;
+
+import javafx.beans.binding.Bindings;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+/**
+ * A window showing the progress of the background jobs.
+ *
+ * Each job shows its title, a progress bar, its throughput and a button to cancel it.
+ */
+public class JobsWindow {
+	/** The window. */
+	private final Stage stage = new Stage();
+
+	/**
+	 * Creates a new instance.
+	 * @param owner the owner window.
+	 */
+	public JobsWindow(Window owner) {
+		stage.initOwner(owner);
+		stage.setTitle("Jobs");
+		ListView<Job> jobList = new ListView<>(JobManager.getInstance().getJobs());
+		jobList.setCellFactory((ListView<Job> list) -> new JobCell());
+		Button clearButton = new Button("Clear Finished");
+		clearButton.setOnAction(event -> JobManager.getInstance().clearFinished());
+		HBox bottom = new HBox(8, clearButton);
+		bottom.setPadding(new Insets(4));
+		BorderPane pane = new BorderPane(jobList);
+		pane.setBottom(bottom);
+		stage.setScene(new Scene(pane, 600, 300));
+	}
+
+	/**
+	 * Shows the window in front of other windows.
+	 */
+	public void show() {
+		stage.show();
+		stage.toFront();
+	}
+
+	/**
+	 * A list cell showing a job.
+	 */
+	private static class JobCell extends ListCell<Job> {
+		/** The label showing the title. */
+		private final Label titleLabel = new Label();
+		/** The progress bar. */
+		private final ProgressBar progressBar = new ProgressBar();
+		/** The button used to cancel the job. */
+		private final Button cancelButton = new Button("Cancel");
+		/** The label showing the progress message. */
+		private final Label messageLabel = new Label();
+		/** The box holding the controls. */
+		private final VBox box;
+
+		/**
+		 * Creates a new instance.
+		 */
+		JobCell() {
+			progressBar.setMaxWidth(Double.MAX_VALUE);
+			HBox.setHgrow(progressBar, Priority.ALWAYS);
+			box = new VBox(2, titleLabel, new HBox(8, progressBar, cancelButton), messageLabel);
+			cancelButton.setOnAction(event -> {
+				if (getItem() != null)
+					getItem().cancel();
+			});
+		}
+
+		@Override
+		protected void updateItem(Job job, boolean empty) {
+			super.updateItem(job, empty);
+			progressBar.progressProperty().unbind();
+			messageLabel.textProperty().unbind();
+			cancelButton.disableProperty().unbind();
+			if (empty || job == null) {
+				setGraphic(null);
+				return;
+			}
+			titleLabel.setText(job.getTitle());
+			progressBar.progressProperty().bind(job.progressProperty());
+			messageLabel.textProperty().bind(job.messageProperty());
+			cancelButton.disableProperty().bind(Bindings.createBooleanBinding(job::isFinished, job.stateProperty()));
+			setGraphic(box);
+		}
+	}
+}
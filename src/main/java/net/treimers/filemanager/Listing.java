@@ -0,0 +1,448 @@
+package net.treimers.filemanager;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A compact, immutable listing of a directory.
+ *
+ * Names and attributes of all entries are held in parallel primitive arrays instead of one object
+ * per entry. {@link File} and {@link DirectoryEntry} objects are only created on demand, e.g. for
+ * the tree items of rendered rows.
+ */
+public final class Listing {
+	/** Flag bit of a directory. */
+	private static final byte DIRECTORY = 1;
+	/** Flag bit of a regular file. */
+	private static final byte REGULAR_FILE = 2;
+	/** The maximum number of memoized sorted variants. */
+	private static final int MAX_VARIANTS = 4;
+	/** The number of entries allocated before reading a listing, the arrays grow as entries are read. */
+	private static final int READ_CAPACITY = 1024;
+	/** The estimated heap bytes per entry (without the name characters). */
+	private static final long ENTRY_OVERHEAD = 64;
+	/** The comparator used to order names like {@link File#compareTo(File)} does. */
+	private static final Comparator<String> NAME_ORDER = File.separatorChar == '\\' ? String.CASE_INSENSITIVE_ORDER
+			: Comparator.naturalOrder();
+	/** The listed directory. */
+	private final File dir;
+	/** The entry names. */
+	private final String[] names;
+	/** The entry type flags. */
+	private final byte[] flags;
+	/** The entry sizes in bytes. */
+	private final long[] sizes;
+	/** The entry modification times in milliseconds since the epoch. */
+	private final long[] lastModified;
+	/** The listing sorted by name this listing was derived from (this listing if sorted by name). */
+	private final Listing base;
+	/** The natural sort keys of the entries, computed on first use. */
+	private volatile String[] naturalKeys;
+	/** The recently used sorted variants derived from this listing, most recent first. */
+	private volatile SortedVariant[] sorted = new SortedVariant[0];
+
+	/**
+	 * Creates a new instance sorted by name.
+	 * @param dir the listed directory.
+	 * @param names the entry names.
+	 * @param flags the entry type flags.
+	 * @param sizes the entry sizes.
+	 * @param lastModified the entry modification times.
+	 */
+	private Listing(File dir, String[] names, byte[] flags, long[] sizes, long[] lastModified) {
+		this(dir, names, flags, sizes, lastModified, null);
+	}
+
+	/**
+	 * Creates a new instance.
+	 * @param dir the listed directory.
+	 * @param names the entry names.
+	 * @param flags the entry type flags.
+	 * @param sizes the entry sizes.
+	 * @param lastModified the entry modification times.
+	 * @param base the listing sorted by name this listing was derived from, null if this listing is
+	 *            sorted by name.
+	 */
+	private Listing(File dir, String[] names, byte[] flags, long[] sizes, long[] lastModified, Listing base) {
+		this.dir = dir;
+		this.names = names;
+		this.flags = flags;
+		this.sizes = sizes;
+		this.lastModified = lastModified;
+		this.base = base == null ? this : base;
+	}
+
+	/**
+	 * Creates an empty listing.
+	 * @param dir the listed directory.
+	 * @return an empty listing.
+	 */
+	public static Listing empty(File dir) {
+		return new Listing(dir, new String[0], new byte[0], new long[0], new long[0]);
+	}
+
+	/**
+	 * Creates a listing containing a single entry.
+	 * @param entry the attribute snapshot of the entry.
+	 * @return a listing containing the entry.
+	 */
+	public static Listing of(DirectoryEntry entry) {
+		File file = entry.getFile();
+		File parent = file.getParentFile();
+		// file system roots have no parent and an empty name
+		String name = parent == null ? file.getPath() : file.getName();
+		return new Listing(parent, new String[] { name },
+				new byte[] { flags(entry.isDirectory(), entry.isRegularFile()) }, new long[] { entry.getSize() },
+				new long[] { entry.getLastModified() });
+	}
+
+	/**
+	 * Gets the listed directory.
+	 * @return the listed directory.
+	 */
+	public File getDirectory() {
+		return dir;
+	}
+
+	/**
+	 * Gets the number of entries.
+	 * @return the number of entries.
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * Gets the name of an entry.
+	 * @param index the entry index.
+	 * @return the name of the entry.
+	 */
+	public String getName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * Creates the file of an entry.
+	 * @param index the entry index.
+	 * @return a new file instance of the entry.
+	 */
+	public File getFile(int index) {
+		return dir == null ? new File(names[index]) : new File(dir, names[index]);
+	}
+
+	/**
+	 * Checks whether an entry is a directory.
+	 * @param index the entry index.
+	 * @return true, if the entry is a directory, false otherwise.
+	 */
+	public boolean isDirectory(int index) {
+		return (flags[index] & DIRECTORY) != 0;
+	}
+
+	/**
+	 * Checks whether an entry is a regular file.
+	 * @param index the entry index.
+	 * @return true, if the entry is a regular file, false otherwise.
+	 */
+	public boolean isRegularFile(int index) {
+		return (flags[index] & REGULAR_FILE) != 0;
+	}
+
+	/**
+	 * Gets the size of an entry.
+	 * @param index the entry index.
+	 * @return the size in bytes.
+	 */
+	public long getSize(int index) {
+		return sizes[index];
+	}
+
+	/**
+	 * Gets the modification time of an entry.
+	 * @param index the entry index.
+	 * @return the modification time in milliseconds since the epoch.
+	 */
+	public long getLastModified(int index) {
+		return lastModified[index];
+	}
+
+	/**
+	 * Creates the attribute snapshot of an entry.
+	 * @param index the entry index.
+	 * @return a new attribute snapshot of the entry.
+	 */
+	public DirectoryEntry getEntry(int index) {
+		return new DirectoryEntry(getFile(index), isDirectory(index), isRegularFile(index), sizes[index],
+				lastModified[index]);
+	}
+
+	/**
+	 * Compares two entry names like {@link File#compareTo(File)} does.
+	 * @param name1 the first name.
+	 * @param name2 the second name.
+	 * @return a negative number, zero or a positive number if the first name is less than, equal to
+	 *         or greater than the second name.
+	 */
+	public static int compareNames(String name1, String name2) {
+		return NAME_ORDER.compare(name1, name2);
+	}
+
+	/**
+	 * Gets this listing sorted by a sorting.
+	 *
+	 * The recently used sorted variants are memoized, so repeated calls with an equal sorting return
+	 * the same instance without sorting again, e.g. while the tree and the details table show the
+	 * same directory in different orders.
+	 * @param sorting the sorting.
+	 * @return the sorted listing.
+	 */
+	public Listing sortedBy(Sorting sorting) {
+		if (sorting.equals(Sorting.DEFAULT))
+			return base;
+		if (base != this)
+			return base.sortedBy(sorting);
+		SortedVariant[] variants = sorted;
+		for (SortedVariant variant : variants) {
+			if (variant.sorting.equals(sorting))
+				return variant.listing;
+		}
+		int size = names.length;
+		int[] order = IndexSorter.sort(size, sorting.comparator(this));
+		String[] sortedNames = new String[size];
+		byte[] sortedFlags = new byte[size];
+		long[] sortedSizes = new long[size];
+		long[] sortedLastModified = new long[size];
+		for (int i = 0; i < size; i++) {
+			int j = order[i];
+			sortedNames[i] = names[j];
+			sortedFlags[i] = flags[j];
+			sortedSizes[i] = sizes[j];
+			sortedLastModified[i] = lastModified[j];
+		}
+		Listing listing = new Listing(dir, sortedNames, sortedFlags, sortedSizes, sortedLastModified, this);
+		SortedVariant[] updated = new SortedVariant[Math.min(variants.length + 1, MAX_VARIANTS)];
+		updated[0] = new SortedVariant(sorting, listing);
+		System.arraycopy(variants, 0, updated, 1, updated.length - 1);
+		sorted = updated;
+		return listing;
+	}
+
+	/**
+	 * Creates a listing containing an additional entry, e.g. of a file just created.
+	 *
+	 * An entry of the same name is replaced. The entries are copied, the directory is not read.
+	 * @param entry the attribute snapshot of an entry of the listed directory.
+	 * @return the listing sorted by name.
+	 */
+	public Listing with(DirectoryEntry entry) {
+		String name = entry.getName();
+		int index = Arrays.binarySearch(base.names, name, NAME_ORDER);
+		boolean replace = index >= 0;
+		if (!replace)
+			index = -index - 1;
+		int size = replace ? base.names.length : base.names.length + 1;
+		String[] newNames = Arrays.copyOf(base.names, size);
+		byte[] newFlags = Arrays.copyOf(base.flags, size);
+		long[] newSizes = Arrays.copyOf(base.sizes, size);
+		long[] newLastModified = Arrays.copyOf(base.lastModified, size);
+		if (!replace) {
+			int tail = size - index - 1;
+			System.arraycopy(base.names, index, newNames, index + 1, tail);
+			System.arraycopy(base.flags, index, newFlags, index + 1, tail);
+			System.arraycopy(base.sizes, index, newSizes, index + 1, tail);
+			System.arraycopy(base.lastModified, index, newLastModified, index + 1, tail);
+		}
+		newNames[index] = name;
+		newFlags[index] = flags(entry.isDirectory(), entry.isRegularFile());
+		newSizes[index] = entry.getSize();
+		newLastModified[index] = entry.getLastModified();
+		return new Listing(dir, newNames, newFlags, newSizes, newLastModified);
+	}
+
+	/**
+	 * Writes the entries sorted by name, e.g. to persist a snapshot of the tree.
+	 * @param out the output.
+	 * @throws IOException if the entries cannot be written.
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(base.names.length);
+		for (int i = 0; i < base.names.length; i++) {
+			out.writeUTF(base.names[i]);
+			out.writeByte(base.flags[i]);
+			out.writeLong(base.sizes[i]);
+			out.writeLong(base.lastModified[i]);
+		}
+	}
+
+	/**
+	 * Reads entries written by {@link #write(DataOutput)}.
+	 * @param dir the listed directory.
+	 * @param in the input.
+	 * @return the listing sorted by name.
+	 * @throws IOException if the entries cannot be read.
+	 */
+	static Listing read(File dir, DataInput in) throws IOException {
+		int size = in.readInt();
+		if (size < 0)
+			throw new IOException("Invalid number of entries " + size + " in listing of " + dir);
+		// a corrupt count runs into the end of the input instead of allocating its arrays up front
+		int capacity = Math.min(size, READ_CAPACITY);
+		String[] names = new String[capacity];
+		byte[] flags = new byte[capacity];
+		long[] sizes = new long[capacity];
+		long[] lastModified = new long[capacity];
+		for (int i = 0; i < size; i++) {
+			if (i == names.length) {
+				capacity = (int) Math.min(size, 2L * capacity);
+				names = Arrays.copyOf(names, capacity);
+				flags = Arrays.copyOf(flags, capacity);
+				sizes = Arrays.copyOf(sizes, capacity);
+				lastModified = Arrays.copyOf(lastModified, capacity);
+			}
+			names[i] = in.readUTF();
+			flags[i] = in.readByte();
+			sizes[i] = in.readLong();
+			lastModified[i] = in.readLong();
+		}
+		return new Listing(dir, names, flags, sizes, lastModified);
+	}
+
+	/**
+	 * Gets the natural sort keys of all entries.
+	 *
+	 * The keys are computed once on first use.
+	 * @return the natural sort keys.
+	 */
+	String[] getNaturalKeys() {
+		String[] keys = naturalKeys;
+		if (keys == null) {
+			keys = new String[names.length];
+			for (int i = 0; i < keys.length; i++)
+				keys[i] = SortOrder.naturalKey(names[i]);
+			naturalKeys = keys;
+		}
+		return keys;
+	}
+
+	/**
+	 * Estimates the heap bytes used by this listing.
+	 * @return the estimated heap bytes.
+	 */
+	public long estimateBytes() {
+		long bytes = 0;
+		for (String name : names)
+			bytes += ENTRY_OVERHEAD + name.length();
+		return bytes;
+	}
+
+	/**
+	 * Computes the flags of an entry.
+	 * @param directory true, if the entry is a directory.
+	 * @param regularFile true, if the entry is a regular file.
+	 * @return the flags.
+	 */
+	private static byte flags(boolean directory, boolean regularFile) {
+		return (byte) ((directory ? DIRECTORY : 0) | (regularFile ? REGULAR_FILE : 0));
+	}
+
+	/**
+	 * A builder used to collect the entries of a listing while scanning.
+	 */
+	public static class Builder {
+		/** The listed directory. */
+		private final File dir;
+		/** The collected names. */
+		private String[] names = new String[64];
+		/** The collected flags. */
+		private byte[] flags = new byte[64];
+		/** The collected sizes. */
+		private long[] sizes = new long[64];
+		/** The collected modification times. */
+		private long[] lastModified = new long[64];
+		/** The number of collected entries. */
+		private int size;
+
+		/**
+		 * Creates a new instance.
+		 * @param dir the listed directory.
+		 */
+		public Builder(File dir) {
+			this.dir = dir;
+		}
+
+		/**
+		 * Adds an entry with its attributes.
+		 * @param name the entry name.
+		 * @param attributes the entry attributes, null if they could not be read.
+		 */
+		public void add(String name, BasicFileAttributes attributes) {
+			if (size == names.length) {
+				int capacity = size * 2;
+				names = Arrays.copyOf(names, capacity);
+				flags = Arrays.copyOf(flags, capacity);
+				sizes = Arrays.copyOf(sizes, capacity);
+				lastModified = Arrays.copyOf(lastModified, capacity);
+			}
+			names[size] = name;
+			if (attributes != null) {
+				flags[size] = flags(attributes.isDirectory(), attributes.isRegularFile());
+				sizes[size] = attributes.size();
+				lastModified[size] = attributes.lastModifiedTime().toMillis();
+			}
+			size++;
+		}
+
+		/**
+		 * Gets the number of collected entries.
+		 * @return the number of collected entries.
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Creates the listing with all entries sorted by name.
+		 * @return the sorted listing.
+		 */
+		public Listing build() {
+			int[] order = IndexSorter.sort(size, (int i1, int i2) -> NAME_ORDER.compare(names[i1], names[i2]));
+			String[] sortedNames = new String[size];
+			byte[] sortedFlags = new byte[size];
+			long[] sortedSizes = new long[size];
+			long[] sortedLastModified = new long[size];
+			for (int i = 0; i < size; i++) {
+				int j = order[i];
+				sortedNames[i] = names[j];
+				sortedFlags[i] = flags[j];
+				sortedSizes[i] = sizes[j];
+				sortedLastModified[i] = lastModified[j];
+			}
+			return new Listing(dir, sortedNames, sortedFlags, sortedSizes, sortedLastModified);
+		}
+	}
+
+	/**
+	 * A sorted variant of a listing together with its sorting.
+	 */
+	private static class SortedVariant {
+		/** The sorting. */
+		private final Sorting sorting;
+		/** The sorted listing. */
+		private final Listing listing;
+
+		/**
+		 * Creates a new instance.
+		 * @param sorting the sorting.
+		 * @param listing the sorted listing.
+		 */
+		SortedVariant(Sorting sorting, Listing listing) {
+			this.sorting = sorting;
+			this.listing = listing;
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package net.treimers.filemanager;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A memory-budgeted LRU cache of directory listings keyed by directory path.
+ *
+ * Cached listings are revalidated with a single stat of the directory: as long as the directory
+ * modification time is unchanged the cached entries are returned without reading the directory.
+ * Listings taken too close to the directory modification time are never trusted because a
+ * change within the file system timestamp granularity would go unnoticed.
+ *
+ * The budget is configured with the system properties {@code filemanager.cache.maxEntries}
+ * (total number of cached directory entries) and {@code filemanager.cache.maxBytes}
+ * (estimated heap usage). The least recently used listings are evicted once either budget is
+ * exceeded.
+ */
+public class ListingCache {
+	/** The time span in milliseconds a listing must be younger than its directory to be trusted. */
+	private static final long RACY_INTERVAL = 2000;
+	/** The shared cache instance. */
+	private static final ListingCache INSTANCE = new ListingCache(
+			Long.getLong("filemanager.cache.maxEntries", 1000000L),
+			Long.getLong("filemanager.cache.maxBytes", Runtime.getRuntime().maxMemory() / 4));
+	/** The cached listings in access order. */
+	private final LinkedHashMap<Path, CachedListing> listings = new LinkedHashMap<>(16, 0.75f, true);
+	/** The maximum number of cached entries. */
+	private final long maxEntries;
+	/** The maximum number of estimated heap bytes. */
+	private final long maxBytes;
+	/** The number of currently cached entries. */
+	private long entryCount;
+	/** The estimated heap bytes of currently cached entries. */
+	private long byteCount;
+
+	/**
+	 * Creates a new instance.
+	 * @param maxEntries the maximum number of cached entries.
+	 * @param maxBytes the maximum number of estimated heap bytes.
+	 */
+	public ListingCache(long maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Gets the shared cache instance.
+	 * @return the shared cache instance.
+	 */
+	public static ListingCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Lists the entries of a directory, served from the cache if the directory is unchanged.
+	 *
+	 * The same listing instance is returned for as long as the cached listing stays valid, so callers
+	 * can detect an unchanged listing by identity.
+	 * @param dir the directory.
+	 * @param listener the listener informed about the scan progress, may be null.
+	 * @param evictionHandler invoked when the listing is evicted from the cache, null to keep the
+	 *            handler already registered for the directory.
+	 * @return the sorted listing of the directory.
+	 * @throws IOException if the directory cannot be read.
+	 */
+	public Listing list(File dir, DirectoryLister.Listener listener, Runnable evictionHandler)
+			throws IOException {
+		Path path = dir.toPath();
+		long lastModified = Files.getLastModifiedTime(path).toMillis();
+		CachedListing cached;
+		synchronized (this) {
+			cached = listings.get(path);
+			if (cached != null && cached.isValid(lastModified)) {
+				if (evictionHandler != null)
+					cached.evictionHandler = evictionHandler;
+				return cached.listing;
+			}
+			// a reader without handler keeps the handler of the outdated listing
+			if (evictionHandler == null && cached != null)
+				evictionHandler = cached.evictionHandler;
+		}
+		long scanTime = System.currentTimeMillis();
+		Listing listing = DirectoryLister.list(dir, listener);
+		put(path, new CachedListing(listing, lastModified, scanTime, evictionHandler));
+		return listing;
+	}
+
+	/**
+	 * Removes the listing of a directory so that the next request reads the directory again.
+	 * @param dir the directory.
+	 */
+	public synchronized void invalidate(File dir) {
+		CachedListing cached = listings.remove(dir.toPath());
+		if (cached != null)
+			release(cached);
+	}
+
+	/**
+	 * Writes the cached listing of a directory together with its validation times.
+	 * @param dir the directory.
+	 * @param out the output.
+	 * @throws IOException if the listing cannot be written.
+	 */
+	public void write(File dir, DataOutput out) throws IOException {
+		CachedListing cached;
+		synchronized (this) {
+			cached = listings.get(dir.toPath());
+		}
+		out.writeBoolean(cached != null);
+		if (cached == null)
+			return;
+		out.writeLong(cached.lastModified);
+		out.writeLong(cached.scanTime);
+		cached.listing.write(out);
+	}
+
+	/**
+	 * Reads a listing written by {@link #write(File, DataOutput)} into the cache.
+	 *
+	 * The listing is revalidated against the directory like any other cached listing.
+	 * @param dir the directory.
+	 * @param in the input.
+	 * @return the listing sorted by name, null if no listing was cached when written.
+	 * @throws IOException if the listing cannot be read.
+	 */
+	public Listing read(File dir, DataInput in) throws IOException {
+		if (!in.readBoolean())
+			return null;
+		long lastModified = in.readLong();
+		long scanTime = in.readLong();
+		Listing listing = Listing.read(dir, in);
+		put(dir.toPath(), new CachedListing(listing, lastModified, scanTime, null));
+		return listing;
+	}
+
+	/**
+	 * Removes all listings.
+	 */
+	public synchronized void clear() {
+		listings.clear();
+		entryCount = 0;
+		byteCount = 0;
+	}
+
+	/**
+	 * Gets the number of currently cached entries.
+	 * @return the number of currently cached entries.
+	 */
+	public synchronized long getEntryCount() {
+		return entryCount;
+	}
+
+	/**
+	 * Gets the estimated heap bytes of currently cached entries.
+	 * @return the estimated heap bytes of currently cached entries.
+	 */
+	public synchronized long getByteCount() {
+		return byteCount;
+	}
+
+	// private methods
+
+	/**
+	 * Stores a listing and evicts least recently used listings if the budget is exceeded.
+	 * @param path the directory path.
+	 * @param cached the listing.
+	 */
+	private void put(Path path, CachedListing cached) {
+		List<Runnable> evicted = new ArrayList<>();
+		synchronized (this) {
+			CachedListing old = listings.put(path, cached);
+			if (old != null)
+				release(old);
+			entryCount += cached.listing.size();
+			byteCount += cached.bytes;
+			Iterator<Map.Entry<Path, CachedListing>> iterator = listings.entrySet().iterator();
+			while ((entryCount > maxEntries || byteCount > maxBytes) && iterator.hasNext()) {
+				CachedListing eldest = iterator.next().getValue();
+				// never evict the listing just added
+				if (eldest == cached)
+					break;
+				iterator.remove();
+				release(eldest);
+				if (eldest.evictionHandler != null)
+					evicted.add(eldest.evictionHandler);
+			}
+		}
+		// notify outside the lock
+		for (Runnable handler : evicted)
+			handler.run();
+	}
+
+	/**
+	 * Subtracts a removed listing from the budget.
+	 * @param cached the removed listing.
+	 */
+	private void release(CachedListing cached) {
+		entryCount -= cached.listing.size();
+		byteCount -= cached.bytes;
+	}
+
+	/**
+	 * A cached listing.
+	 */
+	private static class CachedListing {
+		/** The sorted listing. */
+		private final Listing listing;
+		/** The directory modification time read before scanning. */
+		private final long lastModified;
+		/** The time the scan started. */
+		private final long scanTime;
+		/** The estimated heap bytes of the entries. */
+		private final long bytes;
+		/** Invoked when this listing is evicted, may be null. */
+		private Runnable evictionHandler;
+
+		/**
+		 * Creates a new instance.
+		 * @param listing the sorted listing.
+		 * @param lastModified the directory modification time read before scanning.
+		 * @param scanTime the time the scan started.
+		 * @param evictionHandler invoked when this listing is evicted, may be null.
+		 */
+		CachedListing(Listing listing, long lastModified, long scanTime, Runnable evictionHandler) {
+			this.listing = listing;
+			this.lastModified = lastModified;
+			this.scanTime = scanTime;
+			this.evictionHandler = evictionHandler;
+			this.bytes = listing.estimateBytes();
+		}
+
+		/**
+		 * Checks whether this listing still reflects the directory.
+		 * @param currentLastModified the current directory modification time.
+		 * @return true, if this listing is valid, false otherwise.
+		 */
+		boolean isValid(long currentLastModified) {
+			return currentLastModified == lastModified && scanTime - lastModified > RACY_INTERVAL;
+		}
+	}
+}
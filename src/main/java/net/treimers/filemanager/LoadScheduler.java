@@ -0,0 +1,392 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * A dedicated scheduler for directory loads.
+ *
+ * Loads run on a bounded pool of daemon threads instead of the shared common pool. Waiting loads
+ * are ordered by priority, so loads for visible nodes overtake background work. The number of
+ * loads running concurrently against one device is limited: a load for a saturated device is
+ * parked without blocking a worker thread and resumed when a load on that device finishes, so a
+ * slow mount cannot starve loads on other devices. Devices are told apart by the mount point
+ * containing a directory, taken from the mount table without touching the directory itself, so
+ * a hung mount cannot block workers before its limit applies. Prefetches only use half of the
+ * loads allowed per device and are cancelled as soon as a foreground load is submitted, so they
+ * only use idle capacity. A device with parked loads, a load running for long or a slow load in
+ * the recent past is reported as not responsive, so prefetches can leave it alone.
+ *
+ * The pool size, the per device limit and the duration of a slow load are configured with the
+ * system properties {@code filemanager.load.threads}, {@code filemanager.load.perDevice} and
+ * {@code filemanager.load.slowMillis}.
+ */
+public class LoadScheduler {
+	/**
+	 * The priority of a load.
+	 */
+	public enum Priority {
+		/** A load the user is waiting for, e.g. an expanded node. */
+		FOREGROUND,
+		/** A load nobody is waiting for, e.g. a refresh triggered by a file system event. */
+		BACKGROUND,
+		/** A speculative load of a directory which will probably be opened, see {@link Prefetcher}. */
+		PREFETCH
+	}
+
+	/** The number of worker threads. */
+	private static final int THREADS = Integer.getInteger("filemanager.load.threads",
+			Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+	/** The maximum number of loads running concurrently on one device. */
+	private static final int PER_DEVICE = Integer.getInteger("filemanager.load.perDevice", 4);
+	/** The duration in nanoseconds after which a load is considered slow. */
+	private static final long SLOW_LOAD = TimeUnit.MILLISECONDS
+			.toNanos(Long.getLong("filemanager.load.slowMillis", 1000));
+	/** The time in nanoseconds a device is not responsive after a slow load. */
+	private static final long SLOW_BACKOFF = TimeUnit.SECONDS.toNanos(30);
+	/** The mount table of Linux systems. */
+	private static final Path MOUNTS = Paths.get("/proc/self/mounts");
+	/** The time in milliseconds the mount table is cached. */
+	private static final long MOUNTS_TTL = 10_000;
+	/** The shared scheduler instance. */
+	private static final LoadScheduler INSTANCE = new LoadScheduler(THREADS, PER_DEVICE);
+	/** The executor running the loads. */
+	private final ThreadPoolExecutor executor;
+	/** The maximum number of loads running concurrently on one device. */
+	private final int perDevice;
+	/** The sequence used to keep submission order within a priority. */
+	private final AtomicLong sequence = new AtomicLong();
+	/** The devices by device key. */
+	private final Map<Object, Device> devices = new HashMap<>();
+	/** The times until which devices with a recent slow load are not responsive, by device key. */
+	private final Map<Object, Long> slowUntil = new HashMap<>();
+	/** The submitted prefetches not finished yet. */
+	private final Set<Task<?>> prefetches = ConcurrentHashMap.newKeySet();
+	/** The mount points, longest first, empty if there is no mount table. */
+	private volatile List<Path> mountPoints;
+	/** The time in milliseconds the mount points have been read. */
+	private volatile long mountPointsRead;
+
+	/**
+	 * Creates a new instance.
+	 * @param threads the number of worker threads.
+	 * @param perDevice the maximum number of loads running concurrently on one device.
+	 */
+	public LoadScheduler(int threads, int perDevice) {
+		this.perDevice = perDevice;
+		AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+				(Runnable runnable) -> {
+					Thread thread = new Thread(runnable, "Loader-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Gets the shared scheduler instance.
+	 * @return the shared scheduler instance.
+	 */
+	public static LoadScheduler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Submits a load.
+	 *
+	 * The consumer is invoked in a worker thread with either the result or the Throwable thrown by
+	 * the supplier. It is not invoked if the load has been cancelled before.
+	 * @param <T> the result type.
+	 * @param dir the directory to load, used to determine the device.
+	 * @param priority the priority of the load.
+	 * @param supplier the supplier doing the actual load.
+	 * @param consumer the consumer receiving the result.
+	 * @return the submitted task which can be used to cancel the load.
+	 */
+	public <T> Task<T> submit(Path dir, Priority priority, Supplier<T> supplier, BiConsumer<T, Throwable> consumer) {
+		Task<T> task = new Task<>(dir, priority, sequence.incrementAndGet(), supplier, consumer);
+		if (priority == Priority.FOREGROUND) {
+			// the user is waiting, speculative work must not compete for loaders and devices
+			for (Task<?> prefetch : prefetches)
+				prefetch.cancel();
+			prefetches.clear();
+		} else if (priority == Priority.PREFETCH) {
+			prefetches.add(task);
+		}
+		executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Checks whether the device of a directory is responsive, i.e. none of its loads is parked,
+	 * running for long or has been slow recently.
+	 * @param dir the directory.
+	 * @return true, if loads on the device are expected to finish quickly, false otherwise.
+	 */
+	public boolean isResponsive(Path dir) {
+		Object key = getDeviceKey(dir);
+		long now = System.nanoTime();
+		synchronized (this) {
+			Long until = slowUntil.get(key);
+			if (until != null) {
+				if (now - until < 0)
+					return false;
+				slowUntil.remove(key);
+			}
+			Device device = devices.get(key);
+			if (device == null)
+				return true;
+			if (!device.waiting.isEmpty())
+				return false;
+			for (long started : device.started.values()) {
+				if (now - started > SLOW_LOAD)
+					return false;
+			}
+			return true;
+		}
+	}
+
+	// private methods
+
+	/**
+	 * Gets the key of the device a directory resides on.
+	 *
+	 * The key is the innermost mount point containing the directory, or its root if there is no
+	 * mount table. The directory itself is never accessed, symbolic links to other devices are
+	 * therefore accounted to the device of the link.
+	 * @param dir the directory.
+	 * @return the device key.
+	 */
+	private Object getDeviceKey(Path dir) {
+		Path absolute = dir.toAbsolutePath().normalize();
+		if (absolute.getFileSystem() == MOUNTS.getFileSystem()) {
+			for (Path mountPoint : getMountPoints()) {
+				if (absolute.startsWith(mountPoint))
+					return mountPoint;
+			}
+		}
+		Path root = absolute.getRoot();
+		return root != null ? root : absolute.getFileSystem();
+	}
+
+	/**
+	 * Gets the mount points, reading the mount table again once cached for some time.
+	 * @return the mount points, longest first.
+	 */
+	private List<Path> getMountPoints() {
+		long now = System.currentTimeMillis();
+		List<Path> retval = mountPoints;
+		if (retval == null || now - mountPointsRead > MOUNTS_TTL) {
+			retval = new ArrayList<>();
+			try {
+				for (String line : Files.readAllLines(MOUNTS, StandardCharsets.UTF_8)) {
+					String[] fields = line.split(" ");
+					if (fields.length > 1)
+						retval.add(Paths.get(unescape(fields[1])));
+				}
+			} catch (IOException | InvalidPathException e) {
+				// no mount table, devices are told apart by their roots
+			}
+			retval.sort(Comparator.comparingInt(Path::getNameCount).reversed());
+			mountPoints = retval;
+			mountPointsRead = now;
+		}
+		return retval;
+	}
+
+	/**
+	 * Decodes the octal escapes of a mount table field, e.g. {@code \040} for a space.
+	 * @param field the field.
+	 * @return the decoded field.
+	 */
+	private static String unescape(String field) {
+		StringBuilder sb = new StringBuilder(field.length());
+		for (int i = 0; i < field.length(); i++) {
+			char c = field.charAt(i);
+			if (c == '\\' && i + 3 < field.length()) {
+				sb.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+				i += 3;
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Tries to start a task on its device, parks the task if the device is saturated.
+	 * @param key the device key.
+	 * @param task the task.
+	 * @return true, if the task may run now, false if it has been parked.
+	 */
+	private synchronized boolean acquire(Object key, Task<?> task) {
+		Device device = devices.computeIfAbsent(key, k -> new Device());
+		int limit = task.priority == Priority.PREFETCH ? Math.max(1, perDevice / 2) : perDevice;
+		if (device.running < limit) {
+			device.running++;
+			device.started.put(task, System.nanoTime());
+			return true;
+		}
+		device.waiting.add(task);
+		return false;
+	}
+
+	/**
+	 * Finishes a task on its device and resumes the next parked task of that device.
+	 * @param key the device key.
+	 * @param task the finished task.
+	 */
+	private void release(Object key, Task<?> task) {
+		Task<?> next;
+		synchronized (this) {
+			Device device = devices.get(key);
+			device.running--;
+			long now = System.nanoTime();
+			if (now - device.started.remove(task) > SLOW_LOAD)
+				slowUntil.put(key, now + SLOW_BACKOFF);
+			do {
+				next = device.waiting.poll();
+			} while (next != null && next.isCancelled());
+			if (device.running == 0 && device.waiting.isEmpty())
+				devices.remove(key);
+		}
+		if (next != null)
+			executor.execute(next);
+	}
+
+	/**
+	 * The state of a single device.
+	 */
+	private static class Device {
+		/** The number of running loads. */
+		private int running;
+		/** The start times in nanoseconds of the running loads. */
+		private final Map<Task<?>, Long> started = new HashMap<>();
+		/** The parked loads. */
+		private final PriorityQueue<Task<?>> waiting = new PriorityQueue<>();
+	}
+
+	/**
+	 * A scheduled load.
+	 * @param <T> the result type.
+	 */
+	public class Task<T> implements Runnable, Comparable<Task<?>> {
+		/** The directory to load. */
+		private final Path dir;
+		/** The priority. */
+		private final Priority priority;
+		/** The submission sequence number. */
+		private final long sequence;
+		/** The supplier doing the actual load. */
+		private final Supplier<T> supplier;
+		/** The consumer receiving the result. */
+		private final BiConsumer<T, Throwable> consumer;
+		/** Flag indicating a cancelled task. */
+		private volatile boolean cancelled;
+		/** Flag indicating a finished task. */
+		private volatile boolean done;
+
+		/**
+		 * Creates a new instance.
+		 * @param dir the directory to load.
+		 * @param priority the priority.
+		 * @param sequence the submission sequence number.
+		 * @param supplier the supplier doing the actual load.
+		 * @param consumer the consumer receiving the result.
+		 */
+		Task(Path dir, Priority priority, long sequence, Supplier<T> supplier, BiConsumer<T, Throwable> consumer) {
+			this.dir = dir;
+			this.priority = priority;
+			this.sequence = sequence;
+			this.supplier = supplier;
+			this.consumer = consumer;
+		}
+
+		/**
+		 * Cancels this task. A running load is not interrupted, but its result is dropped.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * Checks whether this task has been cancelled.
+		 * @return true, if this task has been cancelled, false otherwise.
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Checks whether this task has finished or has been cancelled.
+		 * @return true, if this task has finished or has been cancelled, false otherwise.
+		 */
+		public boolean isDone() {
+			return done || cancelled;
+		}
+
+		/**
+		 * Gets the priority of this task.
+		 * @return the priority of this task.
+		 */
+		public Priority getPriority() {
+			return priority;
+		}
+
+		@Override
+		public void run() {
+			if (cancelled)
+				return;
+			Object key = getDeviceKey(dir);
+			if (!acquire(key, this))
+				return;
+			try {
+				if (cancelled)
+					return;
+				T result;
+				try {
+					result = supplier.get();
+				} catch (RuntimeException | Error e) {
+					if (!cancelled)
+						consumer.accept(null, e);
+					return;
+				}
+				if (!cancelled)
+					consumer.accept(result, null);
+			} finally {
+				done = true;
+				if (priority == Priority.PREFETCH)
+					prefetches.remove(this);
+				release(key, this);
+			}
+		}
+
+		@Override
+		public int compareTo(Task<?> other) {
+			int retval = priority.compareTo(other.priority);
+			if (retval == 0)
+				retval = Long.compare(sequence, other.sequence);
+			return retval;
+		}
+	}
+}
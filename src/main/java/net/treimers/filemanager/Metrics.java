@@ -0,0 +1,371 @@
+package net.treimers.filemanager;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Records timings of the hot paths as histograms.
+ *
+ * A directory load is traced stage by stage from submitting it to applying its children in the
+ * JavaFX thread, so a slow expand can be attributed to waiting for a loader, listing, sorting,
+ * creating tree items, waiting for the JavaFX thread or mutating the tree. Every finished load is
+ * also committed as a {@link DirectoryLoadEvent} to a running flight recording, and the slowest
+ * loads are kept with their stage timings. Background jobs and JavaFX event handlers are timed as
+ * well.
+ *
+ * The statistics are shown in the diagnostics window and exported via JMX as
+ * {@code net.treimers.filemanager:type=Metrics}.
+ */
+public class Metrics implements MetricsMXBean {
+	/**
+	 * The timed stages.
+	 */
+	public enum Stage {
+		/** Waiting for a loader thread. */
+		QUEUE("Load queued"),
+		/** Listing a directory or validating its cached listing. */
+		LIST("Listing"),
+		/** Sorting a listing. */
+		SORT("Sorting"),
+		/** Creating the tree items of a listing. */
+		BUILD("Tree items"),
+		/** Waiting for the JavaFX thread. */
+		FX_QUEUE("FX queue"),
+		/** Mutating the children in the JavaFX thread. */
+		APPLY("Tree update"),
+		/** A whole directory load from submit to children shown. */
+		LOAD("Load"),
+		/** A whole load the user waits for, e.g. after expanding a directory. */
+		EXPAND("Expand"),
+		/** A JavaFX event handler of the tree. */
+		FX_HANDLER("FX handler"),
+		/** A background file operation. */
+		JOB("Job");
+
+		/** The name shown to the user. */
+		private final String displayName;
+
+		/**
+		 * Creates a new instance.
+		 * @param displayName the name shown to the user.
+		 */
+		Stage(String displayName) {
+			this.displayName = displayName;
+		}
+
+		@Override
+		public String toString() {
+			return displayName;
+		}
+	}
+
+	/** The number of slowest loads kept. */
+	private static final int MAX_SLOWEST = 20;
+	/** The shared instance. */
+	private static final Metrics INSTANCE = new Metrics();
+	/** The histograms by stage. */
+	private final Map<Stage, Histogram> histograms = new EnumMap<>(Stage.class);
+	/** The slowest finished loads, slowest first. */
+	private final List<LoadTrace> slowest = new ArrayList<>();
+
+	/**
+	 * Creates a new instance and registers it with the platform MBean server.
+	 */
+	private Metrics() {
+		for (Stage stage : Stage.values())
+			histograms.put(stage, new Histogram());
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName("net.treimers.filemanager:type=Metrics"));
+		} catch (JMException e) {
+			// metrics are still shown in the diagnostics window
+		}
+	}
+
+	/**
+	 * Gets the shared instance.
+	 * @return the shared instance.
+	 */
+	public static Metrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Records a timing.
+	 * @param stage the stage.
+	 * @param nanos the duration in nanoseconds.
+	 */
+	public void record(Stage stage, long nanos) {
+		histograms.get(stage).record(nanos);
+	}
+
+	/**
+	 * Runs an action and records its duration.
+	 * @param stage the stage.
+	 * @param action the action.
+	 */
+	public void time(Stage stage, Runnable action) {
+		long start = System.nanoTime();
+		try {
+			action.run();
+		} finally {
+			record(stage, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Starts tracing a directory load.
+	 * @param dir the directory.
+	 * @param foreground true, if the user waits for the load.
+	 * @return the trace of the load.
+	 */
+	public LoadTrace startLoad(Path dir, boolean foreground) {
+		return new LoadTrace(dir, foreground);
+	}
+
+	@Override
+	public List<Statistics> getStatistics() {
+		List<Statistics> statistics = new ArrayList<>();
+		for (Stage stage : Stage.values()) {
+			Histogram histogram = histograms.get(stage);
+			statistics.add(new Statistics(stage.toString(), histogram.getCount(), millis(histogram.getMean()),
+					millis(histogram.getPercentile(50)), millis(histogram.getPercentile(99)),
+					millis(histogram.getMax())));
+		}
+		return statistics;
+	}
+
+	@Override
+	public List<String> getSlowestDirectories() {
+		List<String> lines = new ArrayList<>();
+		synchronized (slowest) {
+			for (LoadTrace trace : slowest)
+				lines.add(trace.toString());
+		}
+		return lines;
+	}
+
+	@Override
+	public void reset() {
+		for (Histogram histogram : histograms.values())
+			histogram.reset();
+		synchronized (slowest) {
+			slowest.clear();
+		}
+	}
+
+	// private methods
+
+	/**
+	 * Keeps a finished load if it is one of the slowest.
+	 * @param trace the finished load.
+	 */
+	private void finished(LoadTrace trace) {
+		synchronized (slowest) {
+			if (slowest.size() == MAX_SLOWEST && slowest.get(MAX_SLOWEST - 1).total >= trace.total)
+				return;
+			int index = Collections.binarySearch(slowest, trace,
+					(LoadTrace t1, LoadTrace t2) -> Long.compare(t2.total, t1.total));
+			slowest.add(index < 0 ? -index - 1 : index, trace);
+			if (slowest.size() > MAX_SLOWEST)
+				slowest.remove(MAX_SLOWEST);
+		}
+	}
+
+	/**
+	 * Converts nanoseconds to milliseconds.
+	 * @param nanos the nanoseconds.
+	 * @return the milliseconds.
+	 */
+	private static double millis(long nanos) {
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * The statistics of a stage.
+	 */
+	public static class Statistics {
+		/** The name of the stage. */
+		private final String stage;
+		/** The number of timings. */
+		private final long count;
+		/** The mean in milliseconds. */
+		private final double mean;
+		/** The median in milliseconds. */
+		private final double p50;
+		/** The 99th percentile in milliseconds. */
+		private final double p99;
+		/** The maximum in milliseconds. */
+		private final double max;
+
+		/**
+		 * Creates a new instance.
+		 * @param stage the name of the stage.
+		 * @param count the number of timings.
+		 * @param mean the mean in milliseconds.
+		 * @param p50 the median in milliseconds.
+		 * @param p99 the 99th percentile in milliseconds.
+		 * @param max the maximum in milliseconds.
+		 */
+		public Statistics(String stage, long count, double mean, double p50, double p99, double max) {
+			this.stage = stage;
+			this.count = count;
+			this.mean = mean;
+			this.p50 = p50;
+			this.p99 = p99;
+			this.max = max;
+		}
+
+		/**
+		 * Gets the name of the stage.
+		 * @return the name of the stage.
+		 */
+		public String getStage() {
+			return stage;
+		}
+
+		/**
+		 * Gets the number of timings.
+		 * @return the number of timings.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Gets the mean.
+		 * @return the mean in milliseconds.
+		 */
+		public double getMean() {
+			return mean;
+		}
+
+		/**
+		 * Gets the median.
+		 * @return the median in milliseconds.
+		 */
+		public double getP50() {
+			return p50;
+		}
+
+		/**
+		 * Gets the 99th percentile.
+		 * @return the 99th percentile in milliseconds.
+		 */
+		public double getP99() {
+			return p99;
+		}
+
+		/**
+		 * Gets the maximum.
+		 * @return the maximum in milliseconds.
+		 */
+		public double getMax() {
+			return max;
+		}
+	}
+
+	/**
+	 * The trace of a single directory load.
+	 *
+	 * Stages are marked in the order they happen, each mark records the time since the previous
+	 * mark. A trace is handed from the JavaFX thread to a loader thread and back, which orders the
+	 * marks, so it needs no synchronization.
+	 */
+	public class LoadTrace {
+		/** The directory. */
+		private final Path dir;
+		/** Flag indicating a load the user waits for. */
+		private final boolean foreground;
+		/** The start time in nanoseconds. */
+		private final long start;
+		/** The durations of the marked stages in nanoseconds. */
+		private final long[] durations = new long[Stage.values().length];
+		/** The bits of the marked stages by ordinal. */
+		private int marked;
+		/** The time of the last mark in nanoseconds. */
+		private long last;
+		/** The number of entries of the loaded listing. */
+		private int entries;
+		/** The duration of the whole load in nanoseconds. */
+		private long total;
+
+		/**
+		 * Creates a new instance.
+		 * @param dir the directory.
+		 * @param foreground true, if the user waits for the load.
+		 */
+		LoadTrace(Path dir, boolean foreground) {
+			this.dir = dir;
+			this.foreground = foreground;
+			start = System.nanoTime();
+			last = start;
+		}
+
+		/**
+		 * Marks the end of a stage.
+		 * @param stage the stage which ended now.
+		 */
+		public void mark(Stage stage) {
+			long now = System.nanoTime();
+			durations[stage.ordinal()] += now - last;
+			marked |= 1 << stage.ordinal();
+			last = now;
+		}
+
+		/**
+		 * Sets the number of entries of the loaded listing.
+		 * @param entries the number of entries.
+		 */
+		public void setEntries(int entries) {
+			this.entries = entries;
+		}
+
+		/**
+		 * Finishes the load and records the timings of its marked stages and the whole load.
+		 */
+		public void finish() {
+			total = System.nanoTime() - start;
+			// stages skipped by a load, e.g. the tree update of an unchanged directory, are not recorded
+			for (Stage stage : Stage.values()) {
+				if ((marked & 1 << stage.ordinal()) != 0)
+					record(stage, durations[stage.ordinal()]);
+			}
+			record(Stage.LOAD, total);
+			if (foreground)
+				record(Stage.EXPAND, total);
+			finished(this);
+			DirectoryLoadEvent event = new DirectoryLoadEvent();
+			if (event.isEnabled()) {
+				event.directory = dir.toString();
+				event.entries = entries;
+				event.foreground = foreground;
+				event.queued = durations[Stage.QUEUE.ordinal()];
+				event.listing = durations[Stage.LIST.ordinal()];
+				event.sorting = durations[Stage.SORT.ordinal()];
+				event.treeItems = durations[Stage.BUILD.ordinal()];
+				event.fxQueued = durations[Stage.FX_QUEUE.ordinal()];
+				event.treeUpdate = durations[Stage.APPLY.ordinal()];
+				event.total = total;
+				event.commit();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%,.1f ms  %s (%,d entries: list %,.1f, sort %,.1f, items %,.1f, FX queue %,.1f, update %,.1f)",
+					millis(total), dir, entries, millis(durations[Stage.LIST.ordinal()]),
+					millis(durations[Stage.SORT.ordinal()]), millis(durations[Stage.BUILD.ordinal()]),
+					millis(durations[Stage.FX_QUEUE.ordinal()]), millis(durations[Stage.APPLY.ordinal()]));
+		}
+	}
+}
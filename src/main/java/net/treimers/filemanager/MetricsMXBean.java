@@ -0,0 +1,26 @@
+package net.treimers.filemanager;
+
+import java.util.List;
+
+/**
+ * The management interface of the {@link Metrics}, registered as
+ * {@code net.treimers.filemanager:type=Metrics} with the platform MBean server.
+ */
+public interface MetricsMXBean {
+	/**
+	 * Gets the statistics of all stages.
+	 * @return the statistics of all stages.
+	 */
+	List<Metrics.Statistics> getStatistics();
+
+	/**
+	 * Gets the slowest directory loads.
+	 * @return the slowest directory loads, slowest first.
+	 */
+	List<String> getSlowestDirectories();
+
+	/**
+	 * Removes all recorded timings.
+	 */
+	void reset();
+}
@@ -0,0 +1,52 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+
+import javafx.application.Platform;
+import javafx.scene.control.TreeItem;
+
+/**
+ * A placeholder tree item appended after the last loaded page of a huge directory.
+ *
+ * As soon as the placeholder is rendered the next page of children is requested from its
+ * parent, so children are paged in on demand while the user scrolls down.
+ */
+public class MoreTreeItem extends TreeItem<File> {
+	/** The text shown for this placeholder. */
+	private final String text;
+	/** Indicator used to request the next page only once. */
+	private boolean requested;
+
+	/**
+	 * Creates a new instance.
+	 * @param remaining the number of entries not yet shown.
+	 */
+	public MoreTreeItem(int remaining) {
+		this.text = String.format("... %,d more", remaining);
+	}
+
+	@Override
+	public boolean isLeaf() {
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+
+	/**
+	 * Requests the next page of children from the parent.
+	 *
+	 * The page is added in a later pulse because children must not be modified while cells are
+	 * updated.
+	 */
+	public void requestMore() {
+		if (requested)
+			return;
+		requested = true;
+		FileTreeItem parent = (FileTreeItem) getParent();
+		if (parent != null)
+			Platform.runLater(parent::loadMore);
+	}
+}
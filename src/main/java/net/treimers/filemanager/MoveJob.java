@@ -0,0 +1,280 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves files and directory trees into a target directory in the background.
+ *
+ * A source on the same file system as the target directory is simply renamed. Other sources are
+ * copied like a {@link CopyJob}, then each copied file is verified against its source by type,
+ * size, modification time and a byte by byte comparison of its contents, and only then the source
+ * is deleted, leaves before their directories. Sources which differ from their copy are kept and
+ * reported.
+ *
+ * If the copy fails or the job is cancelled before the sources are deleted, the move is rolled
+ * back: the copies and the partial files written by the job are deleted and renamed sources are
+ * moved back. Cancelling while sources are deleted stops deleting, all files then exist at least
+ * once.
+ *
+ * Existing targets are rejected before anything is moved. A target created by another process
+ * between this check and the rename is replaced, as rename(2) does; the JDK offers no rename which
+ * fails on an existing target for directories, and this window is accepted.
+ */
+public class MoveJob extends CopyJob {
+	/** The size of the buffers used to compare a copy with its source. */
+	private static final int COMPARE_BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Creates a new instance.
+	 * @param sources the files and directory trees to move.
+	 * @param targetDir the directory to move into.
+	 */
+	public MoveJob(List<Path> sources, Path targetDir) {
+		super("Move", sources, targetDir);
+	}
+
+	@Override
+	protected void execute() throws IOException {
+		// nothing is moved unless all sources can be moved
+		for (Path source : getSources()) {
+			checkTarget(source);
+			if (Files.exists(getTarget(source), LinkOption.NOFOLLOW_LINKS))
+				throw new FileAlreadyExistsException(getTarget(source).toString(), null, "Target exists");
+		}
+		List<Path> renamed = new ArrayList<>();
+		List<Path> copied = new ArrayList<>();
+		for (Path source : getSources()) {
+			if (isCancelled())
+				break;
+			try {
+				rename(source, getTarget(source));
+				renamed.add(source);
+				addTotal(0, 1);
+				addDone(0, 1);
+			} catch (AtomicMoveNotSupportedException e) {
+				// different file systems
+				copied.add(source);
+			} catch (IOException e) {
+				addError(source, e);
+			}
+		}
+		if (!isCancelled() && !hasErrors()) {
+			try {
+				copyAll(copied);
+			} catch (IOException e) {
+				// renamed sources are moved back as well
+				addError(null, e);
+			}
+		}
+		if (isCancelled() || hasErrors()) {
+			rollback(renamed, copied);
+			return;
+		}
+		for (Path source : copied) {
+			if (isCancelled())
+				return;
+			deleteSource(source, getTarget(source));
+		}
+	}
+
+	// protected methods
+
+	/**
+	 * Renames a source within a file system.
+	 *
+	 * An existing target is replaced without notice, the caller checks for it beforehand.
+	 * @param source the source.
+	 * @param target the new name of the source.
+	 * @throws AtomicMoveNotSupportedException if the target is on another file system.
+	 * @throws IOException if the source cannot be renamed.
+	 */
+	protected void rename(Path source, Path target) throws IOException {
+		Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// private methods
+
+	/**
+	 * Undoes a move which has not deleted any source yet.
+	 * @param renamed the sources which have been renamed.
+	 * @param copied the sources which have been copied completely or partly.
+	 */
+	private void rollback(List<Path> renamed, List<Path> copied) {
+		// only partial files written by this job, never files of the user
+		for (Path part : getParts()) {
+			try {
+				Files.deleteIfExists(part);
+			} catch (IOException e) {
+				addError(part, e);
+			}
+		}
+		for (Path source : copied) {
+			Path target = getTarget(source);
+			try {
+				deleteTree(target);
+			} catch (IOException e) {
+				addError(target, e);
+			}
+		}
+		for (Path source : renamed) {
+			try {
+				Files.move(getTarget(source), source, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				addError(source, e);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the files of a source which have been copied correctly, then its empty directories.
+	 * @param source the copied file or directory tree.
+	 * @param target the copy of the source.
+	 * @throws IOException if the source cannot be read.
+	 */
+	private void deleteSource(Path source, Path target) throws IOException {
+		Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				Path copy = file.equals(source) ? target : target.resolve(source.relativize(file).toString());
+				try {
+					if (!isCopy(file, attributes, copy))
+						throw new IOException("Copy differs from source, source kept");
+					Files.delete(file);
+				} catch (IOException e) {
+					addError(file, e);
+				}
+				return isCancelled() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException exception) {
+				addError(file, exception);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exception) {
+				try {
+					// kept files keep their directories as well
+					if (exception == null)
+						Files.delete(dir);
+				} catch (IOException e) {
+					addError(dir, e);
+				}
+				return isCancelled() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Verifies the copy of a file.
+	 * 
+	 * The modification time of the copy is taken from the source, so only the contents prove that
+	 * a regular file has been copied correctly.
+	 * @param source the source.
+	 * @param attributes the attributes of the source.
+	 * @param copy the copy.
+	 * @return true, if the copy has the type, size and modification time of the source and a
+	 *         regular file has the same contents, false otherwise.
+	 */
+	private static boolean isCopy(Path source, BasicFileAttributes attributes, Path copy) {
+		try {
+			BasicFileAttributes copied = Files.readAttributes(copy, BasicFileAttributes.class,
+					LinkOption.NOFOLLOW_LINKS);
+			if (!attributes.isRegularFile())
+				return copied.isRegularFile() == attributes.isRegularFile()
+						&& copied.isSymbolicLink() == attributes.isSymbolicLink();
+			return copied.isRegularFile() && copied.size() == attributes.size()
+					&& copied.lastModifiedTime().toMillis() == attributes.lastModifiedTime().toMillis()
+					&& hasSameContents(source, copy);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Compares the contents of two files.
+	 * @param file1 the first file.
+	 * @param file2 the second file.
+	 * @return true, if both files have the same contents, false otherwise.
+	 * @throws IOException if a file cannot be read.
+	 */
+	private static boolean hasSameContents(Path file1, Path file2) throws IOException {
+		ByteBuffer buffer1 = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+		ByteBuffer buffer2 = ByteBuffer.allocate(COMPARE_BUFFER_SIZE);
+		try (FileChannel in1 = FileChannel.open(file1, StandardOpenOption.READ);
+				FileChannel in2 = FileChannel.open(file2, StandardOpenOption.READ)) {
+			while (true) {
+				buffer1.clear();
+				buffer2.clear();
+				int read1 = fill(in1, buffer1);
+				int read2 = fill(in2, buffer2);
+				if (read1 != read2)
+					return false;
+				if (read1 == 0)
+					return true;
+				buffer1.flip();
+				buffer2.flip();
+				if (!buffer1.equals(buffer2))
+					return false;
+			}
+		}
+	}
+
+	/**
+	 * Reads from a channel until a buffer is full or the end of the channel is reached.
+	 * @param channel the channel.
+	 * @param buffer the buffer.
+	 * @return the number of bytes read.
+	 * @throws IOException if the channel cannot be read.
+	 */
+	private static int fill(FileChannel channel, ByteBuffer buffer) throws IOException {
+		int count = 0;
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer);
+			if (read < 0)
+				break;
+			count += read;
+		}
+		return count;
+	}
+
+	/**
+	 * Deletes a file or directory tree if it exists, without following symbolic links.
+	 * @param path the file or directory tree.
+	 * @throws IOException if the tree cannot be deleted.
+	 */
+	private static void deleteTree(Path path) throws IOException {
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS))
+			return;
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exception) throws IOException {
+				if (exception != null)
+					throw exception;
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
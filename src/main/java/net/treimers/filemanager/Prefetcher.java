@@ -0,0 +1,72 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Warms the {@link ListingCache} with directories the user will probably open next.
+ *
+ * Prefetches are loads of the lowest priority: they wait behind all other loads, use at most half
+ * of the concurrent loads allowed per device and are dropped by the {@link LoadScheduler} as soon
+ * as a foreground load is submitted, a dropped prefetch stops its scan. Directories on devices
+ * the {@link LoadScheduler} does not consider responsive are not prefetched, so a slow mount is
+ * not burdened with speculative work. A directory is only prefetched once at a time and at most
+ * {@code filemanager.prefetch.max} prefetches (default 64) are pending. Prefetching is switched off
+ * with the system property {@code filemanager.prefetch.disabled}.
+ */
+public class Prefetcher {
+	/** The maximum number of pending prefetches. */
+	private static final int MAX_PENDING = Integer.getInteger("filemanager.prefetch.max", 64);
+	/** Flag indicating that prefetching is switched off. */
+	private static final boolean DISABLED = Boolean.getBoolean("filemanager.prefetch.disabled");
+	/** The shared prefetcher instance. */
+	private static final Prefetcher INSTANCE = new Prefetcher();
+	/** The pending prefetches by directory. */
+	private final Map<Path, LoadScheduler.Task<Void>> pending = new HashMap<>();
+
+	/**
+	 * Creates a new instance.
+	 */
+	private Prefetcher() {
+	}
+
+	/**
+	 * Gets the shared prefetcher instance.
+	 * @return the shared prefetcher instance.
+	 */
+	public static Prefetcher getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Lists a directory into the listing cache when the loaders are idle.
+	 * @param dir the directory.
+	 */
+	public synchronized void prefetch(File dir) {
+		if (DISABLED)
+			return;
+		pending.values().removeIf(LoadScheduler.Task::isDone);
+		Path path = dir.toPath();
+		if (pending.size() >= MAX_PENDING || pending.containsKey(path)
+				|| !LoadScheduler.getInstance().isResponsive(path))
+			return;
+		// the scan may start before the task is known, it is not cancelled then
+		AtomicReference<LoadScheduler.Task<Void>> task = new AtomicReference<>();
+		task.set(LoadScheduler.getInstance().submit(path, LoadScheduler.Priority.PREFETCH, () -> {
+			try {
+				ListingCache.getInstance().list(dir, (int count) -> task.get() == null || !task.get().isCancelled(),
+						null);
+			} catch (IOException e) {
+				// the directory is read again when opened
+			}
+			return null;
+		}, (Void result, Throwable throwable) -> {
+			// the listing has been cached
+		}));
+		pending.put(path, task.get());
+	}
+}
@@ -0,0 +1,59 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeItem.TreeModificationEvent;
+
+/**
+ * The root item of the FileManager navigation tree.
+ *
+ * The root holds the dialog handler for the whole tree and handles expand and collapse events
+ * of all its descendants with a single pair of event handlers, so tree items need neither a
+ * listener nor a dialog handler reference of their own.
+ */
+public class RootTreeItem extends FileTreeItem {
+	/** A dialog handler used to show dialogs. */
+	private final DialogHandler dialogHandler;
+	/** The sorting of the children of all items in the tree. */
+	private Sorting sorting = Sorting.DEFAULT;
+
+	/**
+	 * Creates a new instance.
+	 * @param dir the root directory.
+	 * @param dialogHandler the dialog handler used to show dialogs.
+	 */
+	public RootTreeItem(File dir, DialogHandler dialogHandler) {
+		super(dir);
+		this.dialogHandler = dialogHandler;
+		addEventHandler(TreeItem.<File>branchExpandedEvent(), (TreeModificationEvent<File> event) -> {
+			if (event.getTreeItem() instanceof FileTreeItem)
+				Metrics.getInstance().time(Metrics.Stage.FX_HANDLER, ((FileTreeItem) event.getTreeItem())::expanded);
+		});
+		addEventHandler(TreeItem.<File>branchCollapsedEvent(), (TreeModificationEvent<File> event) -> {
+			if (event.getTreeItem() instanceof FileTreeItem)
+				Metrics.getInstance().time(Metrics.Stage.FX_HANDLER, ((FileTreeItem) event.getTreeItem())::collapsed);
+		});
+	}
+
+	@Override
+	public DialogHandler getDialogHandler() {
+		return dialogHandler;
+	}
+
+	@Override
+	public Sorting getSorting() {
+		return sorting;
+	}
+
+	/**
+	 * Changes the sorting of the tree and sorts the expanded directories again.
+	 * @param sorting the new sorting.
+	 */
+	public void setSorting(Sorting sorting) {
+		if (this.sorting.equals(sorting))
+			return;
+		this.sorting = sorting;
+		resort();
+	}
+}
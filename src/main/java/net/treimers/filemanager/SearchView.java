@@ -0,0 +1,114 @@
+package net.treimers.filemanager;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.geometry.Side;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.TextField;
+
+/**
+ * The search field finding files by name in the file index of the opened root.
+ *
+ * Searches run in the background while typing, results of outdated queries are dropped. The
+ * matches are offered in a drop down menu, choosing one reveals it in the tree.
+ */
+public class SearchView {
+	/** The maximum number of matches shown. */
+	private static final int MAX_RESULTS = 100;
+	/** The text field holding the query. */
+	private final TextField searchField;
+	/** The consumer revealing a chosen match. */
+	private final Consumer<Path> revealer;
+	/** The drop down menu showing the matches. */
+	private final ContextMenu resultMenu = new ContextMenu();
+	/** The index searched, null if not available yet. */
+	private FileIndex index;
+	/** The generation of the latest query, results of older queries are dropped. */
+	private int generation;
+
+	/**
+	 * Creates a new instance.
+	 * @param searchField the text field holding the query.
+	 * @param revealer the consumer revealing a chosen match.
+	 */
+	public SearchView(TextField searchField, Consumer<Path> revealer) {
+		this.searchField = searchField;
+		this.revealer = revealer;
+		searchField.setDisable(true);
+		searchField.textProperty().addListener((observable, oldValue, newValue) -> search());
+	}
+
+	/**
+	 * Starts indexing a root directory.
+	 * @param root the root directory.
+	 */
+	public void open(Path root) {
+		index = null;
+		searchField.clear();
+		searchField.setDisable(true);
+		searchField.setPromptText("Indexing...");
+		FileIndexer.getInstance().start(root, (FileIndex available, boolean done) -> {
+			index = available;
+			searchField.setDisable(false);
+			searchField.setPromptText(String.format(done ? "Search %,d files" : "Search %,d files (updating)",
+					available.size() - 1));
+			search();
+		});
+	}
+
+	// private methods
+
+	/**
+	 * Searches the current query in the background and shows the matches.
+	 */
+	private void search() {
+		int searchGeneration = ++generation;
+		String query = searchField.getText();
+		FileIndex searched = index;
+		if (searched == null || query == null || query.isEmpty()) {
+			resultMenu.hide();
+			return;
+		}
+		ForkJoinPool.commonPool().execute(() -> {
+			List<Path> matches = searched.search(query, MAX_RESULTS + 1);
+			Platform.runLater(() -> {
+				if (searchGeneration == generation)
+					showMatches(searched.getRoot(), matches);
+			});
+		});
+	}
+
+	/**
+	 * Shows matches in the drop down menu.
+	 * @param root the root directory of the searched index.
+	 * @param matches the matches, one more than shown if there are further matches.
+	 */
+	private void showMatches(Path root, List<Path> matches) {
+		ObservableList<MenuItem> items = resultMenu.getItems();
+		items.clear();
+		for (int i = 0; i < Math.min(matches.size(), MAX_RESULTS); i++) {
+			Path match = matches.get(i);
+			MenuItem item = new MenuItem(root.relativize(match).toString());
+			item.setMnemonicParsing(false);
+			item.setOnAction(event -> revealer.accept(match));
+			items.add(item);
+		}
+		if (matches.size() > MAX_RESULTS) {
+			MenuItem more = new MenuItem("More matches, please refine the search");
+			more.setDisable(true);
+			items.add(more);
+		} else if (matches.isEmpty()) {
+			MenuItem none = new MenuItem("No matches");
+			none.setDisable(true);
+			items.add(none);
+		}
+		if (!resultMenu.isShowing())
+			resultMenu.show(searchField, Side.BOTTOM, 0, 0);
+	}
+}
@@ -0,0 +1,106 @@
+package net.treimers.filemanager;
+
+/**
+ * The orders available to sort the children of a directory.
+ *
+ * Every order falls back to the name order for entries with equal keys.
+ */
+public enum SortOrder {
+	/** Order by name like the file system compares names. */
+	NAME,
+	/** Order by name ignoring case with embedded numbers compared by value. */
+	NATURAL,
+	/** Order by size. */
+	SIZE,
+	/** Order by modification time. */
+	MODIFIED;
+
+	/**
+	 * Creates a comparator of the entries of a listing.
+	 *
+	 * Keys are precomputed once per entry where needed.
+	 * @param listing the listing.
+	 * @return the comparator.
+	 */
+	IndexSorter.IndexComparator comparator(Listing listing) {
+		switch (this) {
+		case NATURAL:
+			String[] keys = listing.getNaturalKeys();
+			return (int i1, int i2) -> {
+				int retval = keys[i1].compareTo(keys[i2]);
+				return retval != 0 ? retval : Listing.compareNames(listing.getName(i1), listing.getName(i2));
+			};
+		case SIZE:
+			return (int i1, int i2) -> {
+				int retval = Long.compare(listing.getSize(i1), listing.getSize(i2));
+				return retval != 0 ? retval : Listing.compareNames(listing.getName(i1), listing.getName(i2));
+			};
+		case MODIFIED:
+			return (int i1, int i2) -> {
+				int retval = Long.compare(listing.getLastModified(i1), listing.getLastModified(i2));
+				return retval != 0 ? retval : Listing.compareNames(listing.getName(i1), listing.getName(i2));
+			};
+		default:
+			return (int i1, int i2) -> Listing.compareNames(listing.getName(i1), listing.getName(i2));
+		}
+	}
+
+	/**
+	 * Compares two tree items.
+	 * @param item1 the first tree item.
+	 * @param item2 the second tree item.
+	 * @return a negative number, zero or a positive number if the first item is less than, equal to
+	 *         or greater than the second item.
+	 */
+	int compare(FileTreeItem item1, FileTreeItem item2) {
+		int retval = 0;
+		switch (this) {
+		case NATURAL:
+			retval = naturalKey(item1.getName()).compareTo(naturalKey(item2.getName()));
+			break;
+		case SIZE:
+			retval = Long.compare(item1.getSize(), item2.getSize());
+			break;
+		case MODIFIED:
+			retval = Long.compare(item1.getLastModified(), item2.getLastModified());
+			break;
+		default:
+			break;
+		}
+		return retval != 0 ? retval : Listing.compareNames(item1.getName(), item2.getName());
+	}
+
+	/**
+	 * Computes the natural sort key of a name.
+	 *
+	 * Letters are folded to lower case. Every run of digits is replaced by a marker, the number of
+	 * significant digits and the digits without leading zeros, so that plain string comparison of
+	 * keys orders "file2" before "file10".
+	 * @param name the name.
+	 * @return the natural sort key.
+	 */
+	static String naturalKey(String name) {
+		StringBuilder key = new StringBuilder(name.length() + 4);
+		int length = name.length();
+		int i = 0;
+		while (i < length) {
+			char c = name.charAt(i);
+			if (c >= '0' && c <= '9') {
+				int start = i;
+				while (i < length && name.charAt(i) == '0')
+					i++;
+				int significant = i;
+				while (i < length && name.charAt(i) >= '0' && name.charAt(i) <= '9')
+					i++;
+				// a run of zeros only is the number zero
+				if (significant == i && significant > start)
+					significant--;
+				key.append('0').append((char) (i - significant)).append(name, significant, i);
+			} else {
+				key.append(Character.toLowerCase(c));
+				i++;
+			}
+		}
+		return key.toString();
+	}
+}
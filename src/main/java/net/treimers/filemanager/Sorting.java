@@ -0,0 +1,109 @@
+package net.treimers.filemanager;
+
+import java.io.File;
+import java.util.Comparator;
+
+import javafx.scene.control.TreeItem;
+
+/**
+ * An immutable sorting of directory children: a sort order optionally listing directories first.
+ */
+public final class Sorting {
+	/** The default sorting by name. */
+	public static final Sorting DEFAULT = new Sorting(SortOrder.NAME, false);
+	/** The sort order. */
+	private final SortOrder order;
+	/** Flag indicating that directories are listed before files. */
+	private final boolean directoriesFirst;
+	/** The comparator used to insert single tree items. */
+	private final Comparator<TreeItem<File>> itemComparator;
+
+	/**
+	 * Creates a new instance.
+	 * @param order the sort order.
+	 * @param directoriesFirst true, if directories are listed before files.
+	 */
+	public Sorting(SortOrder order, boolean directoriesFirst) {
+		this.order = order;
+		this.directoriesFirst = directoriesFirst;
+		this.itemComparator = new Comparator<>() {
+			@Override
+			public int compare(TreeItem<File> o1, TreeItem<File> o2) {
+				// placeholders without file are sorted last
+				if (!(o1 instanceof FileTreeItem) || !(o2 instanceof FileTreeItem))
+					return Boolean.compare(!(o1 instanceof FileTreeItem), !(o2 instanceof FileTreeItem));
+				FileTreeItem item1 = (FileTreeItem) o1;
+				FileTreeItem item2 = (FileTreeItem) o2;
+				if (directoriesFirst && item1.isDirectory() != item2.isDirectory())
+					return item1.isDirectory() ? -1 : 1;
+				return order.compare(item1, item2);
+			}
+		};
+	}
+
+	/**
+	 * Gets the sort order.
+	 * @return the sort order.
+	 */
+	public SortOrder getOrder() {
+		return order;
+	}
+
+	/**
+	 * Checks whether directories are listed before files.
+	 * @return true, if directories are listed before files, false otherwise.
+	 */
+	public boolean isDirectoriesFirst() {
+		return directoriesFirst;
+	}
+
+	/**
+	 * Sorts a listing.
+	 *
+	 * The result is memoized by the listing, so applying the same sorting again returns the same
+	 * instance.
+	 * @param listing the listing.
+	 * @return the sorted listing.
+	 */
+	public Listing apply(Listing listing) {
+		return listing.sortedBy(this);
+	}
+
+	/**
+	 * Gets the comparator used to insert single tree items at their sorted position.
+	 * @return the tree item comparator.
+	 */
+	public Comparator<TreeItem<File>> getItemComparator() {
+		return itemComparator;
+	}
+
+	/**
+	 * Creates a comparator of the entries of a listing.
+	 * @param listing the listing.
+	 * @return the comparator.
+	 */
+	IndexSorter.IndexComparator comparator(Listing listing) {
+		IndexSorter.IndexComparator keyComparator = order.comparator(listing);
+		if (!directoriesFirst)
+			return keyComparator;
+		return (int i1, int i2) -> {
+			boolean directory1 = listing.isDirectory(i1);
+			if (directory1 != listing.isDirectory(i2))
+				return directory1 ? -1 : 1;
+			return keyComparator.compare(i1, i2);
+		};
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Sorting))
+			return false;
+		Sorting other = (Sorting) obj;
+		return order == other.order && directoriesFirst == other.directoriesFirst;
+	}
+
+	@Override
+	public int hashCode() {
+		return order.hashCode() * 2 + (directoriesFirst ? 1 : 0);
+	}
+}
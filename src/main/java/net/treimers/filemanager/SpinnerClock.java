@@ -0,0 +1,56 @@
+package net.treimers.filemanager;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.KeyValue;
+import javafx.animation.Timeline;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.util.Duration;
+
+/**
+ * A single animation clock driving all loading spinners.
+ *
+ * Spinners bind their rotation to the shared angle instead of running an animation of their own,
+ * so the number of animations does not grow with the number of concurrent loads. The clock only
+ * runs while at least one load shows a spinner. All methods must be invoked in the JavaFX thread.
+ */
+public class SpinnerClock {
+	/** The current rotation angle in degrees. */
+	private static final DoubleProperty ANGLE = new SimpleDoubleProperty();
+	/** The time line rotating the angle once per second. */
+	private static final Timeline TIME_LINE = new Timeline(
+			new KeyFrame(Duration.seconds(0), new KeyValue(ANGLE, 0)),
+			new KeyFrame(Duration.seconds(1), new KeyValue(ANGLE, 360)));
+	/** The number of spinners currently shown. */
+	private static int users;
+
+	static {
+		TIME_LINE.setCycleCount(Animation.INDEFINITE);
+	}
+
+	/**
+	 * Gets the shared rotation angle.
+	 * @return the shared rotation angle in degrees.
+	 */
+	public static ReadOnlyDoubleProperty angleProperty() {
+		return ANGLE;
+	}
+
+	/**
+	 * Registers a spinner, starts the clock for the first one.
+	 */
+	public static void start() {
+		if (users++ == 0)
+			TIME_LINE.play();
+	}
+
+	/**
+	 * Unregisters a spinner, stops the clock after the last one.
+	 */
+	public static void stop() {
+		if (users > 0 && --users == 0)
+			TIME_LINE.stop();
+	}
+}
@@ -0,0 +1,207 @@
+package net.treimers.filemanager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import javafx.scene.control.TreeItem;
+
+/**
+ * A persisted snapshot of the navigation tree used to show the last layout at once on start.
+ *
+ * The snapshot holds the opened root, the expanded directories (parents before their children)
+ * and their cached listings with the directory modification and scan times. On start the listings
+ * are put into the {@link ListingCache} and the expanded directories are shown immediately from
+ * them, then every expanded directory is revalidated in the background like any cached listing:
+ * unchanged directories cost a single stat, changes are applied as differences. The snapshot is
+ * read and its root is checked by foreground loads of the {@link LoadScheduler}, so a root on an
+ * unreachable network share never blocks the JavaFX thread; the tree is shown once the check
+ * succeeds.
+ *
+ * The snapshot is written to the file given by the system property
+ * {@code filemanager.snapshot.file} (default {@code ~/.filemanager/tree}) when the application
+ * exits.
+ */
+public class TreeSnapshot {
+	/** The file holding the snapshot. */
+	private static final Path SNAPSHOT_FILE = Paths.get(System.getProperty("filemanager.snapshot.file",
+			Paths.get(System.getProperty("user.home"), ".filemanager", "tree").toString()));
+	/** The magic number of a snapshot file. */
+	private static final int MAGIC = 0x46545253;
+	/** The version of the snapshot file format. */
+	private static final int VERSION = 1;
+	/** The root directory. */
+	private final File root;
+	/** The paths of the expanded directories relative to the root, parents before their children. */
+	private final List<String> expanded = new ArrayList<>();
+	/** The listings of the expanded directories, null elements for directories not cached. */
+	private final List<Listing> listings = new ArrayList<>();
+
+	/**
+	 * Creates a new instance.
+	 * @param root the root directory.
+	 */
+	private TreeSnapshot(File root) {
+		this.root = root;
+	}
+
+	/**
+	 * Reads the snapshot in the background.
+	 * @param consumer invoked in the JavaFX thread with the snapshot, not invoked if there is no
+	 *        readable snapshot or its root is no directory.
+	 */
+	public static void load(Consumer<TreeSnapshot> consumer) {
+		LoadScheduler scheduler = LoadScheduler.getInstance();
+		scheduler.submit(SNAPSHOT_FILE.toAbsolutePath().getParent(), LoadScheduler.Priority.FOREGROUND, TreeSnapshot::read,
+				(TreeSnapshot snapshot, Throwable throwable) -> {
+					if (snapshot == null)
+						return;
+					// the root may be on another, slow device
+					scheduler.submit(snapshot.root.toPath(), LoadScheduler.Priority.FOREGROUND,
+							snapshot.root::isDirectory, (Boolean isDirectory, Throwable exception) -> {
+								if (Boolean.TRUE.equals(isDirectory))
+									Platform.runLater(() -> consumer.accept(snapshot));
+							});
+				});
+	}
+
+	/**
+	 * Gets the root directory.
+	 * @return the root directory.
+	 */
+	public File getRoot() {
+		return root;
+	}
+
+	/**
+	 * Restores the expanded directories, must be invoked in the JavaFX thread.
+	 *
+	 * Directories which no longer exist are skipped.
+	 * @param rootItem the root item of a tree created for the root directory of the snapshot.
+	 */
+	public void restore(RootTreeItem rootItem) {
+		if (!root.equals(rootItem.getValue()))
+			return;
+		for (int i = 0; i < expanded.size(); i++) {
+			FileTreeItem item = find(rootItem, expanded.get(i));
+			if (item == null || !item.isDirectory())
+				continue;
+			if (listings.get(i) != null)
+				item.restore(listings.get(i), true);
+			else
+				item.setExpanded(true);
+		}
+	}
+
+	/**
+	 * Writes the snapshot of a tree, must be invoked in the JavaFX thread.
+	 * @param root the root item of the tree.
+	 * @throws IOException if the snapshot cannot be written.
+	 */
+	public static void save(RootTreeItem root) throws IOException {
+		List<FileTreeItem> expanded = new ArrayList<>();
+		collectExpanded(root, expanded);
+		Files.createDirectories(SNAPSHOT_FILE.getParent());
+		Path temp = SNAPSHOT_FILE.resolveSibling(SNAPSHOT_FILE.getFileName() + ".tmp");
+		Path rootPath = root.getValue().toPath();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(root.getValue().getPath());
+			out.writeInt(expanded.size());
+			for (FileTreeItem item : expanded) {
+				out.writeUTF(rootPath.relativize(item.getValue().toPath()).toString());
+				// directories whose listing has been evicted are loaded when restored
+				ListingCache.getInstance().write(item.getValue(), out);
+			}
+		}
+		Files.move(temp, SNAPSHOT_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// private methods
+
+	/**
+	 * Reads the snapshot and puts its listings into the {@link ListingCache}.
+	 *
+	 * A corrupt snapshot restores as much as read. The method is invoked asynchronously by the load
+	 * scheduler.
+	 * @return the snapshot, null if there is no readable snapshot.
+	 */
+	private static TreeSnapshot read() {
+		if (!Files.isRegularFile(SNAPSHOT_FILE))
+			return null;
+		TreeSnapshot snapshot = null;
+		try (DataInputStream in = open()) {
+			snapshot = new TreeSnapshot(new File(in.readUTF()));
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String relative = in.readUTF();
+				File dir = relative.isEmpty() ? snapshot.root : new File(snapshot.root, relative);
+				Listing listing = ListingCache.getInstance().read(dir, in);
+				snapshot.expanded.add(relative);
+				snapshot.listings.add(listing);
+			}
+		} catch (IOException | RuntimeException e) {
+			// the rest of the tree is expanded by the user
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Opens the snapshot file and checks its header.
+	 * @return the input positioned after the header.
+	 * @throws IOException if the file cannot be read or has an unknown format.
+	 */
+	private static DataInputStream open() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(SNAPSHOT_FILE)));
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			in.close();
+			throw new IOException("Not a tree snapshot: " + SNAPSHOT_FILE);
+		}
+		return in;
+	}
+
+	/**
+	 * Collects the expanded directories of a tree, parents before their children.
+	 * @param item the item to start with.
+	 * @param expanded the list receiving the expanded directories.
+	 */
+	private static void collectExpanded(FileTreeItem item, List<FileTreeItem> expanded) {
+		if (!item.isExpanded())
+			return;
+		expanded.add(item);
+		for (TreeItem<File> child : item.getChildren()) {
+			if (child instanceof FileTreeItem)
+				collectExpanded((FileTreeItem) child, expanded);
+		}
+	}
+
+	/**
+	 * Finds the item of a restored directory.
+	 * @param root the root item.
+	 * @param relative the path of the directory relative to the root.
+	 * @return the item, null if its parent has not been restored or it does not exist.
+	 */
+	private static FileTreeItem find(RootTreeItem root, String relative) {
+		FileTreeItem item = root;
+		if (relative.isEmpty())
+			return item;
+		for (Path name : Paths.get(relative)) {
+			item = item.getLoadedChild(name.toString());
+			if (item == null)
+				return null;
+		}
+		return item;
+	}
+}
@@ -0,0 +1,92 @@
+package net.treimers.filemanager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+/**
+ * Applies tree mutations in the JavaFX thread within a time budget per pulse.
+ *
+ * Instead of posting every finished load with its own {@link Platform#runLater(Runnable)}, loads
+ * submit their tree mutation to this scheduler. Pending mutations are coalesced per key, a newer
+ * mutation of a directory replaces an older one still waiting at its original position, so a
+ * directory loaded repeatedly is updated once. Mutations are applied in submission order at the
+ * start of each pulse until the budget given by the system property
+ * {@code filemanager.fx.budget} (milliseconds, default 8) is used up, the rest waits for the next
+ * pulse. At least one mutation is applied per pulse, so pending work always converges. The
+ * scheduler only runs while mutations are pending.
+ */
+public class TreeUpdateScheduler {
+	/** The time budget per pulse in nanoseconds. */
+	private static final long BUDGET = TimeUnit.MILLISECONDS.toNanos(Long.getLong("filemanager.fx.budget", 8));
+	/** The shared scheduler instance. */
+	private static final TreeUpdateScheduler INSTANCE = new TreeUpdateScheduler();
+	/** The pending mutations by key in submission order. */
+	private final Map<Object, Runnable> pending = new LinkedHashMap<>();
+	/** The timer applying pending mutations once per pulse. */
+	private final AnimationTimer timer = new AnimationTimer() {
+		@Override
+		public void handle(long now) {
+			applyPending();
+		}
+	};
+	/** Flag indicating that the timer has been started. */
+	private boolean scheduled;
+
+	/**
+	 * Creates a new instance.
+	 */
+	private TreeUpdateScheduler() {
+	}
+
+	/**
+	 * Gets the shared scheduler instance.
+	 * @return the shared scheduler instance.
+	 */
+	public static TreeUpdateScheduler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Submits a tree mutation, may be invoked in any thread.
+	 * @param key the key the mutation is coalesced by, e.g. the loading state of a directory.
+	 * @param mutation the mutation, replacing a pending mutation of the same key.
+	 */
+	public void submit(Object key, Runnable mutation) {
+		boolean start;
+		synchronized (pending) {
+			pending.put(key, mutation);
+			start = !scheduled;
+			scheduled = true;
+		}
+		if (start)
+			Platform.runLater(timer::start);
+	}
+
+	// private methods
+
+	/**
+	 * Applies pending mutations until the budget of this pulse is used up.
+	 */
+	private void applyPending() {
+		long start = System.nanoTime();
+		do {
+			Runnable mutation;
+			synchronized (pending) {
+				Iterator<Runnable> iterator = pending.values().iterator();
+				if (!iterator.hasNext()) {
+					scheduled = false;
+					timer.stop();
+					return;
+				}
+				mutation = iterator.next();
+				iterator.remove();
+			}
+			mutation.run();
+		} while (System.nanoTime() - start < BUDGET);
+	}
+}
@@ -1,7 +1,9 @@
 package net.treimers.filemanager;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 
 import javafx.scene.control.TreeItem;
 
@@ -9,11 +11,17 @@ import javafx.scene.control.TreeItem;
  * Utility class with helper method.
  */
 public class Util {
-	/** A tree item comparator used to sort items in a tree. */
-	public static final Comparator<? super TreeItem<File>> COMPARATOR = new Comparator<>() {
-		@Override
-		public int compare(TreeItem<File> o1, TreeItem<File> o2) {
-			return o1.getValue().toPath().compareTo(o2.getValue().toPath());
-		}
-	};
+	/**
+	 * Inserts a tree item into sorted children at its sorted position.
+	 * 
+	 * The position is found by binary search, so the children need not be sorted again.
+	 * @param children the sorted children.
+	 * @param item the tree item to insert.
+	 * @param comparator the comparator the children are sorted by.
+	 */
+	public static void insertSorted(List<TreeItem<File>> children, TreeItem<File> item,
+			Comparator<? super TreeItem<File>> comparator) {
+		int index = Collections.binarySearch(children, item, comparator);
+		children.add(index < 0 ? -index - 1 : index, item);
+	}
 }
@@ -0,0 +1,158 @@
+package net.treimers.filemanager;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/**
+ * The 64 bit xxHash checksum with seed 0, computed incrementally.
+ *
+ * Input is consumed in stripes of 32 bytes read as little endian longs straight from the given
+ * buffers, so direct and memory mapped buffers are hashed without copying. Only the bytes of an
+ * incomplete stripe are kept between updates.
+ *
+ * See https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md
+ */
+public class XxHash64 implements Checksum {
+	/** The first prime. */
+	private static final long PRIME1 = 0x9E3779B185EBCA87L;
+	/** The second prime. */
+	private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+	/** The third prime. */
+	private static final long PRIME3 = 0x165667B19E3779F9L;
+	/** The fourth prime. */
+	private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+	/** The fifth prime. */
+	private static final long PRIME5 = 0x27D4EB2F165667C5L;
+	/** The size of a stripe. */
+	private static final int STRIPE = 32;
+	/** The bytes of an incomplete stripe. */
+	private final ByteBuffer pending = ByteBuffer.allocate(STRIPE).order(ByteOrder.LITTLE_ENDIAN);
+	/** The first accumulator. */
+	private long v1;
+	/** The second accumulator. */
+	private long v2;
+	/** The third accumulator. */
+	private long v3;
+	/** The fourth accumulator. */
+	private long v4;
+	/** The total number of bytes consumed. */
+	private long length;
+
+	/**
+	 * Creates a new instance.
+	 */
+	public XxHash64() {
+		reset();
+	}
+
+	@Override
+	public void update(int b) {
+		update(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void update(byte[] b, int off, int len) {
+		update(ByteBuffer.wrap(b, off, len));
+	}
+
+	@Override
+	public void update(ByteBuffer buffer) {
+		length += buffer.remaining();
+		ByteOrder order = buffer.order();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (pending.position() > 0) {
+			while (pending.hasRemaining() && buffer.hasRemaining())
+				pending.put(buffer.get());
+			if (pending.hasRemaining()) {
+				buffer.order(order);
+				return;
+			}
+			pending.flip();
+			consume(pending);
+			pending.clear();
+		}
+		while (buffer.remaining() >= STRIPE)
+			consume(buffer);
+		pending.put(buffer);
+		buffer.order(order);
+	}
+
+	@Override
+	public long getValue() {
+		long hash;
+		if (length >= STRIPE) {
+			hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			hash = merge(hash, v1);
+			hash = merge(hash, v2);
+			hash = merge(hash, v3);
+			hash = merge(hash, v4);
+		} else {
+			hash = PRIME5;
+		}
+		hash += length;
+		ByteBuffer rest = pending.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		rest.flip();
+		while (rest.remaining() >= 8) {
+			hash ^= round(0, rest.getLong());
+			hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+		}
+		if (rest.remaining() >= 4) {
+			hash ^= (rest.getInt() & 0xFFFFFFFFL) * PRIME1;
+			hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+		}
+		while (rest.hasRemaining()) {
+			hash ^= (rest.get() & 0xFFL) * PRIME5;
+			hash = Long.rotateLeft(hash, 11) * PRIME1;
+		}
+		hash ^= hash >>> 33;
+		hash *= PRIME2;
+		hash ^= hash >>> 29;
+		hash *= PRIME3;
+		hash ^= hash >>> 32;
+		return hash;
+	}
+
+	@Override
+	public void reset() {
+		v1 = PRIME1 + PRIME2;
+		v2 = PRIME2;
+		v3 = 0;
+		v4 = -PRIME1;
+		length = 0;
+		pending.clear();
+	}
+
+	// private methods
+
+	/**
+	 * Consumes a stripe.
+	 * @param buffer the little endian buffer holding at least a stripe.
+	 */
+	private void consume(ByteBuffer buffer) {
+		v1 = round(v1, buffer.getLong());
+		v2 = round(v2, buffer.getLong());
+		v3 = round(v3, buffer.getLong());
+		v4 = round(v4, buffer.getLong());
+	}
+
+	/**
+	 * Mixes a lane into an accumulator.
+	 * @param accumulator the accumulator.
+	 * @param lane the lane.
+	 * @return the new accumulator.
+	 */
+	private static long round(long accumulator, long lane) {
+		return Long.rotateLeft(accumulator + lane * PRIME2, 31) * PRIME1;
+	}
+
+	/**
+	 * Merges an accumulator into the hash.
+	 * @param hash the hash.
+	 * @param accumulator the accumulator.
+	 * @return the new hash.
+	 */
+	private static long merge(long hash, long accumulator) {
+		return (hash ^ round(0, accumulator)) * PRIME1 + PRIME4;
+	}
+}
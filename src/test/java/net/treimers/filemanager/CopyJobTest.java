@@ -0,0 +1,135 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests resuming interrupted copies of a {@link CopyJob}.
+ */
+public class CopyJobTest extends TestCase {
+	/** The directory containing the sources and the target directory. */
+	private Path tempDir;
+	/** The directory containing the sources. */
+	private Path sourceDir;
+	/** The directory to copy into. */
+	private Path targetDir;
+	/** The executor replaced while testing. */
+	private Executor fxExecutor;
+
+	@Override
+	protected void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("copyjob");
+		sourceDir = Files.createDirectory(tempDir.resolve("source"));
+		targetDir = Files.createDirectory(tempDir.resolve("target"));
+		// there is no JavaFX toolkit, progress updates are dropped
+		fxExecutor = Job.fxExecutor;
+		Job.fxExecutor = (Runnable runnable) -> {
+		};
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		Job.fxExecutor = fxExecutor;
+		Files.walkFileTree(tempDir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exception) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Tests that a partial copy of the same source is continued instead of copied again.
+	 * @throws IOException if the test files cannot be accessed.
+	 */
+	public void testResume() throws IOException {
+		Path source = write(sourceDir.resolve("file.txt"), "0123456789");
+		Path target = targetDir.resolve("file.txt");
+		Path part = CopyJob.getPart(source, attributes(source), target);
+		write(part, "01234");
+		List<Long> done = new ArrayList<>();
+		CopyJob job = new CopyJob(Collections.singletonList(source), targetDir) {
+			@Override
+			protected void addDone(long bytes, long files) {
+				if (bytes > 0)
+					done.add(bytes);
+				super.addDone(bytes, files);
+			}
+		};
+		job.execute();
+		assertTrue(job.getErrors().isEmpty());
+		// the bytes of the partial copy are counted, only the rest is transferred
+		assertEquals(Arrays.asList(5L, 5L), done);
+		assertEquals("0123456789", read(target));
+		assertFalse(Files.exists(part, LinkOption.NOFOLLOW_LINKS));
+	}
+
+	/**
+	 * Tests that a file of the user looking like a partial copy is neither continued nor removed.
+	 * @throws IOException if the test files cannot be accessed.
+	 */
+	public void testForeignPart() throws IOException {
+		Path source = write(sourceDir.resolve("file.txt"), "0123456789");
+		Path foreign = write(targetDir.resolve("file.txt" + CopyJob.PART_SUFFIX), "user");
+		Files.setLastModifiedTime(foreign, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+		CopyJob job = new CopyJob(Collections.singletonList(source), targetDir);
+		job.execute();
+		assertTrue(job.getErrors().isEmpty());
+		assertEquals("0123456789", read(targetDir.resolve("file.txt")));
+		assertEquals("user", read(foreign));
+	}
+
+	// private methods
+
+	/**
+	 * Writes a text file.
+	 * @param file the file.
+	 * @param text the contents.
+	 * @return the file.
+	 * @throws IOException if the file cannot be written.
+	 */
+	private static Path write(Path file, String text) throws IOException {
+		return Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Reads a text file.
+	 * @param file the file.
+	 * @return the contents.
+	 * @throws IOException if the file cannot be read.
+	 */
+	private static String read(Path file) throws IOException {
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads the attributes of a file.
+	 * @param file the file.
+	 * @return the attributes.
+	 * @throws IOException if the attributes cannot be read.
+	 */
+	private static BasicFileAttributes attributes(Path file) throws IOException {
+		return Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+	}
+}
@@ -0,0 +1,83 @@
+package net.treimers.filemanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests reading persisted {@link Listing}s.
+ */
+public class ListingTest extends TestCase {
+	/** The listed directory. */
+	private static final File DIR = new File("dir");
+
+	/**
+	 * Tests reading a listing larger than the initially allocated arrays.
+	 * @throws IOException if the listing cannot be read.
+	 */
+	public void testRead() throws IOException {
+		int count = 3000;
+		Listing listing = Listing.read(DIR, input(count, count));
+		assertEquals(count, listing.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals(name(i), listing.getName(i));
+			assertEquals(i, listing.getSize(i));
+		}
+	}
+
+	/**
+	 * Tests that a corrupt number of entries fails at the end of the input without allocating it.
+	 */
+	public void testCorruptCount() {
+		try {
+			Listing.read(DIR, input(Integer.MAX_VALUE, 10));
+			fail("IOException expected");
+		} catch (IOException e) {
+			// expected
+		}
+		try {
+			Listing.read(DIR, input(-1, 0));
+			fail("IOException expected");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	// private methods
+
+	/**
+	 * Creates the input of a persisted listing.
+	 * @param count the number of entries written as count.
+	 * @param entries the number of entries actually written.
+	 * @return the input.
+	 */
+	private static DataInputStream input(int count, int entries) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(count);
+			for (int i = 0; i < entries; i++) {
+				out.writeUTF(name(i));
+				out.writeByte(2);
+				out.writeLong(i);
+				out.writeLong(0);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+
+	/**
+	 * Gets the name of an entry, names are ordered like their numbers.
+	 * @param i the number of the entry.
+	 * @return the name.
+	 */
+	private static String name(int i) {
+		return String.format("file%05d", i);
+	}
+}
@@ -0,0 +1,199 @@
+package net.treimers.filemanager;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests moving files with a {@link MoveJob}, in particular across file systems.
+ */
+public class MoveJobTest extends TestCase {
+	/** The directory containing the sources and the target directory. */
+	private Path tempDir;
+	/** The directory containing the sources. */
+	private Path sourceDir;
+	/** The directory to move into. */
+	private Path targetDir;
+	/** The executor replaced while testing. */
+	private Executor fxExecutor;
+
+	@Override
+	protected void setUp() throws IOException {
+		tempDir = Files.createTempDirectory("movejob");
+		sourceDir = Files.createDirectory(tempDir.resolve("source"));
+		targetDir = Files.createDirectory(tempDir.resolve("target"));
+		// there is no JavaFX toolkit, progress updates are dropped
+		fxExecutor = Job.fxExecutor;
+		Job.fxExecutor = (Runnable runnable) -> {
+		};
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		Job.fxExecutor = fxExecutor;
+		Files.walkFileTree(tempDir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exception) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Tests that a source on another file system is copied, verified and deleted.
+	 * @throws IOException if the test files cannot be accessed.
+	 */
+	public void testCrossDevice() throws IOException {
+		Path dir = Files.createDirectories(sourceDir.resolve("dir/sub"));
+		write(dir.resolve("file.txt"), "contents");
+		Path file = write(sourceDir.resolve("file.txt"), "other contents");
+		MoveJob job = new CrossDeviceMoveJob(Arrays.asList(sourceDir.resolve("dir"), file), targetDir);
+		job.execute();
+		assertTrue(job.getErrors().isEmpty());
+		assertFalse(Files.exists(sourceDir.resolve("dir")));
+		assertFalse(Files.exists(file));
+		assertEquals("contents", read(targetDir.resolve("dir/sub/file.txt")));
+		assertEquals("other contents", read(targetDir.resolve("file.txt")));
+	}
+
+	/**
+	 * Tests that renamed sources are moved back and copies are deleted if a copy fails.
+	 * @throws IOException if the test files cannot be accessed.
+	 */
+	public void testRollback() throws IOException {
+		Path file = write(sourceDir.resolve("file.txt"), "contents");
+		Path dir = Files.createDirectory(sourceDir.resolve("dir"));
+		write(dir.resolve("file.txt"), "other contents");
+		MoveJob job = new CrossDeviceMoveJob(Arrays.asList(file, dir), targetDir) {
+			@Override
+			protected void rename(Path source, Path target) throws IOException {
+				if (source.equals(file))
+					Files.move(source, target);
+				else
+					super.rename(source, target);
+			}
+
+			@Override
+			protected Path getTarget(Path source) {
+				// a name too long for the target file system
+				return source.equals(dir) ? targetDir.resolve("x".repeat(300)) : super.getTarget(source);
+			}
+		};
+		job.execute();
+		assertFalse(job.getErrors().isEmpty());
+		assertEquals("contents", read(file));
+		assertEquals("other contents", read(dir.resolve("file.txt")));
+		try (var stream = Files.list(targetDir)) {
+			assertEquals(0, stream.count());
+		}
+	}
+
+	/**
+	 * Tests that a rollback deletes the partial files of the job only.
+	 * @throws IOException if the test files cannot be accessed.
+	 */
+	public void testRollbackKeepsForeignPart() throws IOException {
+		Path file = write(sourceDir.resolve("file.txt"), "contents");
+		Path dir = Files.createDirectory(sourceDir.resolve("dir"));
+		Path foreign = write(targetDir.resolve("file.txt" + CopyJob.PART_SUFFIX), "user");
+		MoveJob job = new CrossDeviceMoveJob(Arrays.asList(file, dir), targetDir) {
+			@Override
+			protected Path getTarget(Path source) {
+				// a name too long for the target file system
+				return source.equals(dir) ? targetDir.resolve("x".repeat(300)) : super.getTarget(source);
+			}
+		};
+		job.execute();
+		assertFalse(job.getErrors().isEmpty());
+		assertEquals("contents", read(file));
+		assertEquals("user", read(foreign));
+		try (var stream = Files.list(targetDir)) {
+			assertEquals(1, stream.count());
+		}
+	}
+
+	/**
+	 * Tests that a source is kept if its copy has the same size and modification time but
+	 * different contents.
+	 * @throws IOException if the test files cannot be accessed.
+	 */
+	public void testCopyDiffers() throws IOException {
+		Path file = write(sourceDir.resolve("file.txt"), "contents");
+		Path target = targetDir.resolve("file.txt");
+		MoveJob job = new CrossDeviceMoveJob(Collections.singletonList(file), targetDir) {
+			@Override
+			protected void copyAll(List<Path> sources) throws IOException {
+				super.copyAll(sources);
+				// corrupted while keeping the attributes compared before
+				FileTime lastModified = Files.getLastModifiedTime(target);
+				write(target, "CONTENTS");
+				Files.setLastModifiedTime(target, lastModified);
+			}
+		};
+		job.execute();
+		assertEquals(1, job.getErrors().size());
+		assertEquals("contents", read(file));
+		assertEquals("CONTENTS", read(target));
+	}
+
+	// private methods
+
+	/**
+	 * Writes a text file.
+	 * @param file the file.
+	 * @param text the contents.
+	 * @return the file.
+	 * @throws IOException if the file cannot be written.
+	 */
+	private static Path write(Path file, String text) throws IOException {
+		return Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Reads a text file.
+	 * @param file the file.
+	 * @return the contents.
+	 * @throws IOException if the file cannot be read.
+	 */
+	private static String read(Path file) throws IOException {
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A move job treating every source as residing on another file system.
+	 */
+	private static class CrossDeviceMoveJob extends MoveJob {
+		/**
+		 * Creates a new instance.
+		 * @param sources the files and directory trees to move.
+		 * @param targetDir the directory to move into.
+		 */
+		CrossDeviceMoveJob(List<Path> sources, Path targetDir) {
+			super(sources, targetDir);
+		}
+
+		@Override
+		protected void rename(Path source, Path target) throws IOException {
+			throw new AtomicMoveNotSupportedException(source.toString(), target.toString(), "Other file system");
+		}
+	}
+}
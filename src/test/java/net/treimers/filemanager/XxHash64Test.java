@@ -0,0 +1,75 @@
+package net.treimers.filemanager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link XxHash64} against reference values of the xxHash library with seed 0.
+ */
+public class XxHash64Test extends TestCase {
+	/**
+	 * Tests the reference values.
+	 */
+	public void testReferenceValues() {
+		assertEquals(0xEF46DB3751D8E999L, hash(""));
+		assertEquals(0xD24EC4F1A98C6E5BL, hash("a"));
+		assertEquals(0x44BC2CF5AD770999L, hash("abc"));
+		// longer than a stripe of 32 bytes
+		assertEquals(0xFBCEA83C8A378BF1L, hash("Nobody inspects the spammish repetition"));
+	}
+
+	/**
+	 * Tests that the value does not depend on how the input is split into updates.
+	 */
+	public void testSplitUpdates() {
+		byte[] data = new byte[200];
+		for (int i = 0; i < data.length; i++)
+			data[i] = (byte) (i * 31 + 7);
+		XxHash64 whole = new XxHash64();
+		whole.update(data, 0, data.length);
+		long expected = whole.getValue();
+		for (int split = 0; split <= data.length; split++) {
+			XxHash64 hash = new XxHash64();
+			hash.update(data, 0, split);
+			hash.update(ByteBuffer.wrap(data, split, data.length - split));
+			assertEquals("split at " + split, expected, hash.getValue());
+		}
+		XxHash64 bytewise = new XxHash64();
+		ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+		for (byte b : data) {
+			bytewise.update(b);
+			direct.put(b);
+		}
+		assertEquals(expected, bytewise.getValue());
+		direct.flip();
+		XxHash64 buffered = new XxHash64();
+		buffered.update(direct);
+		assertEquals(expected, buffered.getValue());
+	}
+
+	/**
+	 * Tests that a reset hash starts again.
+	 */
+	public void testReset() {
+		XxHash64 hash = new XxHash64();
+		hash.update("abc".getBytes(StandardCharsets.UTF_8), 0, 3);
+		hash.reset();
+		assertEquals(0xEF46DB3751D8E999L, hash.getValue());
+	}
+
+	// private methods
+
+	/**
+	 * Hashes a text.
+	 * @param text the text.
+	 * @return the hash of the UTF-8 encoded text.
+	 */
+	private static long hash(String text) {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		XxHash64 hash = new XxHash64();
+		hash.update(bytes, 0, bytes.length);
+		return hash.getValue();
+	}
+}